@@ -34,6 +34,7 @@ import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import se.sics.kompics.EventMetadata;
 import se.sics.kompics.network.netty.AckRequestMsg;
 import se.sics.kompics.network.netty.DirectMessage;
 import se.sics.kompics.network.netty.NettyAddress;
@@ -265,23 +266,15 @@ public abstract class Serializers {
         rwLock.readLock().lock();
         try {
             //printRules();
-            Class<?> clazz = aClass;
-            while (clazz != null) { // the long way around
+            // each superclass followed by its interfaces, the hierarchy
+            // itself is only walked once per class
+            for (Class<?> clazz : EventMetadata.of(aClass).getSupertypes()) {
                 Integer sId = classMappings.get(clazz.getName());
                 LOG.trace("Checked rule for {}, found: {}", clazz, sId);
                 if (sId != null) {
                     resolutionCache.put(aClass.getName(), bindings[sId]); // remember this for later
                     return bindings[sId];
                 }
-                for (Class<?> intf : clazz.getInterfaces()) {
-                    sId = classMappings.get(intf.getName());
-                    LOG.trace("Checked rule for {}, found: {}", intf.getName(), sId);
-                    if (sId != null) {
-                        resolutionCache.put(aClass.getName(), bindings[sId]); // remember this for later
-                        return bindings[sId];
-                    }
-                }
-                clazz = clazz.getSuperclass();
             }
             return null;
         } finally {
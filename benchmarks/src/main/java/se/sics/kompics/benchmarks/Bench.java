@@ -0,0 +1,104 @@
+/*
+ * This file is part of the Kompics component model runtime.
+ *
+ * Copyright (C) 2009 Swedish Institute of Computer Science (SICS) 
+ * Copyright (C) 2009 Royal Institute of Technology (KTH)
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package se.sics.kompics.benchmarks;
+
+import java.util.concurrent.atomic.AtomicLong;
+import se.sics.kompics.Component;
+import se.sics.kompics.ComponentDefinition;
+import se.sics.kompics.Scheduler;
+import se.sics.kompics.scheduler.ForkJoinScheduler;
+import se.sics.kompics.scheduler.ThreadPoolScheduler;
+import se.sics.kompics.scheduler.WorkStealingScheduler;
+
+/**
+ * Small helpers shared by the benchmarks that drive a running Kompics
+ * instance from the JMH thread.
+ */
+final class Bench {
+
+    private Bench() {
+    }
+
+    private static final long START_TIMEOUT = 10000;
+
+    /**
+     * Spins until {@code cd} has become {@code ACTIVE}.
+     * <p>
+     * @param cd the component to wait for
+     * @throws IllegalStateException if it didn't start in time
+     */
+    static void awaitActive(ComponentDefinition cd) {
+        long deadline = System.currentTimeMillis() + START_TIMEOUT;
+        while (cd.getComponentCore().state() != Component.State.ACTIVE) {
+            if (System.currentTimeMillis() > deadline) {
+                throw new IllegalStateException(cd + " did not start within " + START_TIMEOUT + "ms");
+            }
+            Thread.yield();
+        }
+    }
+
+    /**
+     * Creates a scheduler by benchmark parameter name.
+     * <p>
+     * @param name "pool", "work-stealing" or "fork-join"
+     * @param workers the number of worker threads
+     * @return the scheduler
+     */
+    static Scheduler scheduler(String name, int workers) {
+        if (name.equals("pool")) {
+            return new ThreadPoolScheduler(workers);
+        } else if (name.equals("work-stealing")) {
+            return new WorkStealingScheduler(workers);
+        } else if (name.equals("fork-join")) {
+            return new ForkJoinScheduler(workers);
+        }
+        throw new IllegalArgumentException("Unknown scheduler: " + name);
+    }
+
+    /**
+     * A monotonic counter handlers bump and the benchmark thread spins on.
+     * <p>
+     * Spinning (rather than blocking) keeps the wake-up cost of the JMH thread
+     * out of the measured latency.
+     */
+    static final class Signal {
+
+        private final AtomicLong count = new AtomicLong(0);
+
+        long get() {
+            return count.get();
+        }
+
+        void release() {
+            count.incrementAndGet();
+        }
+
+        void await(long target) {
+            while (count.get() < target) {
+                // spin
+            }
+        }
+
+        void reset() {
+            count.set(0);
+        }
+    }
+}
@@ -0,0 +1,178 @@
+/*
+ * This file is part of the Kompics component model runtime.
+ *
+ * Copyright (C) 2009 Swedish Institute of Computer Science (SICS) 
+ * Copyright (C) 2009 Royal Institute of Technology (KTH)
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package se.sics.kompics.benchmarks;
+
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import se.sics.kompics.Channel;
+import se.sics.kompics.Component;
+import se.sics.kompics.ComponentDefinition;
+import se.sics.kompics.Handler;
+import se.sics.kompics.Init;
+import se.sics.kompics.JavaComponent;
+import se.sics.kompics.Kompics;
+import se.sics.kompics.KompicsEvent;
+import se.sics.kompics.Negative;
+import se.sics.kompics.PortType;
+import se.sics.kompics.Positive;
+import se.sics.kompics.config.Config;
+import se.sics.kompics.config.ValueMerger;
+
+/**
+ * Cost of passing events up through a chain of nested components, with and
+ * without {@link JavaComponent#FUSED_CHANNELS_KEY}.
+ * <p>
+ * Each {@link Level} provides the {@link HopPort} and forwards its child's
+ * port to its own with a channel, so an event triggered in the innermost
+ * level crosses {@link #depth} channels before it reaches the {@link Sink}
+ * next to the outermost one. The events are triggered from the benchmark
+ * thread, which also runs the whole delivery path; only the sink's handler
+ * runs on a worker.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+public class ChannelHopBenchmark {
+
+    static final int EVENTS = 10000;
+
+    public static class Hop implements KompicsEvent {
+
+        static final Hop EVENT = new Hop();
+    }
+
+    public static class HopPort extends PortType {
+
+        {
+            indication(Hop.class);
+        }
+    }
+
+    public static class LevelInit extends Init<Level> {
+
+        final int below;
+
+        public LevelInit(int below) {
+            this.below = below;
+        }
+    }
+
+    public static class Level extends ComponentDefinition {
+
+        final Negative<HopPort> port = provides(HopPort.class);
+        final Level innermost;
+
+        public Level(LevelInit init) {
+            if (init.below > 0) {
+                Component child = create(Level.class, new LevelInit(init.below - 1));
+                connect(child.getPositive(HopPort.class), port, Channel.TWO_WAY);
+                innermost = ((Level) child.getComponent()).innermost;
+            } else {
+                innermost = this;
+            }
+        }
+    }
+
+    public static class Sink extends ComponentDefinition {
+
+        final Positive<HopPort> port = requires(HopPort.class);
+
+        public Sink() {
+            subscribe(hopHandler, port);
+        }
+
+        final Handler<Hop> hopHandler = new Handler<Hop>() {
+            @Override
+            public void handle(Hop event) {
+                RECEIVED.release();
+            }
+        };
+    }
+
+    public static class Root extends ComponentDefinition {
+
+        static volatile Root instance;
+        static volatile int depth;
+        final Level innermost;
+
+        public Root() {
+            Component top = create(Level.class, new LevelInit(depth - 1));
+            Component sink = create(Sink.class, Init.NONE);
+            connect(top.getPositive(HopPort.class), sink.getNegative(HopPort.class), Channel.TWO_WAY);
+            innermost = ((Level) top.getComponent()).innermost;
+            instance = this;
+        }
+    }
+
+    static final Bench.Signal RECEIVED = new Bench.Signal();
+
+    @Param({"1", "4", "16", "64"})
+    public int depth;
+
+    @Param({"false", "true"})
+    public boolean fused;
+
+    private Level innermost;
+
+    @Setup
+    public void setup() {
+        RECEIVED.reset();
+        Kompics.resetConfig();
+        Config.Builder cb = Kompics.getConfig().modify(UUID.randomUUID());
+        cb.setValue(JavaComponent.FUSED_CHANNELS_KEY, fused);
+        ((Config.Impl) Kompics.getConfig()).apply(cb.finalise(), ValueMerger.NONE);
+        Root.depth = depth;
+        Kompics.createAndStart(Root.class, 1);
+        Bench.awaitActive(Root.instance);
+        innermost = Root.instance.innermost;
+    }
+
+    @TearDown
+    public void tearDown() {
+        Kompics.shutdown();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(EVENTS)
+    public void hops() {
+        long target = RECEIVED.get() + EVENTS;
+        for (int i = 0; i < EVENTS; i++) {
+            innermost.proxy.trigger(Hop.EVENT, innermost.port);
+        }
+        RECEIVED.await(target);
+    }
+}
@@ -0,0 +1,154 @@
+/*
+ * This file is part of the Kompics component model runtime.
+ *
+ * Copyright (C) 2009 Swedish Institute of Computer Science (SICS) 
+ * Copyright (C) 2009 Royal Institute of Technology (KTH)
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package se.sics.kompics.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import se.sics.kompics.ChannelCore;
+import se.sics.kompics.ChannelSelector;
+import se.sics.kompics.ChannelSelectorSet;
+import se.sics.kompics.KompicsEvent;
+import se.sics.kompics.Port;
+import se.sics.kompics.PortType;
+
+/**
+ * Lookup cost of {@link ChannelSelectorSet#get(KompicsEvent)} with many
+ * selector channels registered on one port. Like before the index, the
+ * public lookup returns a new list; ports read the shared array directly.
+ * <p>
+ * {@code subtype} delivers an event whose class is a subtype of the selected
+ * event type, which exercises the supertype fallback.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+public class ChannelSelectorBenchmark {
+
+    public static class Msg implements KompicsEvent {
+
+        final int dst;
+
+        public Msg(int dst) {
+            this.dst = dst;
+        }
+    }
+
+    public static class SubMsg extends Msg {
+
+        public SubMsg(int dst) {
+            super(dst);
+        }
+    }
+
+    public static class DstSelector extends ChannelSelector<Msg, Integer> {
+
+        public DstSelector(int dst) {
+            super(Msg.class, dst, true);
+        }
+
+        @Override
+        public Integer getValue(Msg event) {
+            return event.dst;
+        }
+    }
+
+    static class NullChannel implements ChannelCore<PortType> {
+
+        @Override
+        public boolean isDestroyed() {
+            return false;
+        }
+
+        @Override
+        public boolean hasPositivePort(Port<PortType> port) {
+            return false;
+        }
+
+        @Override
+        public boolean hasNegativePort(Port<PortType> port) {
+            return false;
+        }
+
+        @Override
+        public void forwardToPositive(KompicsEvent event, int wid) {
+        }
+
+        @Override
+        public void forwardToNegative(KompicsEvent event, int wid) {
+        }
+
+        @Override
+        public void disconnect() {
+        }
+
+        @Override
+        public PortType getPortType() {
+            return null;
+        }
+    }
+
+    @Param({"1", "16", "256", "4096"})
+    public int selectors;
+
+    private ChannelSelectorSet set;
+    private Msg hit;
+    private Msg miss;
+    private Msg subtype;
+
+    @Setup
+    public void setup() {
+        set = new ChannelSelectorSet();
+        for (int i = 0; i < selectors; i++) {
+            set.addChannelSelector(new NullChannel(), new DstSelector(i));
+        }
+        hit = new Msg(selectors / 2);
+        miss = new Msg(-1);
+        subtype = new SubMsg(selectors / 2);
+    }
+
+    @Benchmark
+    public Object hit() {
+        return set.get(hit);
+    }
+
+    @Benchmark
+    public Object miss() {
+        return set.get(miss);
+    }
+
+    @Benchmark
+    public Object subtype() {
+        return set.get(subtype);
+    }
+}
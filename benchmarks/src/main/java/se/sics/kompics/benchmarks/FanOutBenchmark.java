@@ -0,0 +1,171 @@
+/*
+ * This file is part of the Kompics component model runtime.
+ *
+ * Copyright (C) 2009 Swedish Institute of Computer Science (SICS) 
+ * Copyright (C) 2009 Royal Institute of Technology (KTH)
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package se.sics.kompics.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import se.sics.kompics.Channel;
+import se.sics.kompics.Component;
+import se.sics.kompics.ComponentDefinition;
+import se.sics.kompics.Handler;
+import se.sics.kompics.Init;
+import se.sics.kompics.Kompics;
+import se.sics.kompics.KompicsEvent;
+import se.sics.kompics.Negative;
+import se.sics.kompics.PortType;
+import se.sics.kompics.Positive;
+
+/**
+ * Cost of delivering one indication through {@code BiDirectionalChannel}s to
+ * N subscribed components.
+ * <p>
+ * The score is the time until the last of the {@link #subscribers} sinks has
+ * handled the event.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+public class FanOutBenchmark {
+
+    public static class Fire implements KompicsEvent {
+
+        static final Fire EVENT = new Fire();
+    }
+
+    public static class Tick implements KompicsEvent {
+
+        static final Tick EVENT = new Tick();
+    }
+
+    public static class FirePort extends PortType {
+
+        {
+            request(Fire.class);
+        }
+    }
+
+    public static class TickPort extends PortType {
+
+        {
+            indication(Tick.class);
+        }
+    }
+
+    public static class Source extends ComponentDefinition {
+
+        final Negative<FirePort> fire = provides(FirePort.class);
+        final Negative<TickPort> ticks = provides(TickPort.class);
+
+        public Source() {
+            subscribe(fireHandler, fire);
+        }
+
+        final Handler<Fire> fireHandler = new Handler<Fire>() {
+            @Override
+            public void handle(Fire event) {
+                trigger(Tick.EVENT, ticks);
+            }
+        };
+    }
+
+    public static class Sink extends ComponentDefinition {
+
+        final Positive<TickPort> ticks = requires(TickPort.class);
+
+        public Sink() {
+            subscribe(tickHandler, ticks);
+        }
+
+        final Handler<Tick> tickHandler = new Handler<Tick>() {
+            @Override
+            public void handle(Tick event) {
+                RECEIVED.release();
+            }
+        };
+    }
+
+    public static class Root extends ComponentDefinition {
+
+        static volatile Root instance;
+        static int sinks;
+        final Component source;
+
+        public Root() {
+            source = create(Source.class, Init.NONE);
+            for (int i = 0; i < sinks; i++) {
+                Component sink = create(Sink.class, Init.NONE);
+                connect(source.getPositive(TickPort.class), sink.getNegative(TickPort.class), Channel.TWO_WAY);
+            }
+            instance = this;
+        }
+    }
+
+    static final Bench.Signal RECEIVED = new Bench.Signal();
+
+    @Param({"1", "4", "16", "64"})
+    public int subscribers;
+
+    @Param({"1", "4"})
+    public int workers;
+
+    @Param({"pool", "work-stealing", "fork-join"})
+    public String scheduler;
+
+    private Root root;
+    private Positive<FirePort> fire;
+
+    @Setup
+    public void setup() {
+        RECEIVED.reset();
+        Root.sinks = subscribers;
+        Kompics.setScheduler(Bench.scheduler(scheduler, workers));
+        Kompics.createAndStart(Root.class, workers);
+        root = Root.instance;
+        Bench.awaitActive(root);
+        fire = root.source.getPositive(FirePort.class);
+    }
+
+    @TearDown
+    public void tearDown() {
+        Kompics.shutdown();
+    }
+
+    @Benchmark
+    public void fanOut() {
+        long target = RECEIVED.get() + subscribers;
+        root.proxy.trigger(Fire.EVENT, fire);
+        RECEIVED.await(target);
+    }
+}
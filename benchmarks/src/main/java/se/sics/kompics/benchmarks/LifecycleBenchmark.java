@@ -0,0 +1,128 @@
+/*
+ * This file is part of the Kompics component model runtime.
+ *
+ * Copyright (C) 2009 Swedish Institute of Computer Science (SICS) 
+ * Copyright (C) 2009 Royal Institute of Technology (KTH)
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package se.sics.kompics.benchmarks;
+
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import se.sics.kompics.ComponentDefinition;
+import se.sics.kompics.Init;
+import se.sics.kompics.JavaComponent;
+import se.sics.kompics.Kompics;
+import se.sics.kompics.config.Config;
+import se.sics.kompics.config.ValueMerger;
+
+/**
+ * Time for {@link Kompics#createAndStart} to bring up a whole component tree.
+ * <p>
+ * A "wide" tree hangs all {@link #size} components directly off the root, a
+ * "deep" one is a binary tree of the same size. The score is the time from
+ * creating the root until it is {@code ACTIVE}, with and without
+ * {@link JavaComponent#FAST_LIFECYCLE_KEY}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+public class LifecycleBenchmark {
+
+    public static class NodeInit extends Init<Node> {
+
+        final int descendants;
+        final int fanOut;
+
+        public NodeInit(int descendants, int fanOut) {
+            this.descendants = descendants;
+            this.fanOut = fanOut;
+        }
+    }
+
+    public static class Node extends ComponentDefinition {
+
+        public Node(NodeInit init) {
+            // split the descendants evenly over at most fanOut children
+            int rest = init.descendants;
+            int n = Math.min(init.fanOut, rest);
+            rest -= n;
+            for (int i = 0; i < n; i++) {
+                int share = rest / (n - i);
+                rest -= share;
+                create(Node.class, new NodeInit(share, init.fanOut));
+            }
+        }
+    }
+
+    public static class Root extends Node {
+
+        static volatile Root instance;
+
+        public Root(NodeInit init) {
+            super(init);
+            instance = this;
+        }
+    }
+
+    @Param({"wide", "deep"})
+    public String shape;
+
+    @Param({"10000", "100000"})
+    public int size;
+
+    @Param({"false", "true"})
+    public boolean fast;
+
+    @Param({"4"})
+    public int workers;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        Kompics.resetConfig();
+        Config.Builder cb = Kompics.getConfig().modify(UUID.randomUUID());
+        cb.setValue(JavaComponent.FAST_LIFECYCLE_KEY, fast);
+        ((Config.Impl) Kompics.getConfig()).apply(cb.finalise(), ValueMerger.NONE);
+    }
+
+    @TearDown(Level.Iteration)
+    public void tearDown() {
+        Kompics.shutdown();
+    }
+
+    @Benchmark
+    public void createAndStart() {
+        int fanOut = shape.equals("wide") ? size : 2;
+        Kompics.createAndStart(Root.class, new NodeInit(size - 1, fanOut), workers);
+        Bench.awaitActive(Root.instance);
+    }
+}
@@ -0,0 +1,193 @@
+/*
+ * This file is part of the Kompics component model runtime.
+ *
+ * Copyright (C) 2009 Swedish Institute of Computer Science (SICS) 
+ * Copyright (C) 2009 Royal Institute of Technology (KTH)
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package se.sics.kompics.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import se.sics.kompics.Channel;
+import se.sics.kompics.Component;
+import se.sics.kompics.ComponentDefinition;
+import se.sics.kompics.Handler;
+import se.sics.kompics.Init;
+import se.sics.kompics.Kompics;
+import se.sics.kompics.KompicsEvent;
+import se.sics.kompics.Negative;
+import se.sics.kompics.PortType;
+import se.sics.kompics.Positive;
+
+/**
+ * Round-trip throughput between two components connected by a two-way
+ * channel.
+ * <p>
+ * Each invocation asks the {@link Pinger} for {@link #ROUNDS} ping-pong
+ * exchanges with the {@link Ponger} and waits until the last pong arrives.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+public class PingPongBenchmark {
+
+    static final int ROUNDS = 10000;
+
+    public static class Ping implements KompicsEvent {
+
+        static final Ping EVENT = new Ping();
+    }
+
+    public static class Pong implements KompicsEvent {
+
+        static final Pong EVENT = new Pong();
+    }
+
+    public static class Run implements KompicsEvent {
+
+        final int rounds;
+
+        public Run(int rounds) {
+            this.rounds = rounds;
+        }
+    }
+
+    public static class PingPort extends PortType {
+
+        {
+            request(Ping.class);
+            indication(Pong.class);
+        }
+    }
+
+    public static class RunPort extends PortType {
+
+        {
+            request(Run.class);
+        }
+    }
+
+    public static class Pinger extends ComponentDefinition {
+
+        final Positive<PingPort> ping = requires(PingPort.class);
+        final Negative<RunPort> run = provides(RunPort.class);
+        private int remaining = 0;
+
+        public Pinger() {
+            subscribe(runHandler, run);
+            subscribe(pongHandler, ping);
+        }
+
+        final Handler<Run> runHandler = new Handler<Run>() {
+            @Override
+            public void handle(Run event) {
+                remaining = event.rounds;
+                trigger(Ping.EVENT, ping);
+            }
+        };
+
+        final Handler<Pong> pongHandler = new Handler<Pong>() {
+            @Override
+            public void handle(Pong event) {
+                remaining--;
+                if (remaining > 0) {
+                    trigger(Ping.EVENT, ping);
+                } else {
+                    DONE.release();
+                }
+            }
+        };
+    }
+
+    public static class Ponger extends ComponentDefinition {
+
+        final Negative<PingPort> ping = provides(PingPort.class);
+
+        public Ponger() {
+            subscribe(pingHandler, ping);
+        }
+
+        final Handler<Ping> pingHandler = new Handler<Ping>() {
+            @Override
+            public void handle(Ping event) {
+                trigger(Pong.EVENT, ping);
+            }
+        };
+    }
+
+    public static class Root extends ComponentDefinition {
+
+        static volatile Root instance;
+        final Component pinger;
+
+        public Root() {
+            pinger = create(Pinger.class, Init.NONE);
+            Component ponger = create(Ponger.class, Init.NONE);
+            connect(pinger.getNegative(PingPort.class), ponger.getPositive(PingPort.class), Channel.TWO_WAY);
+            instance = this;
+        }
+    }
+
+    static final Bench.Signal DONE = new Bench.Signal();
+
+    @Param({"1", "2", "4"})
+    public int workers;
+
+    @Param({"pool", "work-stealing", "fork-join"})
+    public String scheduler;
+
+    private Root root;
+    private Positive<RunPort> run;
+
+    @Setup
+    public void setup() {
+        DONE.reset();
+        Kompics.setScheduler(Bench.scheduler(scheduler, workers));
+        Kompics.createAndStart(Root.class, workers);
+        root = Root.instance;
+        Bench.awaitActive(root);
+        run = root.pinger.getPositive(RunPort.class);
+    }
+
+    @TearDown
+    public void tearDown() {
+        Kompics.shutdown();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(ROUNDS)
+    public void pingPong() {
+        long target = DONE.get() + 1;
+        root.proxy.trigger(new Run(ROUNDS), run);
+        DONE.await(target);
+    }
+}
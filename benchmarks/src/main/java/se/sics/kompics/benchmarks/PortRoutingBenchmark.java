@@ -0,0 +1,278 @@
+/*
+ * This file is part of the Kompics component model runtime.
+ *
+ * Copyright (C) 2009 Swedish Institute of Computer Science (SICS) 
+ * Copyright (C) 2009 Royal Institute of Technology (KTH)
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package se.sics.kompics.benchmarks;
+
+import com.google.common.collect.ArrayListMultimap;
+import java.util.ArrayList;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import se.sics.kompics.Channel;
+import se.sics.kompics.Component;
+import se.sics.kompics.ComponentDefinition;
+import se.sics.kompics.Handler;
+import se.sics.kompics.Init;
+import se.sics.kompics.Kompics;
+import se.sics.kompics.KompicsEvent;
+import se.sics.kompics.Negative;
+import se.sics.kompics.PortType;
+import se.sics.kompics.Positive;
+
+/**
+ * Compares the read side of port routing before and after the switch to
+ * copy-on-write snapshots in {@code JavaPort}.
+ * <p>
+ * {@link #locked()} mirrors the old path: take the read lock of a
+ * {@code ReentrantReadWriteLock}, then look the event class up in the
+ * per-class handler cache. {@link #snapshot()} mirrors the new one: a single
+ * volatile read of an immutable snapshot followed by the same lookup. Only
+ * the lock differs. Run with {@code -t} set to the number of workers you care
+ * about; the gap widens with the number of threads sharing the lock.
+ * <p>
+ * {@link #port(Running)} triggers through a real {@code JavaPort} from all
+ * benchmark threads, to compare builds before and after the change.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+@Threads(Threads.MAX)
+public class PortRoutingBenchmark {
+
+    static final int EVENTS = 1000;
+
+    @Param({"1", "4", "20"})
+    public int subscriptions;
+
+    private final ReentrantReadWriteLock rwLock = new ReentrantReadWriteLock();
+    private Table locked;
+    private volatile Table snapshot;
+    private final Object event = new SubEvent();
+
+    @Setup
+    public void setup() {
+        ArrayListMultimap<Class<?>, Object> subs = ArrayListMultimap.create();
+        // one subscription for the delivered type, the rest for unrelated ones
+        subs.put(BaseEvent.class, new Object());
+        for (int i = 1; i < subscriptions; i++) {
+            subs.put(UNRELATED[i % UNRELATED.length], new Object());
+        }
+        locked = new Table(subs);
+        snapshot = new Table(subs);
+    }
+
+    @Benchmark
+    public Object[] locked() {
+        rwLock.readLock().lock();
+        try {
+            return locked.handlers(event.getClass());
+        } finally {
+            rwLock.readLock().unlock();
+        }
+    }
+
+    @Benchmark
+    public Object[] snapshot() {
+        return snapshot.handlers(event.getClass());
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(EVENTS)
+    public void port(Running running) {
+        Source source = running.source;
+        for (int i = 0; i < EVENTS; i++) {
+            source.proxy.trigger(SubEvent.EVENT, source.port);
+        }
+        // keep the sink's queue from growing without bound
+        long sent = SENT.addAndGet(EVENTS);
+        RECEIVED.await(sent);
+    }
+
+    /**
+     * Subscriptions with a per-class handler cache, like the one
+     * {@code JavaPort} resolves handlers through.
+     */
+    private static final class Table {
+
+        private final ArrayListMultimap<Class<?>, Object> subs;
+        private final ConcurrentHashMap<Class<?>, Object[]> cache = new ConcurrentHashMap<Class<?>, Object[]>();
+
+        Table(ArrayListMultimap<Class<?>, Object> subs) {
+            this.subs = ArrayListMultimap.create(subs);
+        }
+
+        Object[] handlers(Class<?> eventType) {
+            Object[] handlers = cache.get(eventType);
+            if (handlers == null) {
+                ArrayList<Object> resolved = new ArrayList<Object>();
+                for (Class<?> eType : subs.keySet()) {
+                    if (eType.isAssignableFrom(eventType)) {
+                        resolved.addAll(subs.get(eType));
+                    }
+                }
+                handlers = resolved.toArray();
+                cache.put(eventType, handlers);
+            }
+            return handlers;
+        }
+    }
+
+    /**
+     * A running Kompics instance whose sink has {@link #subscriptions}
+     * handlers on the port the benchmark threads trigger on.
+     */
+    @State(Scope.Benchmark)
+    public static class Running {
+
+        @Param({"1", "4", "20"})
+        public int subscriptions;
+
+        Source source;
+
+        @Setup
+        public void setup() {
+            SENT.set(0);
+            RECEIVED.reset();
+            Root.subscriptions = subscriptions;
+            Kompics.createAndStart(Root.class, 1);
+            Bench.awaitActive(Root.instance);
+            source = Root.instance.source;
+        }
+
+        @TearDown
+        public void tearDown() {
+            Kompics.shutdown();
+        }
+    }
+
+    static final AtomicLong SENT = new AtomicLong(0);
+    static final Bench.Signal RECEIVED = new Bench.Signal();
+
+    public static class BaseEvent implements KompicsEvent {
+    }
+
+    public static class SubEvent extends BaseEvent {
+
+        static final SubEvent EVENT = new SubEvent();
+    }
+
+    public static class Unrelated1 implements KompicsEvent {
+    }
+
+    public static class Unrelated2 implements KompicsEvent {
+    }
+
+    public static class Unrelated3 implements KompicsEvent {
+    }
+
+    public static class Unrelated4 implements KompicsEvent {
+    }
+
+    private static final Class<?>[] UNRELATED = new Class<?>[]{
+        Unrelated1.class, Unrelated2.class, Unrelated3.class, Unrelated4.class
+    };
+
+    public static class RoutingPort extends PortType {
+
+        {
+            indication(BaseEvent.class);
+            indication(Unrelated1.class);
+            indication(Unrelated2.class);
+            indication(Unrelated3.class);
+            indication(Unrelated4.class);
+        }
+    }
+
+    public static class Source extends ComponentDefinition {
+
+        final Negative<RoutingPort> port = provides(RoutingPort.class);
+    }
+
+    public static class Root extends ComponentDefinition {
+
+        static volatile Root instance;
+        static volatile int subscriptions;
+        final Source source;
+
+        public Root() {
+            Component top = create(Source.class, Init.NONE);
+            Component sink = create(Sink.class, new SinkInit(subscriptions));
+            connect(top.getPositive(RoutingPort.class), sink.getNegative(RoutingPort.class), Channel.TWO_WAY);
+            source = (Source) top.getComponent();
+            instance = this;
+        }
+    }
+
+    public static class SinkInit extends Init<Sink> {
+
+        final int subscriptions;
+
+        public SinkInit(int subscriptions) {
+            this.subscriptions = subscriptions;
+        }
+    }
+
+    public static class Sink extends ComponentDefinition {
+
+        final Positive<RoutingPort> port = requires(RoutingPort.class);
+
+        public Sink(SinkInit init) {
+            subscribe(new Handler<BaseEvent>() {
+                @Override
+                public void handle(BaseEvent event) {
+                    RECEIVED.release();
+                }
+            }, port);
+            for (int i = 1; i < init.subscriptions; i++) {
+                subscribe(new Unsubscribed(UNRELATED[i % UNRELATED.length]), port);
+            }
+        }
+    }
+
+    static class Unsubscribed extends Handler<KompicsEvent> {
+
+        @SuppressWarnings("unchecked")
+        Unsubscribed(Class<?> eventType) {
+            super((Class<KompicsEvent>) eventType);
+        }
+
+        @Override
+        public void handle(KompicsEvent event) {
+        }
+    }
+}
@@ -0,0 +1,259 @@
+/*
+ * This file is part of the Kompics component model runtime.
+ *
+ * Copyright (C) 2009 Swedish Institute of Computer Science (SICS) 
+ * Copyright (C) 2009 Royal Institute of Technology (KTH)
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package se.sics.kompics.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import se.sics.kompics.Channel;
+import se.sics.kompics.Component;
+import se.sics.kompics.ComponentDefinition;
+import se.sics.kompics.Direct;
+import se.sics.kompics.Handler;
+import se.sics.kompics.Init;
+import se.sics.kompics.Kompics;
+import se.sics.kompics.KompicsEvent;
+import se.sics.kompics.Negative;
+import se.sics.kompics.PortType;
+import se.sics.kompics.Positive;
+import se.sics.kompics.Request;
+import se.sics.kompics.Response;
+
+/**
+ * Round trip of a request and its response through {@link #depth} nested
+ * pass-through components.
+ * <p>
+ * {@code legacy} uses {@link Request}/{@link Response}, whose response is
+ * routed back along the recorded path. {@code direct} uses
+ * {@link Direct.Request}, whose response is delivered straight to the origin
+ * port.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+public class RequestResponseBenchmark {
+
+    public static class Run implements KompicsEvent {
+
+        final boolean direct;
+
+        Run(boolean direct) {
+            this.direct = direct;
+        }
+
+        static final Run LEGACY = new Run(false);
+        static final Run DIRECT = new Run(true);
+    }
+
+    public static class LegacyReq extends Request {
+
+    }
+
+    public static class LegacyResp extends Response {
+
+        public LegacyResp(LegacyReq request) {
+            super(request);
+        }
+    }
+
+    public static class DirectResp implements Direct.Response {
+
+        static final DirectResp EVENT = new DirectResp();
+    }
+
+    public static class DirectReq extends Direct.Request<DirectResp> {
+
+    }
+
+    public static class RunPort extends PortType {
+
+        {
+            request(Run.class);
+        }
+    }
+
+    public static class ServicePort extends PortType {
+
+        {
+            request(LegacyReq.class);
+            indication(LegacyResp.class);
+            request(DirectReq.class);
+            indication(DirectResp.class);
+        }
+    }
+
+    public static class Client extends ComponentDefinition {
+
+        final Negative<RunPort> run = provides(RunPort.class);
+        final Positive<ServicePort> service = requires(ServicePort.class);
+
+        public Client() {
+            subscribe(runHandler, run);
+            subscribe(legacyHandler, service);
+            subscribe(directHandler, service);
+        }
+
+        final Handler<Run> runHandler = new Handler<Run>() {
+            @Override
+            public void handle(Run event) {
+                if (event.direct) {
+                    trigger(new DirectReq(), service);
+                } else {
+                    trigger(new LegacyReq(), service);
+                }
+            }
+        };
+        final Handler<LegacyResp> legacyHandler = new Handler<LegacyResp>() {
+            @Override
+            public void handle(LegacyResp event) {
+                DONE.release();
+            }
+        };
+        final Handler<DirectResp> directHandler = new Handler<DirectResp>() {
+            @Override
+            public void handle(DirectResp event) {
+                DONE.release();
+            }
+        };
+    }
+
+    public static class Server extends ComponentDefinition {
+
+        final Negative<ServicePort> service = provides(ServicePort.class);
+
+        public Server() {
+            subscribe(legacyHandler, service);
+            subscribe(directHandler, service);
+        }
+
+        final Handler<LegacyReq> legacyHandler = new Handler<LegacyReq>() {
+            @Override
+            public void handle(LegacyReq event) {
+                trigger(new LegacyResp(event), service);
+            }
+        };
+        final Handler<DirectReq> directHandler = new Handler<DirectReq>() {
+            @Override
+            public void handle(DirectReq event) {
+                answer(event, DirectResp.EVENT);
+            }
+        };
+    }
+
+    public static class RelayInit extends Init<Relay> {
+
+        final int remaining;
+
+        public RelayInit(int remaining) {
+            this.remaining = remaining;
+        }
+    }
+
+    /**
+     * Forwards the service port to its only child without handling anything.
+     */
+    public static class Relay extends ComponentDefinition {
+
+        final Negative<ServicePort> service = provides(ServicePort.class);
+
+        public Relay(RelayInit init) {
+            Component child;
+            if (init.remaining > 1) {
+                child = create(Relay.class, new RelayInit(init.remaining - 1));
+            } else {
+                child = create(Server.class, Init.NONE);
+            }
+            connect(service, child.getPositive(ServicePort.class), Channel.TWO_WAY);
+        }
+    }
+
+    public static class Root extends ComponentDefinition {
+
+        static volatile Root instance;
+        static int depth;
+        final Component client;
+
+        public Root() {
+            client = create(Client.class, Init.NONE);
+            Component server;
+            if (depth > 0) {
+                server = create(Relay.class, new RelayInit(depth));
+            } else {
+                server = create(Server.class, Init.NONE);
+            }
+            connect(client.getNegative(ServicePort.class), server.getPositive(ServicePort.class), Channel.TWO_WAY);
+            instance = this;
+        }
+    }
+
+    static final Bench.Signal DONE = new Bench.Signal();
+
+    @Param({"0", "1", "4"})
+    public int depth;
+
+    @Param({"1", "4"})
+    public int workers;
+
+    private Root root;
+    private Positive<RunPort> run;
+
+    @Setup
+    public void setup() {
+        DONE.reset();
+        Root.depth = depth;
+        Kompics.createAndStart(Root.class, workers);
+        root = Root.instance;
+        Bench.awaitActive(root);
+        run = root.client.getPositive(RunPort.class);
+    }
+
+    @TearDown
+    public void tearDown() {
+        Kompics.shutdown();
+    }
+
+    @Benchmark
+    public void legacy() {
+        long target = DONE.get() + 1;
+        root.proxy.trigger(Run.LEGACY, run);
+        DONE.await(target);
+    }
+
+    @Benchmark
+    public void direct() {
+        long target = DONE.get() + 1;
+        root.proxy.trigger(Run.DIRECT, run);
+        DONE.await(target);
+    }
+}
@@ -0,0 +1,120 @@
+/*
+ * This file is part of the Kompics component model runtime.
+ *
+ * Copyright (C) 2009 Swedish Institute of Computer Science (SICS) 
+ * Copyright (C) 2009 Royal Institute of Technology (KTH)
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package se.sics.kompics.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import se.sics.kompics.Component;
+import se.sics.kompics.ComponentDefinition;
+import se.sics.kompics.Handler;
+import se.sics.kompics.Init;
+import se.sics.kompics.Kompics;
+import se.sics.kompics.KompicsEvent;
+import se.sics.kompics.Negative;
+import se.sics.kompics.PortType;
+import se.sics.kompics.Positive;
+
+/**
+ * Latency from {@code trigger} on a port to the start of the subscribed
+ * handler in the component on the other side.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+public class TriggerLatencyBenchmark {
+
+    public static class Ping implements KompicsEvent {
+    }
+
+    public static class PingPort extends PortType {
+
+        {
+            request(Ping.class);
+        }
+    }
+
+    public static class Receiver extends ComponentDefinition {
+
+        final Negative<PingPort> port = provides(PingPort.class);
+
+        public Receiver() {
+            subscribe(pingHandler, port);
+        }
+
+        final Handler<Ping> pingHandler = new Handler<Ping>() {
+            @Override
+            public void handle(Ping event) {
+                RECEIVED.release();
+            }
+        };
+    }
+
+    public static class Root extends ComponentDefinition {
+
+        static volatile Root instance;
+        final Component receiver;
+
+        public Root() {
+            receiver = create(Receiver.class, Init.NONE);
+            instance = this;
+        }
+    }
+
+    static final Bench.Signal RECEIVED = new Bench.Signal();
+
+    private final Ping ping = new Ping();
+    private Root root;
+    private Positive<PingPort> port;
+
+    @Setup
+    public void setup() {
+        RECEIVED.reset();
+        Kompics.createAndStart(Root.class, 1);
+        root = Root.instance;
+        Bench.awaitActive(root);
+        port = root.receiver.getPositive(PingPort.class);
+    }
+
+    @TearDown
+    public void tearDown() {
+        Kompics.shutdown();
+    }
+
+    @Benchmark
+    public void triggerToHandler() {
+        long target = RECEIVED.get() + 1;
+        root.proxy.trigger(ping, port);
+        RECEIVED.await(target);
+    }
+}
@@ -5,6 +5,8 @@
  */
 package se.sics.kompics;
 
+import java.util.List;
+
 /**
  *
  * @author lkroll
@@ -29,6 +31,20 @@ public class BiDirectionalChannel<PT extends PortType> extends SimpleChannel<PT>
         }
     }
 
+    @Override
+    void forwardAllToPositive(List<? extends KompicsEvent> events, int wid) {
+        if (!destroyed) {
+            positivePort.doTriggerAll(events, wid, this);
+        }
+    }
+
+    @Override
+    void forwardAllToNegative(List<? extends KompicsEvent> events, int wid) {
+        if (!destroyed) {
+            negativePort.doTriggerAll(events, wid, this);
+        }
+    }
+
     public static class Factory implements ChannelFactory {
 
         @Override
@@ -21,18 +21,46 @@
 package se.sics.kompics;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashMap;
+import java.util.IdentityHashMap;
 import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
 
+/**
+ * The channels of a port that only take events matching a
+ * {@link ChannelSelector}.
+ * <p>
+ * Adding and removing channels works on mutable maps and must be done by one
+ * thread at a time. Lookups with {@link #get(KompicsEvent)} use an immutable
+ * index that is built on the first lookup after a change, so they are safe
+ * from any number of threads as long as nobody modifies the set concurrently
+ * (ports give readers their own copy).
+ * <p>
+ * Plain selectors of one class are indexed by their value. Subclasses of
+ * {@link MultiKeySelector}, {@link HashRingSelector} and {@link RangeSelector}
+ * get an index of their own kind, so one lookup per selector class finds all
+ * matching channels.
+ */
 public class ChannelSelectorSet implements Iterable<ChannelCore<?>> {
 
+    private static final ChannelCore<?>[] NO_CHANNELS = new ChannelCore<?>[0];
+
     private HashMap<Class<? extends KompicsEvent>, ArrayList<Class<? extends ChannelSelector<?, ?>>>> filterTypesByEventType;
     private HashMap<Class<? extends ChannelSelector<?, ?>>, ArrayList<ChannelSelector<?, ?>>> filtersByFilterType;
     private HashMap<Class<? extends ChannelSelector<?, ?>>, HashMap<Object, ArrayList<ChannelCore<?>>>> channelsByFilterType;
 
     // for removal
     private HashMap<ChannelCore<?>, ChannelSelector<?, ?>> filtersByChannel;
-    private HashMap<Class<? extends KompicsEvent>, ArrayList<Class<? extends KompicsEvent>>> inheritedFilters;
+
+    // null after every change, rebuilt by the next lookup
+    private volatile Index index;
 
     public ChannelSelectorSet() {
         filterTypesByEventType = new HashMap<Class<? extends KompicsEvent>, ArrayList<Class<? extends ChannelSelector<?, ?>>>>();
@@ -40,7 +68,30 @@ public class ChannelSelectorSet implements Iterable<ChannelCore<?>> {
         channelsByFilterType = new HashMap<Class<? extends ChannelSelector<?, ?>>, HashMap<Object, ArrayList<ChannelCore<?>>>>();
 
         filtersByChannel = new HashMap<ChannelCore<?>, ChannelSelector<?, ?>>();
-        inheritedFilters = new HashMap<Class<? extends KompicsEvent>, ArrayList<Class<? extends KompicsEvent>>>();
+    }
+
+    /**
+     * Creates a copy of {@code other} that shares no mutable state with it.
+     * <p>
+     * @param other the set to copy
+     */
+    public ChannelSelectorSet(ChannelSelectorSet other) {
+        this();
+        for (Map.Entry<Class<? extends KompicsEvent>, ArrayList<Class<? extends ChannelSelector<?, ?>>>> e : other.filterTypesByEventType.entrySet()) {
+            filterTypesByEventType.put(e.getKey(), new ArrayList<Class<? extends ChannelSelector<?, ?>>>(e.getValue()));
+        }
+        for (Map.Entry<Class<? extends ChannelSelector<?, ?>>, ArrayList<ChannelSelector<?, ?>>> e : other.filtersByFilterType.entrySet()) {
+            filtersByFilterType.put(e.getKey(), new ArrayList<ChannelSelector<?, ?>>(e.getValue()));
+        }
+        for (Map.Entry<Class<? extends ChannelSelector<?, ?>>, HashMap<Object, ArrayList<ChannelCore<?>>>> e : other.channelsByFilterType.entrySet()) {
+            HashMap<Object, ArrayList<ChannelCore<?>>> channelsByValue = new HashMap<Object, ArrayList<ChannelCore<?>>>();
+            for (Map.Entry<Object, ArrayList<ChannelCore<?>>> ve : e.getValue().entrySet()) {
+                channelsByValue.put(ve.getKey(), new ArrayList<ChannelCore<?>>(ve.getValue()));
+            }
+            channelsByFilterType.put(e.getKey(), channelsByValue);
+        }
+        filtersByChannel.putAll(other.filtersByChannel);
+        index = other.index; // immutable, safe to share
     }
 
 	// public boolean containsChannel(ChannelCore<?> channel) {
@@ -90,6 +141,7 @@ public class ChannelSelectorSet implements Iterable<ChannelCore<?>> {
 
         // keep it in filtersByChannel for removal
         filtersByChannel.put(channel, filter);
+        index = null;
     }
 
     @SuppressWarnings("unchecked")
@@ -101,6 +153,7 @@ public class ChannelSelectorSet implements Iterable<ChannelCore<?>> {
         }
 
         filtersByChannel.remove(channel);
+        index = null;
 
         // undo add
         Class<? extends KompicsEvent> eventType = filter.getEventType();
@@ -132,101 +185,289 @@ public class ChannelSelectorSet implements Iterable<ChannelCore<?>> {
                 filterTypes.remove(filterType);
                 if (filterTypes.isEmpty()) {
                     filterTypesByEventType.remove(eventType);
-
-                    ArrayList<Class<? extends KompicsEvent>> inheritants = inheritedFilters
-                            .get(eventType);
-                    if (inheritants != null) {
-                        for (Class<? extends KompicsEvent> eType : inheritants) {
-                            filterTypesByEventType.remove(eType);
-                        }
-                        inheritedFilters.remove(eventType);
-                    }
                 }
             }
         }
     }
 
-    @SuppressWarnings("unchecked")
+    /**
+     * Finds the channels whose selectors match {@code event}, including
+     * selectors for supertypes of the event's class.
+     * <p>
+     * @param event the event
+     * @return a new list of the channels, without duplicates
+     */
     public ArrayList<ChannelCore<?>> get(KompicsEvent event) {
-        ArrayList<ChannelCore<?>> result = new ArrayList<ChannelCore<?>>();
-        Class<? extends KompicsEvent> eventType = event.getClass();
-        ArrayList<Class<? extends ChannelSelector<?, ?>>> filterTypes = filterTypesByEventType
-                .get(eventType);
+        return new ArrayList<ChannelCore<?>>(Arrays.asList(channels(event)));
+    }
 
-        if (filterTypes == null) {
-			// no filter types found for this event type. we try to add this
-            // event type since it may be a sub-type of a filtered event type.
-            for (Class<? extends KompicsEvent> eType : filterTypesByEventType.keySet()) {
-                if (eType.isAssignableFrom(eventType)) {
-					// I have a filter for a super-type, so I copy the filter
-                    // structure for the super-type to this event type
-                    filterTypes = new ArrayList<Class<? extends ChannelSelector<?, ?>>>(
-                            filterTypesByEventType.get(eType));
-                    filterTypesByEventType.put(eventType, filterTypes);
-
-                    ArrayList<Class<? extends KompicsEvent>> inheritants = inheritedFilters
-                            .get(eType);
-                    if (inheritants == null) {
-                        inheritants = new ArrayList<Class<? extends KompicsEvent>>();
-                        inheritedFilters.put(eType, inheritants);
+    /*
+     * like get, but returns the index's shared array, which callers must not
+     * modify
+     */
+    ChannelCore<?>[] channels(KompicsEvent event) {
+        Index i = index;
+        if (i == null) {
+            // racing lookups build equal indexes, either one will do
+            i = new Index(this);
+            index = i;
+        }
+        return i.get(event);
+    }
+
+    public boolean isEmpty() {
+        return filtersByChannel.isEmpty();
+    }
+
+    public void clear() {
+        this.filterTypesByEventType.clear();
+        this.filtersByChannel.clear();
+        this.filtersByFilterType.clear();
+        this.channelsByFilterType.clear();
+        this.index = null;
+    }
+
+    @Override
+    public Iterator<ChannelCore<?>> iterator() {
+        return filtersByChannel.keySet().iterator();
+    }
+
+    private static ChannelCore<?>[] toArray(Collection<ChannelCore<?>> channels) {
+        LinkedHashSet<ChannelCore<?>> distinct = new LinkedHashSet<ChannelCore<?>>(channels);
+        return distinct.toArray(new ChannelCore<?>[distinct.size()]);
+    }
+
+    /**
+     * Matching channels for the selectors of one class.
+     */
+    private static abstract class SelectorIndex {
+
+        final ChannelSelector<KompicsEvent, ?> selector; // extracts the value
+
+        @SuppressWarnings("unchecked")
+        SelectorIndex(ChannelSelector<?, ?> selector) {
+            this.selector = (ChannelSelector<KompicsEvent, ?>) selector;
+        }
+
+        abstract ChannelCore<?>[] get(KompicsEvent event);
+
+        static SelectorIndex of(ArrayList<Map.Entry<ChannelCore<?>, ChannelSelector<?, ?>>> selected,
+                HashMap<Object, ArrayList<ChannelCore<?>>> channelsByValue) {
+            ChannelSelector<?, ?> f = selected.get(0).getValue();
+            if (f instanceof MultiKeySelector) {
+                HashMap<Object, ArrayList<ChannelCore<?>>> channelsByKey = new HashMap<Object, ArrayList<ChannelCore<?>>>();
+                for (Map.Entry<ChannelCore<?>, ChannelSelector<?, ?>> e : selected) {
+                    for (Object key : ((MultiKeySelector<?, ?>) e.getValue()).getKeys()) {
+                        ArrayList<ChannelCore<?>> chans = channelsByKey.get(key);
+                        if (chans == null) {
+                            chans = new ArrayList<ChannelCore<?>>();
+                            channelsByKey.put(key, chans);
+                        }
+                        chans.add(e.getKey());
                     }
-                    inheritants.add(eventType);
-                    break;
                 }
+                return new ValueIndex(f, channelsByKey);
+            } else if (f instanceof HashRingSelector) {
+                return new RingIndex(f, selected);
+            } else if (f instanceof RangeSelector) {
+                return new RangeIndex(f, selected);
             }
+            return new ValueIndex(f, channelsByValue);
         }
+    }
 
-        if (filterTypes != null) {
-            // filterTypes may still be null for unfiltered event types
-            for (int i = 0; i < filterTypes.size(); i++) {
-                // for each type of filter
-                ChannelSelector<?, ?> f = filtersByFilterType.get(
-                        filterTypes.get(i)).get(0);
-                Object attValue = ((ChannelSelector<KompicsEvent, ?>) f).getValue(event);
+    /**
+     * Channels by selected value, for plain and multi-key selectors.
+     */
+    private static final class ValueIndex extends SelectorIndex {
 
-                HashMap<Object, ArrayList<ChannelCore<?>>> channelsByValue = channelsByFilterType
-                        .get(filterTypes.get(i));
+        private final HashMap<Object, ChannelCore<?>[]> channels = new HashMap<Object, ChannelCore<?>[]>();
 
-                ArrayList<ChannelCore<?>> chans = channelsByValue.get(attValue);
-                if (chans != null) {
-                    result.addAll(chans);
-                }
+        ValueIndex(ChannelSelector<?, ?> selector, HashMap<Object, ArrayList<ChannelCore<?>>> channelsByValue) {
+            super(selector);
+            for (Map.Entry<Object, ArrayList<ChannelCore<?>>> e : channelsByValue.entrySet()) {
+                channels.put(e.getKey(), toArray(e.getValue()));
             }
         }
 
-		// if (result.size() > 0)
-        // System.err.println("SIZE= " + result.size() + " FOR " + event);
-        if (result.size() > 1) {
-            return distinct(result);
+        @Override
+        ChannelCore<?>[] get(KompicsEvent event) {
+            ChannelCore<?>[] chans = channels.get(selector.getValue(event));
+            return (chans != null) ? chans : NO_CHANNELS;
         }
-        return result;
     }
 
-    private ArrayList<ChannelCore<?>> distinct(ArrayList<ChannelCore<?>> array) {
-        ArrayList<ChannelCore<?>> result = new ArrayList<ChannelCore<?>>();
-        for (int i = 0; i < array.size(); i++) {
-            ChannelCore<?> c = array.get(i);
-            if (!result.contains(c)) {
-                result.add(c);
+    /**
+     * The points of all {@link HashRingSelector}s of one class, sorted, with
+     * the channel owning each point.
+     */
+    private static final class RingIndex extends SelectorIndex {
+
+        private final int[] points;
+        private final ChannelCore<?>[][] owners;
+
+        RingIndex(ChannelSelector<?, ?> selector, ArrayList<Map.Entry<ChannelCore<?>, ChannelSelector<?, ?>>> selected) {
+            super(selector);
+            ArrayList<long[]> ring = new ArrayList<long[]>(); // {point, owner}
+            ChannelCore<?>[][] channels = new ChannelCore<?>[selected.size()][];
+            for (int i = 0; i < selected.size(); i++) {
+                channels[i] = new ChannelCore<?>[]{selected.get(i).getKey()};
+                HashRingSelector<?, ?> hrs = (HashRingSelector<?, ?>) selected.get(i).getValue();
+                for (int v = 0; v < hrs.getVirtualNodes(); v++) {
+                    ring.add(new long[]{hrs.point(v), i});
+                }
+            }
+            Collections.sort(ring, new Comparator<long[]>() {
+
+                @Override
+                public int compare(long[] a, long[] b) {
+                    return (a[0] < b[0]) ? -1 : ((a[0] == b[0]) ? 0 : 1);
+                }
+            });
+            points = new int[ring.size()];
+            owners = new ChannelCore<?>[ring.size()][];
+            for (int i = 0; i < points.length; i++) {
+                points[i] = (int) ring.get(i)[0];
+                owners[i] = channels[(int) ring.get(i)[1]];
             }
         }
-        return result;
-    }
 
-    public boolean isEmpty() {
-        return filtersByChannel.isEmpty();
+        @Override
+        ChannelCore<?>[] get(KompicsEvent event) {
+            int pos = HashRingSelector.position(selector.getValue(event));
+            int i = Arrays.binarySearch(points, pos);
+            if (i < 0) {
+                i = -(i + 1); // first point after pos
+                if (i == points.length) {
+                    i = 0; // wrap around
+                }
+            }
+            return owners[i];
+        }
     }
 
-    public void clear() {
-        this.filterTypesByEventType.clear();
-        this.filtersByChannel.clear();
-        this.filtersByFilterType.clear();
-        this.channelsByFilterType.clear();
-        this.inheritedFilters.clear();
+    /**
+     * Sorted boundaries of all {@link RangeSelector}s of one class, with the
+     * channels covering each segment between two boundaries.
+     */
+    private static final class RangeIndex extends SelectorIndex {
+
+        private final long[] bounds;
+        private final ChannelCore<?>[][] segments; // segments[i] covers [bounds[i], bounds[i+1])
+
+        RangeIndex(ChannelSelector<?, ?> selector, ArrayList<Map.Entry<ChannelCore<?>, ChannelSelector<?, ?>>> selected) {
+            super(selector);
+            TreeSet<Long> boundSet = new TreeSet<Long>();
+            for (Map.Entry<ChannelCore<?>, ChannelSelector<?, ?>> e : selected) {
+                RangeSelector<?> rs = (RangeSelector<?>) e.getValue();
+                boundSet.add(rs.getLower());
+                boundSet.add(rs.getUpper());
+            }
+            bounds = new long[boundSet.size()];
+            int n = 0;
+            for (Long b : boundSet) {
+                bounds[n++] = b;
+            }
+            segments = new ChannelCore<?>[bounds.length][];
+            for (int i = 0; i < bounds.length; i++) {
+                ArrayList<ChannelCore<?>> covering = new ArrayList<ChannelCore<?>>();
+                for (Map.Entry<ChannelCore<?>, ChannelSelector<?, ?>> e : selected) {
+                    RangeSelector<?> rs = (RangeSelector<?>) e.getValue();
+                    if ((rs.getLower() <= bounds[i]) && (bounds[i] < rs.getUpper())) {
+                        covering.add(e.getKey());
+                    }
+                }
+                segments[i] = covering.isEmpty() ? NO_CHANNELS : toArray(covering);
+            }
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        ChannelCore<?>[] get(KompicsEvent event) {
+            long pos = ((RangeSelector<KompicsEvent>) selector).getPosition(event);
+            int i = Arrays.binarySearch(bounds, pos);
+            if (i < 0) {
+                i = -(i + 1) - 1; // the last bound below pos
+                if (i < 0) {
+                    return NO_CHANNELS;
+                }
+            }
+            return segments[i];
+        }
     }
 
-    @Override
-    public Iterator<ChannelCore<?>> iterator() {
-        return filtersByChannel.keySet().iterator();
+    /**
+     * Immutable lookup structure for one state of the set.
+     */
+    private static final class Index {
+
+        private static final SelectorIndex[] NO_SELECTORS = new SelectorIndex[0];
+        private final HashMap<Class<? extends KompicsEvent>, SelectorIndex[]> selectorsByEventType;
+        /**
+         * Selectors per concrete event class, including those for its
+         * supertypes, resolved on first use.
+         */
+        private final ConcurrentHashMap<Class<?>, SelectorIndex[]> chains = new ConcurrentHashMap<Class<?>, SelectorIndex[]>();
+
+        Index(ChannelSelectorSet set) {
+            IdentityHashMap<Class<?>, ArrayList<Map.Entry<ChannelCore<?>, ChannelSelector<?, ?>>>> selectedByFilterType = new IdentityHashMap<Class<?>, ArrayList<Map.Entry<ChannelCore<?>, ChannelSelector<?, ?>>>>();
+            for (Map.Entry<ChannelCore<?>, ChannelSelector<?, ?>> e : set.filtersByChannel.entrySet()) {
+                ArrayList<Map.Entry<ChannelCore<?>, ChannelSelector<?, ?>>> selected = selectedByFilterType.get(e.getValue().getClass());
+                if (selected == null) {
+                    selected = new ArrayList<Map.Entry<ChannelCore<?>, ChannelSelector<?, ?>>>();
+                    selectedByFilterType.put(e.getValue().getClass(), selected);
+                }
+                selected.add(e);
+            }
+            IdentityHashMap<Class<?>, SelectorIndex> byFilterType = new IdentityHashMap<Class<?>, SelectorIndex>();
+            for (Map.Entry<Class<? extends ChannelSelector<?, ?>>, HashMap<Object, ArrayList<ChannelCore<?>>>> e : set.channelsByFilterType.entrySet()) {
+                byFilterType.put(e.getKey(), SelectorIndex.of(selectedByFilterType.get(e.getKey()), e.getValue()));
+            }
+            selectorsByEventType = new HashMap<Class<? extends KompicsEvent>, SelectorIndex[]>();
+            for (Map.Entry<Class<? extends KompicsEvent>, ArrayList<Class<? extends ChannelSelector<?, ?>>>> e : set.filterTypesByEventType.entrySet()) {
+                SelectorIndex[] selectors = new SelectorIndex[e.getValue().size()];
+                for (int i = 0; i < selectors.length; i++) {
+                    selectors[i] = byFilterType.get(e.getValue().get(i));
+                }
+                selectorsByEventType.put(e.getKey(), selectors);
+            }
+        }
+
+        ChannelCore<?>[] get(KompicsEvent event) {
+            SelectorIndex[] chain = chain(event.getClass());
+            if (chain.length == 1) {
+                return chain[0].get(event);
+            }
+            if (chain.length == 0) {
+                return NO_CHANNELS;
+            }
+            // A channel has a single selector, so matches from different
+            // selector classes never overlap.
+            ArrayList<ChannelCore<?>> result = new ArrayList<ChannelCore<?>>();
+            for (SelectorIndex si : chain) {
+                for (ChannelCore<?> c : si.get(event)) {
+                    result.add(c);
+                }
+            }
+            return result.toArray(new ChannelCore<?>[result.size()]);
+        }
+
+        private SelectorIndex[] chain(Class<?> eventType) {
+            SelectorIndex[] chain = chains.get(eventType);
+            if (chain == null) {
+                EventMetadata meta = EventMetadata.of(eventType);
+                LinkedHashSet<SelectorIndex> resolved = new LinkedHashSet<SelectorIndex>();
+                for (Map.Entry<Class<? extends KompicsEvent>, SelectorIndex[]> e : selectorsByEventType.entrySet()) {
+                    if (meta.isSubtypeOf(e.getKey())) {
+                        for (SelectorIndex si : e.getValue()) {
+                            resolved.add(si);
+                        }
+                    }
+                }
+                chain = resolved.isEmpty() ? NO_SELECTORS : resolved.toArray(new SelectorIndex[resolved.size()]);
+                chains.put(eventType, chain);
+            }
+            return chain;
+        }
     }
 }
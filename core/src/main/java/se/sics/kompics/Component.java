@@ -91,6 +91,12 @@ public interface Component {
         
         public State state();
         
+        /**
+         * @return the component's execution metrics, or {@code null} unless
+         *         enabled with {@link JavaComponent#METRICS_KEY}
+         */
+        public ComponentMetrics metrics();
+        
         public static enum State {
             PASSIVE,
             STARTING,
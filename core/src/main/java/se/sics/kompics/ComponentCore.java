@@ -47,6 +47,24 @@ public abstract class ComponentCore implements Component {
     ;
     protected final ReentrantReadWriteLock childrenLock = new ReentrantReadWriteLock();
     protected Scheduler scheduler;
+    /*
+     * the scheduler group this component was placed in, and whether the
+     * scheduler is a dedicated one started for this component
+     */
+    String schedulerGroup = JavaComponent.DEFAULT_GROUP;
+    boolean dedicatedScheduler = false;
+    /*
+     * key prefixes of the config updates this subtree wants, null for all
+     */
+    volatile String[] updateInterest = null;
+    /*
+     * element in the RequestPath registry, 0 until the component is on a path
+     */
+    volatile long pathElement = 0;
+    /*
+     * null unless JavaComponent.METRICS_KEY is set
+     */
+    ComponentMetrics metrics = null;
     protected int wid;
 
     public ComponentCore getParent() {
@@ -108,6 +126,34 @@ public abstract class ComponentCore implements Component {
 //    }
     protected abstract void cleanPorts();
 
+    /*
+     * metrics are only registered once the definition has been constructed,
+     * so a definition that throws leaves nothing registered for itself
+     */
+    void registerMetrics() {
+        if (metrics != null) {
+            metrics.register();
+        }
+    }
+
+    /*
+     * for this component and everything below it, which the MBeanServer
+     * would otherwise keep alive
+     */
+    void unregisterMetrics() {
+        if (metrics != null) {
+            metrics.unregister();
+        }
+        childrenLock.readLock().lock();
+        try {
+            for (ComponentCore child : children) {
+                child.unregisterMetrics();
+            }
+        } finally {
+            childrenLock.readLock().unlock();
+        }
+    }
+
     public abstract Negative<ControlPort> createControlPort();
 
     protected void doDestroy(Component component) {
@@ -117,6 +163,10 @@ public abstract class ComponentCore implements Component {
             Kompics.logger.warn("Destroying a component before it has been stopped is not a good idea: " + child.getComponent());
         }
         child.state = State.DESTROYED;
+        if (child.dedicatedScheduler) {
+            Kompics.releaseDedicatedScheduler(child.scheduler);
+        }
+        child.unregisterMetrics();
         try {
             childrenLock.writeLock().lock();
             
@@ -162,10 +212,19 @@ public abstract class ComponentCore implements Component {
 
     abstract void doConfigUpdate(ConfigUpdate update);
 
+    /**
+     * Hands a finished request back to the component's thread.
+     * <p>
+     * @param pending the request
+     */
+    abstract void requestDone(Direct.Pending<?> pending);
+
     public abstract <T extends ComponentDefinition> Component doCreate(Class<T> definition, Init<T> initEvent);
     
     public abstract <T extends ComponentDefinition> Component doCreate(Class<T> definition, Init<T> initEvent, ConfigUpdate update);
 
+    public abstract <T extends ComponentDefinition> List<Component> doCreateAll(Class<T> definition, List<? extends Init<T>> initEvents);
+
     public abstract <P extends PortType> Negative<P> createNegativePort(Class<P> portType);
 
     public abstract <P extends PortType> Positive<P> createPositivePort(Class<P> portType);
@@ -173,6 +232,10 @@ public abstract class ComponentCore implements Component {
      * === SCHEDULING ===
      */
     public AtomicInteger workCount = new AtomicInteger(0);
+    /**
+     * See {@link Scheduler#getSchedulerState(Component)}.
+     */
+    Object schedulerState;
     protected SpinlockQueue<PortCore<?>> readyPorts = new SpinlockQueue<PortCore<?>>();
 
     /**
@@ -186,20 +249,59 @@ public abstract class ComponentCore implements Component {
 
     public void eventReceived(PortCore<?> port, KompicsEvent event, int wid) {
         //System.err.println("Received event " + event + " on " + port.getPortType().portTypeClass + " work " + workCount.get());
-        port.enqueue(event);
-        readyPorts.offer(port);
+        if (!port.offer(event)) {
+            return; // replaced an already counted event
+        }
+        portReady(port);
         int wc = workCount.getAndIncrement();
         if (wc == 0) {
             if (scheduler == null) {
                 scheduler = Kompics.getScheduler();
             }
             //Kompics.logger.trace("Scheduling {} due to new event", this);
+            if (metrics != null) {
+                metrics.scheduled();
+            }
             scheduler.schedule(this, wid);
         }
     }
 
+    /**
+     * Queues a batch of events that arrived at {@code port}, in order.
+     * <p>
+     * The default receives them one by one.
+     * <p>
+     * @param port the port
+     * @param events the events
+     * @param wid the worker id
+     */
+    void eventsReceived(PortCore<?> port, List<? extends KompicsEvent> events, int wid) {
+        for (KompicsEvent event : events) {
+            eventReceived(port, event, wid);
+        }
+    }
+
     public abstract void execute(int wid);
 
+    /**
+     * Called after an event was queued at {@code port}.
+     * <p>
+     * @param port the port
+     */
+    void portReady(PortCore<?> port) {
+        readyPorts.offer(port);
+    }
+
+    /**
+     * Creates the event queue for a port owned by this component.
+     * <p>
+     * @param <E> the element type
+     * @return an unbounded queue
+     */
+    <E> EventQueue<E> createEventQueue() {
+        return new SpinlockQueue<E>();
+    }
+
     @Override
     public UUID id() {
         return this.id;
@@ -240,6 +342,11 @@ public abstract class ComponentCore implements Component {
         return state;
     }
 
+    @Override
+    public ComponentMetrics metrics() {
+        return metrics;
+    }
+
     
     /*
     * === Relaying for package fields to Scala
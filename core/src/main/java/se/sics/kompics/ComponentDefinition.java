@@ -22,8 +22,11 @@ package se.sics.kompics;
 
 // TODO: Auto-generated Javadoc
 import java.lang.reflect.Constructor;
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.List;
 import java.util.UUID;
+import java.util.concurrent.TimeUnit;
 import se.sics.kompics.Fault.ResolveAction;
 import se.sics.kompics.config.Config;
 import se.sics.kompics.config.ConfigUpdate;
@@ -93,16 +96,82 @@ public abstract class ComponentDefinition {
         port.doTrigger(event, core.wid, core);
     }
 
+    /**
+     * Triggers a batch of events on a port, in order.
+     * <p>
+     * Does the same as triggering each event in turn, but the receivers
+     * along the way look up their subscribers once per event class and
+     * queue the whole batch before they are scheduled.
+     *
+     * @param events the events
+     * @param port the port
+     */
+    protected final <P extends PortType> void triggerAll(Collection<? extends KompicsEvent> events, Port<P> port) {
+        for (KompicsEvent event : events) {
+            if (event instanceof Direct.Request) {
+                Direct.Request<?> r = (Direct.Request<?>) event;
+                r.setOrigin(port.getPair());
+            } else if (event instanceof Direct.Response) {
+                throw new KompicsException("Direct.Response can not be \"trigger\"ed. It has to \"answer\" a Direct.Request!");
+            }
+        }
+        if (port instanceof PortCore) {
+            List<? extends KompicsEvent> batch = (events instanceof List) ? (List<? extends KompicsEvent>) events : new ArrayList<KompicsEvent>(events);
+            ((PortCore<P>) port).doTriggerAll(batch, core.wid, core);
+        } else {
+            for (KompicsEvent event : events) {
+                port.doTrigger(event, core.wid, core);
+            }
+        }
+    }
+
+    /**
+     * Triggers a request and calls back with its response.
+     * <p>
+     * The answer to the request does not travel back through the port, it
+     * completes the request directly and {@code callback} is called on this
+     * component's thread. If no answer arrives within {@code timeout}
+     * milliseconds the callback is told that the request timed out instead.
+     * Timeouts are checked every 10 milliseconds.
+     *
+     * @param request the request
+     * @param port the port
+     * @param timeout milliseconds to wait for the answer, 0 or less to wait
+     * indefinitely
+     * @param callback what to do with the outcome
+     * @return the pending request, to check on or cancel it
+     */
+    protected final <R extends Direct.Response, P extends PortType> Direct.Pending<R> request(Direct.Request<R> request,
+            Port<P> port, long timeout, Direct.Callback<? super R> callback) {
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeout);
+        Direct.Pending<R> pending = new Direct.Pending<R>(core, callback, deadline);
+        request.setPending(pending);
+        if (timeout > 0) {
+            pending.scheduleTimeout();
+        }
+        try {
+            trigger(request, port);
+        } catch (RuntimeException ex) {
+            pending.cancel();
+            throw ex;
+        }
+        return pending;
+    }
+
     protected final <P extends PortType> void answer(Direct.Request event) {
         if (!event.hasResponse()) {
             Kompics.logger.warn("Can't trigger a response for {} since none was given!", event);
             return;
         }
-        event.getOrigin().doTrigger(event.getResponse(), core.wid, core);
+        if (!event.complete(event.getResponse())) {
+            event.getOrigin().doTrigger(event.getResponse(), core.wid, core);
+        }
     }
 
     protected final <P extends PortType> void answer(Direct.Request req, Direct.Response resp) {
-        req.getOrigin().doTrigger(resp, core.wid, core);
+        if (!req.complete(resp)) {
+            req.getOrigin().doTrigger(resp, core.wid, core);
+        }
     }
 
     /* java8
@@ -236,6 +305,23 @@ public abstract class ComponentDefinition {
         return core.doCreate(definition, null, update);
     }
 
+    /**
+     * Creates one child per init event, building them in parallel on the
+     * workers of this component's scheduler.
+     * <p>
+     * The constructors of the children may run concurrently with each other,
+     * so they must not share unsynchronised state.
+     *
+     * @param definition the definition
+     * @param initEvents one init event per child, null for none
+     *
+     * @return the children, in the order of their init events
+     */
+    protected final <T extends ComponentDefinition> List<Component> createAll(
+            Class<T> definition, List<? extends Init<T>> initEvents) {
+        return core.doCreateAll(definition, initEvents);
+    }
+
     protected final void destroy(Component component) {
         core.doDestroy(component);
     }
@@ -430,6 +516,19 @@ public abstract class ComponentDefinition {
     public void postUpdate() {
     }
 
+    /**
+     * Restricts the config updates passed down into the subtree of this
+     * component to the keys starting with one of {@code keyPrefixes}.
+     * <p>
+     * Updates without any such key are not delivered at all. By default a
+     * component receives every update.
+     * <p>
+     * @param keyPrefixes the key prefixes, e.g. "my.component."
+     */
+    protected final void updateInterest(String... keyPrefixes) {
+        core.updateInterest = keyPrefixes.clone();
+    }
+
     public final void updateConfig(ConfigUpdate update) {
         core.doConfigUpdate(update);
     }
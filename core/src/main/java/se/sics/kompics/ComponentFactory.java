@@ -0,0 +1,143 @@
+/*
+ * This file is part of the Kompics component model runtime.
+ *
+ * Copyright (C) 2009 Swedish Institute of Computer Science (SICS) 
+ * Copyright (C) 2009 Royal Institute of Technology (KTH)
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package se.sics.kompics;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Modifier;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Instantiates component definitions through method handles, resolved once
+ * per definition class and init class for the life of the JVM.
+ * <p>
+ * A definition is built with the public constructor that takes exactly the
+ * class of the init event or, if there is none, the one whose single
+ * parameter is the most specific supertype of it.
+ */
+final class ComponentFactory {
+
+    private static final ClassValue<ComponentFactory> FACTORIES = new ClassValue<ComponentFactory>() {
+
+        @Override
+        protected ComponentFactory computeValue(Class<?> type) {
+            return new ComponentFactory(type);
+        }
+    };
+    private static final MethodType NO_INIT = MethodType.methodType(ComponentDefinition.class);
+    private static final MethodType WITH_INIT = MethodType.methodType(ComponentDefinition.class, Init.class);
+    private static final MethodHandles.Lookup LOOKUP = MethodHandles.lookup();
+
+    private final Class<?> definition;
+    private final ConcurrentHashMap<Class<?>, MethodHandle> constructors = new ConcurrentHashMap<Class<?>, MethodHandle>();
+    private volatile MethodHandle noInitConstructor = null;
+
+    private ComponentFactory(Class<?> definition) {
+        this.definition = definition;
+    }
+
+    /**
+     * Creates an instance of {@code definition}.
+     * <p>
+     * As with {@link Class#newInstance()}, exceptions from a constructor
+     * without parameters are rethrown as they are, exceptions from a
+     * constructor taking the init event are wrapped in an
+     * {@link InvocationTargetException}.
+     * <p>
+     * @param <T> the definition type
+     * @param definition the definition
+     * @param initEvent the init event or null to use the constructor without
+     * parameters
+     * @return the new instance
+     */
+    static <T extends ComponentDefinition> T create(Class<T> definition, Init<T> initEvent)
+            throws InstantiationException, IllegalAccessException, NoSuchMethodException, InvocationTargetException {
+        ComponentFactory f = FACTORIES.get(definition);
+        if (initEvent == null) {
+            return definition.cast(f.newInstance());
+        }
+        return definition.cast(f.newInstance(initEvent));
+    }
+
+    private ComponentDefinition newInstance()
+            throws InstantiationException, IllegalAccessException, NoSuchMethodException, InvocationTargetException {
+        MethodHandle mh = noInitConstructor;
+        if (mh == null) {
+            checkInstantiable();
+            mh = LOOKUP.unreflectConstructor(definition.getDeclaredConstructor()).asType(NO_INIT);
+            noInitConstructor = mh;
+        }
+        try {
+            return (ComponentDefinition) mh.invokeExact();
+        } catch (RuntimeException | Error ex) {
+            throw ex;
+        } catch (Throwable ex) {
+            throw new InvocationTargetException(ex);
+        }
+    }
+
+    private ComponentDefinition newInstance(Init<?> initEvent)
+            throws InstantiationException, IllegalAccessException, NoSuchMethodException, InvocationTargetException {
+        Class<?> initType = initEvent.getClass();
+        MethodHandle mh = constructors.get(initType);
+        if (mh == null) {
+            checkInstantiable();
+            mh = LOOKUP.unreflectConstructor(findConstructor(initType)).asType(WITH_INIT);
+            constructors.put(initType, mh);
+        }
+        try {
+            return (ComponentDefinition) mh.invokeExact((Init) initEvent);
+        } catch (Throwable ex) {
+            throw new InvocationTargetException(ex);
+        }
+    }
+
+    private void checkInstantiable() throws InstantiationException {
+        if (Modifier.isAbstract(definition.getModifiers()) || definition.isInterface()) {
+            throw new InstantiationException(definition.getName());
+        }
+    }
+
+    private Constructor<?> findConstructor(Class<?> initType) throws NoSuchMethodException {
+        try {
+            return definition.getConstructor(initType);
+        } catch (NoSuchMethodException ex) {
+            // look for a constructor that takes a single parameter
+            // and is assigment compatible with the given init event
+            Constructor<?> best = null;
+            for (Constructor<?> constr : definition.getConstructors()) {
+                Class<?>[] types = constr.getParameterTypes();
+                if ((types.length == 1) && types[0].isAssignableFrom(initType)) {
+                    if ((best == null) || best.getParameterTypes()[0].isAssignableFrom(types[0])) {
+                        best = constr;
+                    }
+                }
+            }
+            if (best == null) {
+                throw ex;
+            }
+            return best;
+        }
+    }
+}
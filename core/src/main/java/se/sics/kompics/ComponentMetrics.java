@@ -0,0 +1,282 @@
+/*
+ * This file is part of the Kompics component model runtime.
+ *
+ * Copyright (C) 2009 Swedish Institute of Computer Science (SICS) 
+ * Copyright (C) 2009 Royal Institute of Technology (KTH)
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package se.sics.kompics;
+
+import java.lang.management.ManagementFactory;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * Execution metrics of a single component, collected when
+ * {@link JavaComponent#METRICS_KEY} is set.
+ * <p>
+ * Tracks, per subscribed handler, how often it ran and for how long, how
+ * many events wait at each port, and how long the component sits in the
+ * scheduler's ready queue before a worker picks it up. Times are kept as
+ * totals, maxima and histograms with power-of-two nanosecond buckets.
+ * <p>
+ * Read it with {@link Component#metrics()} or over JMX, see
+ * {@link ComponentMetricsMXBean}. Values are updated without locking, so a
+ * snapshot taken while the component runs may be off by the event in
+ * flight.
+ */
+public final class ComponentMetrics implements ComponentMetricsMXBean {
+
+    /**
+     * Number of histogram buckets, bucket {@code i} counts times in
+     * {@code [2^i, 2^(i+1))} nanoseconds (bucket 0 includes 0).
+     */
+    public static final int BUCKETS = 64;
+
+    private final JavaComponent owner;
+    private final boolean jmx;
+    private final ConcurrentHashMap<Object, Timer> handlers = new ConcurrentHashMap<Object, Timer>();
+    private final Timer ready = new Timer();
+    private volatile long readySince = 0;
+    private ObjectName name = null;
+
+    ComponentMetrics(JavaComponent owner, boolean jmx) {
+        this.owner = owner;
+        this.jmx = jmx;
+    }
+
+    /*
+     * === COLLECTION ===
+     */
+    /**
+     * Starts timing a handler, pass the result to {@link #handled}.
+     */
+    long handling() {
+        return System.nanoTime();
+    }
+
+    /**
+     * @param handler a {@link Handler} or {@link MatchedHandler}
+     * @param start what {@link #handling()} returned
+     */
+    void handled(Object handler, long start) {
+        long time = System.nanoTime() - start;
+        Timer t = handlers.get(handler);
+        if (t == null) {
+            Timer nt = new Timer();
+            t = handlers.putIfAbsent(handler, nt);
+            if (t == null) {
+                t = nt;
+            }
+        }
+        t.record(time);
+    }
+
+    /**
+     * Called right before the component is handed to its scheduler.
+     */
+    void scheduled() {
+        readySince = System.nanoTime();
+    }
+
+    /**
+     * Called when a worker starts executing the component.
+     */
+    void executing() {
+        long since = readySince;
+        if (since != 0) {
+            readySince = 0;
+            ready.record(System.nanoTime() - since);
+        }
+    }
+
+    /*
+     * === JMX ===
+     */
+    /**
+     * Registers with the platform MBeanServer if JMX is enabled, once the
+     * owner has been constructed.
+     */
+    void register() {
+        if (!jmx) {
+            return;
+        }
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName on = new ObjectName("se.sics.kompics:type=Component,name="
+                    + ObjectName.quote(getComponent()) + ",id=" + owner.id());
+            server.registerMBean(this, on);
+            name = on;
+        } catch (JMException ex) {
+            Kompics.logger.warn("Could not register metrics of {} with JMX: {}", owner, ex);
+        }
+    }
+
+    void unregister() {
+        ObjectName on = name;
+        if (on == null) {
+            return;
+        }
+        name = null;
+        try {
+            ManagementFactory.getPlatformMBeanServer().unregisterMBean(on);
+        } catch (JMException ex) {
+            Kompics.logger.debug("Could not unregister metrics of {}: {}", owner, ex);
+        }
+    }
+
+    /*
+     * === PULL API ===
+     */
+    @Override
+    public String getComponent() {
+        return owner.getComponent().getClass().getName();
+    }
+
+    @Override
+    public Map<String, Stats> getHandlers() {
+        Map<String, Stats> snapshot = new TreeMap<String, Stats>();
+        for (Map.Entry<Object, Timer> e : handlers.entrySet()) {
+            String key = e.getKey().getClass().getName();
+            // several instances of one handler class get numbered
+            for (int i = 2; snapshot.containsKey(key); i++) {
+                key = e.getKey().getClass().getName() + "#" + i;
+            }
+            snapshot.put(key, e.getValue().snapshot());
+        }
+        return snapshot;
+    }
+
+    /**
+     * @param handler a handler subscribed in this component
+     * @return the handler's execution times, or {@code null} if it never ran
+     */
+    public Stats getHandler(Object handler) {
+        Timer t = handlers.get(handler);
+        return (t != null) ? t.snapshot() : null;
+    }
+
+    @Override
+    public Map<String, Integer> getQueueDepths() {
+        return owner.queueDepths();
+    }
+
+    @Override
+    public Stats getReadyTime() {
+        return ready.snapshot();
+    }
+
+    @Override
+    public void reset() {
+        handlers.clear();
+        ready.reset();
+    }
+
+    /**
+     * Count, total, maximum and histogram of a set of measured times.
+     */
+    public static final class Stats {
+
+        private final long count;
+        private final long totalNanos;
+        private final long maxNanos;
+        private final long[] histogram;
+
+        Stats(long count, long totalNanos, long maxNanos, long[] histogram) {
+            this.count = count;
+            this.totalNanos = totalNanos;
+            this.maxNanos = maxNanos;
+            this.histogram = histogram;
+        }
+
+        public long getCount() {
+            return count;
+        }
+
+        public long getTotalNanos() {
+            return totalNanos;
+        }
+
+        public long getMaxNanos() {
+            return maxNanos;
+        }
+
+        public long getMeanNanos() {
+            return (count > 0) ? totalNanos / count : 0;
+        }
+
+        /**
+         * @return the number of times in each bucket, see {@link #BUCKETS}
+         */
+        public long[] getHistogram() {
+            return histogram.clone();
+        }
+
+        @Override
+        public String toString() {
+            return "Stats(count=" + count + ", total=" + totalNanos
+                    + "ns, mean=" + getMeanNanos() + "ns, max=" + maxNanos + "ns)";
+        }
+    }
+
+    private static final class Timer {
+
+        private final AtomicLong count = new AtomicLong();
+        private final AtomicLong total = new AtomicLong();
+        private final AtomicLong max = new AtomicLong();
+        private final AtomicLongArray buckets = new AtomicLongArray(BUCKETS);
+
+        void record(long nanos) {
+            if (nanos < 0) {
+                nanos = 0;
+            }
+            count.incrementAndGet();
+            total.addAndGet(nanos);
+            long m = max.get();
+            while (nanos > m && !max.compareAndSet(m, nanos)) {
+                m = max.get();
+            }
+            buckets.incrementAndGet(bucket(nanos));
+        }
+
+        Stats snapshot() {
+            long[] h = new long[BUCKETS];
+            for (int i = 0; i < BUCKETS; i++) {
+                h[i] = buckets.get(i);
+            }
+            return new Stats(count.get(), total.get(), max.get(), h);
+        }
+
+        void reset() {
+            count.set(0);
+            total.set(0);
+            max.set(0);
+            for (int i = 0; i < BUCKETS; i++) {
+                buckets.set(i, 0);
+            }
+        }
+    }
+
+    static int bucket(long nanos) {
+        return (nanos <= 0) ? 0 : 63 - Long.numberOfLeadingZeros(nanos);
+    }
+}
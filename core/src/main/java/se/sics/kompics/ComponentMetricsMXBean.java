@@ -0,0 +1,59 @@
+/*
+ * This file is part of the Kompics component model runtime.
+ *
+ * Copyright (C) 2009 Swedish Institute of Computer Science (SICS) 
+ * Copyright (C) 2009 Royal Institute of Technology (KTH)
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package se.sics.kompics;
+
+import java.util.Map;
+
+/**
+ * The management interface of {@link ComponentMetrics}, registered with the
+ * platform MBean server under
+ * {@code se.sics.kompics:type=Component,name=<definition>,id=<component id>}.
+ */
+public interface ComponentMetricsMXBean {
+
+    /**
+     * @return the class name of the component definition
+     */
+    public String getComponent();
+
+    /**
+     * @return execution times per subscribed handler, keyed by handler
+     * class
+     */
+    public Map<String, ComponentMetrics.Stats> getHandlers();
+
+    /**
+     * @return events waiting at each of the component's ports, keyed by
+     * port type and direction
+     */
+    public Map<String, Integer> getQueueDepths();
+
+    /**
+     * @return time between the component being scheduled and it starting
+     * to execute
+     */
+    public ComponentMetrics.Stats getReadyTime();
+
+    /**
+     * Sets all counters and histograms back to zero.
+     */
+    public void reset();
+}
@@ -5,6 +5,11 @@
  */
 package se.sics.kompics;
 
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.LockSupport;
+
 /**
  *
  * @author lkroll
@@ -15,6 +20,7 @@ public class Direct {
 
         private Port origin;
         private R response;
+        private Pending<R> pending; // set if made with ComponentDefinition.request
 
         void setOrigin(Port origin) {
             if (this.origin == null) { // Only set origin once
@@ -37,9 +43,284 @@ public class Direct {
         public boolean hasResponse() {
             return response != null;
         }
+
+        void setPending(Pending<R> pending) {
+            if (this.pending != null) {
+                throw new KompicsException("Request " + this + " is already waiting for a response");
+            }
+            this.pending = pending;
+        }
+
+        /**
+         * @return {@code false} if the request wasn't made with
+         * {@link ComponentDefinition#request} and the response has to be
+         * delivered to the origin port
+         */
+        @SuppressWarnings("unchecked")
+        boolean complete(Response r) {
+            if (pending == null) {
+                return false;
+            }
+            pending.complete((R) r);
+            return true;
+        }
     }
 
     public static interface Response extends KompicsEvent {
 
     }
+
+    /**
+     * Receives the outcome of a request made with
+     * {@link ComponentDefinition#request}. Exactly one of the methods is
+     * called, on the thread executing the requesting component, unless the
+     * request is cancelled first.
+     *
+     * @param <R> the response type
+     */
+    public static interface Callback<R extends Response> {
+
+        public void completed(R response);
+
+        public void timedOut();
+    }
+
+    /**
+     * A request made with {@link ComponentDefinition#request}.
+     * <p>
+     * This is all that is kept per request: the responder completes it
+     * directly, it is linked into the timeout wheel itself, and it is the
+     * event that carries the outcome back to the requesting component.
+     *
+     * @param <R> the response type
+     */
+    public static final class Pending<R extends Response> implements KompicsEvent {
+
+        private static final int WAITING = 0;
+        private static final int COMPLETED = 1;
+        private static final int TIMED_OUT = 2;
+        private static final int CANCELLED = 3;
+        @SuppressWarnings("rawtypes") // the updater can't name Pending<?>
+        private static final AtomicIntegerFieldUpdater<Pending> STATE
+                = AtomicIntegerFieldUpdater.newUpdater(Pending.class, "state");
+
+        private final ComponentCore requester;
+        private final Callback<? super R> callback;
+        private final long deadline; // System.nanoTime()
+        private volatile int state = WAITING;
+        private R response;
+        private boolean timed = false;
+        /*
+         * links for the Timeouts stacks, and for the wheel, where they are
+         * only touched by the timer thread
+         */
+        private Pending<?> nextAdded, nextFinished;
+        private Pending<?> prev, next;
+        private int bucket;
+        private boolean inWheel = false;
+
+        Pending(ComponentCore requester, Callback<? super R> callback, long deadline) {
+            this.requester = requester;
+            this.callback = callback;
+            this.deadline = deadline;
+        }
+
+        void complete(R response) {
+            if (STATE.compareAndSet(this, WAITING, COMPLETED)) {
+                this.response = response; // published by the queue handoff
+                finished();
+                requester.requestDone(this);
+            }
+        }
+
+        void expire() {
+            if (STATE.compareAndSet(this, WAITING, TIMED_OUT)) {
+                requester.requestDone(this);
+            }
+        }
+
+        /*
+         * runs on the requester's thread
+         */
+        void run() {
+            if (state == COMPLETED) {
+                callback.completed(response);
+            } else if (state == TIMED_OUT) {
+                callback.timedOut();
+            }
+        }
+
+        /**
+         * @return whether the request has completed, timed out or been
+         * cancelled
+         */
+        public boolean isDone() {
+            return state != WAITING;
+        }
+
+        /**
+         * Stops waiting for the response, neither callback method will be
+         * called.
+         *
+         * @return {@code false} if the request had already completed or
+         * timed out, in which case the callback still runs
+         */
+        public boolean cancel() {
+            if (STATE.compareAndSet(this, WAITING, CANCELLED)) {
+                finished();
+                return true;
+            }
+            return false;
+        }
+
+        /*
+         * must be called before the request is sent
+         */
+        void scheduleTimeout() {
+            timed = true;
+            Timeouts.add(this);
+        }
+
+        private void finished() {
+            if (timed) {
+                Timeouts.remove(this);
+            }
+        }
+    }
+
+    /*
+     * A hashed timing wheel on a single daemon thread, started on first use,
+     * that expires requests with a resolution of one tick. Only the timer
+     * thread touches the wheel. Other threads hand requests over on two
+     * lock-free stacks threaded through the requests themselves: one for new
+     * timeouts, and one for requests that finished early and have to be
+     * unlinked, so they don't keep their response, callback and requester
+     * reachable until the deadline.
+     */
+    private static final class Timeouts implements Runnable {
+
+        private static final long TICK = TimeUnit.MILLISECONDS.toNanos(10);
+        private static final int WHEEL_SIZE = 512; // a power of two
+        private static final AtomicReference<Pending<?>> added = new AtomicReference<Pending<?>>();
+        private static final AtomicReference<Pending<?>> finished = new AtomicReference<Pending<?>>();
+        private static volatile boolean idle = false;
+        private static final Thread thread;
+        private final Pending<?>[] wheel = new Pending<?>[WHEEL_SIZE];
+        private final long origin = System.nanoTime();
+        private long tick = 0; // the next tick to expire, once it has passed
+        private int size = 0;
+
+        static {
+            thread = new Thread(new Timeouts(), "kompics-request-timeouts");
+            thread.setDaemon(true);
+            thread.start();
+        }
+
+        static void add(Pending<?> p) {
+            Pending<?> head;
+            do {
+                head = added.get();
+                p.nextAdded = head;
+            } while (!added.compareAndSet(head, p));
+            // the timer thread announces itself before its last look
+            if (idle) {
+                LockSupport.unpark(thread);
+            }
+        }
+
+        static void remove(Pending<?> p) {
+            Pending<?> head;
+            do {
+                head = finished.get();
+                p.nextFinished = head;
+            } while (!finished.compareAndSet(head, p));
+        }
+
+        @Override
+        public void run() {
+            while (true) {
+                // new timeouts first, so early finishers can be unlinked
+                for (Pending<?> p = added.getAndSet(null); p != null;) {
+                    Pending<?> n = p.nextAdded;
+                    p.nextAdded = null;
+                    if (!p.isDone()) {
+                        link(p);
+                    }
+                    p = n;
+                }
+                for (Pending<?> p = finished.getAndSet(null); p != null;) {
+                    Pending<?> n = p.nextFinished;
+                    p.nextFinished = null;
+                    if (p.inWheel) {
+                        unlink(p);
+                    }
+                    p = n;
+                }
+                long now = System.nanoTime();
+                long current = tickOf(now);
+                if (size == 0) {
+                    tick = current;
+                    idle = true;
+                    if (added.get() == null) {
+                        LockSupport.park(this);
+                    }
+                    idle = false;
+                    continue;
+                }
+                // only whole ticks are expired, a bucket holds deadlines up
+                // to the end of its tick. After a long stall every bucket is
+                // looked at once.
+                for (tick = Math.max(tick, current - WHEEL_SIZE); tick < current; tick++) {
+                    expire(wheel[(int) tick & (WHEEL_SIZE - 1)], now);
+                }
+                LockSupport.parkNanos(this, TICK);
+            }
+        }
+
+        private long tickOf(long nanoTime) {
+            return Math.max(0, nanoTime - origin) / TICK;
+        }
+
+        private void link(Pending<?> p) {
+            // anything already due goes into the next bucket to expire
+            p.bucket = (int) Math.max(tickOf(p.deadline), tick) & (WHEEL_SIZE - 1);
+            Pending<?> head = wheel[p.bucket];
+            p.next = head;
+            if (head != null) {
+                head.prev = p;
+            }
+            wheel[p.bucket] = p;
+            p.inWheel = true;
+            size++;
+        }
+
+        private void unlink(Pending<?> p) {
+            if (p.prev != null) {
+                p.prev.next = p.next;
+            } else {
+                wheel[p.bucket] = p.next;
+            }
+            if (p.next != null) {
+                p.next.prev = p.prev;
+            }
+            p.prev = null;
+            p.next = null;
+            p.inWheel = false;
+            size--;
+        }
+
+        /*
+         * entries due in a later turn of the wheel stay where they are
+         */
+        private void expire(Pending<?> head, long now) {
+            for (Pending<?> p = head; p != null;) {
+                Pending<?> n = p.next;
+                if (p.deadline - now <= 0) {
+                    unlink(p);
+                    p.expire();
+                }
+                p = n;
+            }
+        }
+    }
 }
@@ -0,0 +1,157 @@
+/*
+ * This file is part of the Kompics component model runtime.
+ *
+ * Copyright (C) 2009 Swedish Institute of Computer Science (SICS) 
+ * Copyright (C) 2009 Royal Institute of Technology (KTH)
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package se.sics.kompics;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * What the runtime needs to know about the class hierarchy of an event
+ * class, computed once per class for the life of the JVM.
+ * <p>
+ * Port type checks, handler and selector resolution and serializer lookup
+ * all ask "is this class a subtype of that one". They consult this registry
+ * instead of walking the hierarchy with
+ * {@link Class#isAssignableFrom(Class)} every time.
+ */
+public final class EventMetadata {
+
+    private static final ClassValue<EventMetadata> REGISTRY = new ClassValue<EventMetadata>() {
+
+        @Override
+        protected EventMetadata computeValue(Class<?> type) {
+            return new EventMetadata(type);
+        }
+    };
+    private static final int UNKNOWN = -1;
+    private static final int POSITIVE = 1;
+    private static final int NEGATIVE = 2;
+
+    private final Class<?> type;
+    private final List<Class<?>> supertypes;
+    private final List<Class<?>> interfaces;
+    private final Set<Class<?>> supertypeSet;
+    /**
+     * Directions the class may travel in on each port type class, filled in
+     * on first use. The values are kept with the port type class and only
+     * reference this registry weakly, so neither a port type nor an event
+     * class from another class loader is pinned by the other.
+     */
+    private final ClassValue<Directions> directions = new ClassValue<Directions>() {
+
+        @Override
+        protected Directions computeValue(Class<?> portType) {
+            return new Directions();
+        }
+    };
+
+    private EventMetadata(Class<?> type) {
+        this.type = type;
+        // the class, then each superclass followed by its own interfaces,
+        // then the interfaces those extend
+        LinkedHashSet<Class<?>> types = new LinkedHashSet<Class<?>>();
+        for (Class<?> c = type; c != null; c = c.getSuperclass()) {
+            types.add(c);
+            types.addAll(Arrays.asList(c.getInterfaces()));
+        }
+        ArrayList<Class<?>> pending = new ArrayList<Class<?>>(types);
+        for (int i = 0; i < pending.size(); i++) {
+            for (Class<?> intf : pending.get(i).getInterfaces()) {
+                if (types.add(intf)) {
+                    pending.add(intf);
+                }
+            }
+        }
+        ArrayList<Class<?>> intfs = new ArrayList<Class<?>>();
+        for (Class<?> c : types) {
+            if (c.isInterface()) {
+                intfs.add(c);
+            }
+        }
+        this.supertypes = Collections.unmodifiableList(new ArrayList<Class<?>>(types));
+        this.interfaces = Collections.unmodifiableList(intfs);
+        this.supertypeSet = Collections.unmodifiableSet(new HashSet<Class<?>>(types));
+    }
+
+    /**
+     * Gets the metadata for a class.
+     * <p>
+     * @param type the class
+     * @return the metadata, the same instance every time
+     */
+    public static EventMetadata of(Class<?> type) {
+        return REGISTRY.get(type);
+    }
+
+    public Class<?> getType() {
+        return type;
+    }
+
+    /**
+     * The class itself and all of its superclasses and interfaces, starting
+     * with the class.
+     * <p>
+     * @return the supertypes
+     */
+    public List<Class<?>> getSupertypes() {
+        return supertypes;
+    }
+
+    /**
+     * All interfaces the class implements, directly or not.
+     * <p>
+     * @return the interfaces
+     */
+    public List<Class<?>> getInterfaces() {
+        return interfaces;
+    }
+
+    /**
+     * Same as {@code other.isAssignableFrom(getType())}.
+     * <p>
+     * @param other a class
+     * @return true if the class is {@code other} or a subtype of it
+     */
+    public boolean isSubtypeOf(Class<?> other) {
+        return (other == type) || supertypeSet.contains(other);
+    }
+
+    boolean travels(PortType portType, boolean positive) {
+        Directions cached = directions.get(portType.getClass());
+        int d = cached.value;
+        if (d == UNKNOWN) {
+            d = (portType.declares(true, this) ? POSITIVE : 0)
+                    | (portType.declares(false, this) ? NEGATIVE : 0);
+            cached.value = d;
+        }
+        return (d & (positive ? POSITIVE : NEGATIVE)) != 0;
+    }
+
+    private static final class Directions {
+
+        volatile int value = UNKNOWN;
+    }
+}
@@ -0,0 +1,48 @@
+/*
+ * This file is part of the Kompics component model runtime.
+ *
+ * Copyright (C) 2009 Swedish Institute of Computer Science (SICS) 
+ * Copyright (C) 2009 Royal Institute of Technology (KTH)
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package se.sics.kompics;
+
+/**
+ * A queue of events waiting at a port for the owning component to execute
+ * them.
+ * <p>
+ * Any number of threads may {@link #enqueue(Object) enqueue}, while only the
+ * thread currently executing the owner polls.
+ * <p>
+ * @param <E> the element type
+ */
+public interface EventQueue<E> {
+
+    /**
+     * Adds an element, applying the queue's overflow policy if it is full.
+     * <p>
+     * @param e the element
+     * @return {@code false} if an older element was dropped to make room,
+     * i.e. the queue did not grow, {@code true} otherwise
+     */
+    public boolean enqueue(E e);
+
+    public E poll();
+
+    public boolean isEmpty();
+
+    public void clear();
+}
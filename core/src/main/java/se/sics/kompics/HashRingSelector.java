@@ -0,0 +1,82 @@
+/*
+ * This file is part of the Kompics component model runtime.
+ *
+ * Copyright (C) 2009 Swedish Institute of Computer Science (SICS) 
+ * Copyright (C) 2009 Royal Institute of Technology (KTH)
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package se.sics.kompics;
+
+/**
+ * A {@link ChannelSelector} that owns part of a consistent-hash ring.
+ * <p>
+ * Each selector places {@code virtualNodes} points for its node on the ring.
+ * An event goes to the channel owning the first point at or after the hash
+ * of {@link #getValue(KompicsEvent) its key}, so every event goes to exactly
+ * one of the selectors of the same class, and adding or removing a node only
+ * moves the keys next to its points.
+ * <p>
+ * @param <E> the event type
+ * @param <F> the key type
+ */
+public abstract class HashRingSelector<E extends KompicsEvent, F> extends ChannelSelector<E, F> {
+
+    private final Object node;
+    private final int virtualNodes;
+
+    protected HashRingSelector(Class<E> eventType, Object node, int virtualNodes, boolean positive) {
+        super(eventType, null, positive);
+        if (virtualNodes < 1) {
+            throw new IllegalArgumentException("A node needs at least one point on the ring");
+        }
+        this.node = node;
+        this.virtualNodes = virtualNodes;
+    }
+
+    public final Object getNode() {
+        return node;
+    }
+
+    public final int getVirtualNodes() {
+        return virtualNodes;
+    }
+
+    /**
+     * @param i the virtual node
+     * @return the ring position of virtual node {@code i}
+     */
+    final int point(int i) {
+        return mix(31 * node.hashCode() + mix(i));
+    }
+
+    /**
+     * @param key the event key
+     * @return the ring position of {@code key}
+     */
+    static int position(Object key) {
+        return mix(key.hashCode());
+    }
+
+    // the murmur3 finaliser, spreads hash codes over the whole ring
+    private static int mix(int h) {
+        h ^= h >>> 16;
+        h *= 0x85ebca6b;
+        h ^= h >>> 13;
+        h *= 0xc2b2ae35;
+        h ^= h >>> 16;
+        return h;
+    }
+}
@@ -20,13 +20,21 @@
  */
 package se.sics.kompics;
 
-import java.lang.reflect.Constructor;
 import java.lang.reflect.InvocationTargetException;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Objects;
 import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+import java.util.concurrent.atomic.AtomicReference;
 import se.sics.kompics.Fault.ResolveAction;
 import se.sics.kompics.config.Config;
 import se.sics.kompics.config.ConfigUpdate;
@@ -42,6 +50,66 @@ import se.sics.kompics.config.ValueMerger;
  */
 public class JavaComponent extends ComponentCore {
 
+    /**
+     * Port queue implementation: "unbounded" (the default) or "ring", a
+     * bounded {@link RingQueue}.
+     */
+    public static final String QUEUE_TYPE_KEY = "kompics.queue.type";
+    /**
+     * Capacity of each port's {@link RingQueue} (default 1024).
+     */
+    public static final String QUEUE_CAPACITY_KEY = "kompics.queue.capacity";
+    /**
+     * What a full {@link RingQueue} does: "block" (the default),
+     * "drop-oldest" or "fault". See {@link RingQueue.Backpressure}.
+     */
+    public static final String QUEUE_BACKPRESSURE_KEY = "kompics.queue.backpressure";
+    private static final int DEFAULT_QUEUE_CAPACITY = 1024;
+    /**
+     * Whether to drain several events from one port per pass (default
+     * false). Batching gives up the global arrival order across ports, FIFO
+     * order per port is kept.
+     */
+    public static final String BATCHED_KEY = "kompics.execute.batched";
+    /**
+     * Events executed per scheduling in batched mode, overriding
+     * {@link Kompics#maxNumOfExecutedEvents}.
+     */
+    public static final String BATCH_SIZE_KEY = "kompics.execute.batch-size";
+    /**
+     * Which scheduler runs the component and, unless they pick another one,
+     * its children: "default" for the one Kompics was started with,
+     * "dedicated" for a single thread of its own, or the name of a group
+     * registered with {@link Kompics#addSchedulerGroup(String, Scheduler)}.
+     */
+    public static final String SCHEDULER_GROUP_KEY = "kompics.scheduler.group";
+    public static final String DEFAULT_GROUP = "default";
+    public static final String DEDICATED_GROUP = "dedicated";
+    /**
+     * Whether the component starts and stops its children as one batch
+     * (default false). The children count themselves off a shared counter
+     * and only the last one reports back, instead of every child sending
+     * its own {@link Started} or {@link Stopped}. Large batches are handed
+     * out in chunks through {@link Scheduler#execute(Runnable)}.
+     */
+    public static final String FAST_LIFECYCLE_KEY = "kompics.lifecycle.fast";
+    /**
+     * Whether to collect {@link ComponentMetrics} (default false). Costs two
+     * clock reads per handler invocation and one per scheduling.
+     */
+    public static final String METRICS_KEY = "kompics.metrics.enabled";
+    /**
+     * Whether collected metrics are registered as MXBeans with the platform
+     * MBean server (default true).
+     */
+    public static final String METRICS_JMX_KEY = "kompics.metrics.jmx";
+    /**
+     * Whether ports owned by the component that are joined to exactly one
+     * other port by a plain two-way channel deliver straight to the far side
+     * (default true). See {@link JavaPort}.
+     */
+    public static final String FUSED_CHANNELS_KEY = "kompics.channels.fused";
+
     /*
      * outside ports
      */
@@ -49,6 +117,40 @@ public class JavaComponent extends ComponentCore {
     private HashMap<Class<? extends PortType>, JavaPort<? extends PortType>> negativePorts;
     private JavaPort<ControlPort> positiveControl, negativeControl;
     ComponentDefinition component;
+    /*
+     * queue settings for ports owned by this component, 0 means unbounded
+     */
+    private final int queueCapacity;
+    private final RingQueue.Backpressure backpressure;
+    /*
+     * batched execution, 0 means Kompics.maxNumOfExecutedEvents
+     */
+    private final boolean batched;
+    private final int batchSize;
+    /*
+     * fast lifecycle: the children started or stopped as one batch, how many
+     * of them have yet to report, and whether this component is part of its
+     * parent's batch
+     */
+    private final boolean fastLifecycle;
+    private ComponentCore[] lifecycleBatch = null;
+    private volatile int pendingChildren = 0;
+    private static final AtomicIntegerFieldUpdater<JavaComponent> PENDING_CHILDREN
+            = AtomicIntegerFieldUpdater.newUpdater(JavaComponent.class, "pendingChildren");
+    private boolean inParentBatch = false;
+    /*
+     * this component's reports to its parent, made on first use
+     */
+    private Started startedEvent = null;
+    private Stopped stoppedEvent = null;
+    /*
+     * whether ports owned by this component may fuse their channel
+     */
+    final boolean fuseChannels;
+    /*
+     * config updates forwarded by the parent that have not been handled yet
+     */
+    private final AtomicReference<ConfigUpdate> pendingUpdate = new AtomicReference<ConfigUpdate>();
 
     /**
      * Instantiates a new component core.
@@ -71,6 +173,42 @@ public class JavaComponent extends ComponentCore {
         }
         this.component = componentDefinition;
         parentThreadLocal.set(null);
+        String queueType = conf.getValueOrDefault(QUEUE_TYPE_KEY, "unbounded");
+        if (queueType.equalsIgnoreCase("ring")) {
+            this.queueCapacity = conf.getValueOrDefault(QUEUE_CAPACITY_KEY, DEFAULT_QUEUE_CAPACITY);
+            this.backpressure = RingQueue.Backpressure.fromString(conf.getValueOrDefault(QUEUE_BACKPRESSURE_KEY, "block"));
+        } else if (queueType.equalsIgnoreCase("unbounded")) {
+            this.queueCapacity = 0;
+            this.backpressure = null;
+        } else {
+            throw new ConfigurationException("Unknown queue type: " + queueType);
+        }
+        this.batched = conf.getValueOrDefault(BATCHED_KEY, false);
+        this.batchSize = conf.getValueOrDefault(BATCH_SIZE_KEY, 0);
+        this.fastLifecycle = conf.getValueOrDefault(FAST_LIFECYCLE_KEY, false);
+        this.fuseChannels = conf.getValueOrDefault(FUSED_CHANNELS_KEY, true);
+        if (conf.getValueOrDefault(METRICS_KEY, false)) {
+            this.metrics = new ComponentMetrics(this, conf.getValueOrDefault(METRICS_JMX_KEY, true));
+        }
+        if (parent != null) {
+            constructing.set(this);
+        }
+        // the group is inherited through the config, only resolve it where it changes
+        this.schedulerGroup = conf.getValueOrDefault(SCHEDULER_GROUP_KEY, DEFAULT_GROUP);
+        String parentGroup = (parent != null) ? parent.schedulerGroup : DEFAULT_GROUP;
+        if (!schedulerGroup.equals(parentGroup)) {
+            if (schedulerGroup.equals(DEFAULT_GROUP)) {
+                this.scheduler = Kompics.getScheduler();
+            } else if (schedulerGroup.equals(DEDICATED_GROUP)) {
+                this.scheduler = Kompics.createDedicatedScheduler();
+                this.dedicatedScheduler = true;
+            } else {
+                this.scheduler = Kompics.getSchedulerGroup(schedulerGroup);
+                if (this.scheduler == null) {
+                    throw new ConfigurationException("Unknown scheduler group: " + schedulerGroup);
+                }
+            }
+        }
     }
 
 //    public JavaComponent(JavaComponent other) {
@@ -139,6 +277,14 @@ public class JavaComponent extends ComponentCore {
         return getPositive(portType);
     }
 
+    @Override
+    <E> EventQueue<E> createEventQueue() {
+        if (queueCapacity > 0) {
+            return new RingQueue<E>(queueCapacity, backpressure);
+        }
+        return super.createEventQueue();
+    }
+
     @Override
     public <P extends PortType> Negative<P> createNegativePort(Class<P> portType) {
         JavaPort<P> negativePort = new JavaPort<P>(false,
@@ -197,6 +343,8 @@ public class JavaComponent extends ComponentCore {
 
         negativeControl.doInternalSubscribe(configHandler);
 
+        negativeControl.doRuntimeSubscribe(requestHandler);
+
         return negativeControl;
     }
 
@@ -227,7 +375,9 @@ public class JavaComponent extends ComponentCore {
             ComponentCore child = component.getComponentCore();
 
             //child.workCount.incrementAndGet();
-            child.setScheduler(scheduler);
+            if (child.scheduler == null) { // not placed in a group of its own
+                child.setScheduler(scheduler);
+            }
 
             children.add(child);
 
@@ -249,25 +399,147 @@ public class JavaComponent extends ComponentCore {
         }
     }
 
-    
+    @Override
+    public <T extends ComponentDefinition> List<Component> doCreateAll(final Class<T> definition, final List<? extends Init<T>> initEvents) {
+        final int n = initEvents.size();
+        final ComponentDefinition[] created = new ComponentDefinition[n];
+        final int chunks = (n + CREATE_CHUNK_SIZE - 1) / CREATE_CHUNK_SIZE;
+        final AtomicInteger nextChunk = new AtomicInteger(0);
+        final CountDownLatch finished = new CountDownLatch(chunks);
+        final AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+        Runnable creator = new Runnable() {
+
+            @Override
+            public void run() {
+                int chunk;
+                while ((chunk = nextChunk.getAndIncrement()) < chunks) {
+                    int end = Math.min(n, (chunk + 1) * CREATE_CHUNK_SIZE);
+                    try {
+                        for (int i = chunk * CREATE_CHUNK_SIZE; (i < end) && (failure.get() == null); i++) {
+                            parentThreadLocal.set(JavaComponent.this);
+                            created[i] = createInstance(definition, initEvents.get(i));
+                        }
+                    } catch (Throwable t) {
+                        failure.compareAndSet(null, t);
+                        parentThreadLocal.set(null);
+                    } finally {
+                        finished.countDown();
+                    }
+                }
+            }
+        };
+        // helpers only ever take chunks nobody has claimed yet, so the
+        // calling thread never waits for a helper that has not started
+        Scheduler s = (scheduler != null) ? scheduler : Kompics.getScheduler();
+        int helpers = (s != null) ? Math.min(chunks, s.getParallelism()) - 1 : 0;
+        for (int i = 0; i < helpers; i++) {
+            try {
+                s.execute(creator);
+            } catch (RejectedExecutionException ex) {
+                break; // shutting down, do the rest here
+            }
+        }
+        creator.run();
+        try {
+            finished.await();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted while creating components "
+                    + definition.getCanonicalName(), ex);
+        }
+        if (failure.get() != null) {
+            Throwable t = failure.get();
+            if (t instanceof InvocationTargetException) {
+                t = t.getCause();
+            }
+            throw new RuntimeException("Cannot create component "
+                    + definition.getCanonicalName(), t);
+        }
+        List<Component> ret = new ArrayList<Component>(n);
+        childrenLock.writeLock().lock();
+        try {
+            for (ComponentDefinition cd : created) {
+                ComponentCore child = cd.getComponentCore();
+                if (child.scheduler == null) { // not placed in a group of its own
+                    child.setScheduler(scheduler);
+                }
+                children.add(child);
+                ret.add(child);
+            }
+        } finally {
+            childrenLock.writeLock().unlock();
+        }
+        return ret;
+    }
+
+    private static final int CREATE_CHUNK_SIZE = 64;
+    /*
+     * the component under construction on this thread, so what it started
+     * can be released if the definition throws
+     */
+    private static final ThreadLocal<JavaComponent> constructing = new ThreadLocal<JavaComponent>();
+
     private <T extends ComponentDefinition> T createInstance(Class<T> definition, Init<T> initEvent) throws InstantiationException, IllegalAccessException, NoSuchMethodException, InvocationTargetException {
-        if (initEvent == null) {
-            return definition.newInstance();
-        }
-        // look for a constructor that takes a single parameter
-        // and is assigment compatible with the given init event
-        Constructor<T> constr = definition.getConstructor(initEvent.getClass());
-        return constr.newInstance(initEvent);
-//        Constructor[] constructors = definition.getConstructors();
-//        for (Constructor constr : constructors) {
-//            Class[] types = constr.getParameterTypes();
-//            if (types.length == 1) {
-//                Class type = types[0];
-//                if (type.isInstance(initEvent)) {
-//                    return constr.newInstance(initEvent);
-//                }
-//            }
-//        }
+        JavaComponent outer = constructing.get(); // creating a grandchild
+        constructing.set(null);
+        boolean created = false;
+        try {
+            T instance = ComponentFactory.create(definition, initEvent);
+            instance.getComponentCore().registerMetrics();
+            created = true;
+            return instance;
+        } finally {
+            JavaComponent failed = created ? null : constructing.get();
+            if (failed != null) {
+                if (failed.dedicatedScheduler) {
+                    Kompics.releaseDedicatedScheduler(failed.scheduler);
+                }
+                failed.unregisterMetrics(); // of the children it created
+            }
+            constructing.set(outer);
+        }
+    }
+
+    @Override
+    void portReady(PortCore<?> port) {
+        if (!batched) {
+            if (metrics != null) {
+                ((JavaPort<?>) port).markQueued(); // only counted for the queue depth
+            }
+            super.portReady(port);
+        } else if (((JavaPort<?>) port).markQueued()) {
+            readyPorts.offer(port); // each port is ready at most once
+        }
+    }
+
+    /*
+     * Queues the whole batch before accounting for it with a single work
+     * count update. Events may be executed before they are counted, which
+     * can take the count below zero for a moment, so the component is
+     * scheduled whenever the update takes the count from zero or less to
+     * above zero. A bounded queue may block while offering, so there every
+     * event has to be counted as it goes.
+     */
+    @Override
+    void eventsReceived(PortCore<?> port, List<? extends KompicsEvent> events, int wid) {
+        if (queueCapacity > 0) {
+            super.eventsReceived(port, events, wid);
+            return;
+        }
+        int n = 0;
+        for (KompicsEvent event : events) {
+            if (port.offer(event)) {
+                portReady(port);
+                n++;
+            }
+        }
+        if (n == 0) {
+            return;
+        }
+        int wc = workCount.getAndAdd(n);
+        if ((wc <= 0) && (wc + n > 0)) {
+            schedule(wid);
+        }
     }
 
     @Override
@@ -276,6 +548,13 @@ public class JavaComponent extends ComponentCore {
             return; // don't schedule these components
         }
         this.wid = wid;
+        if (metrics != null) {
+            metrics.executing();
+        }
+        if (batched) {
+            executeBatched();
+            return;
+        }
         //System.err.println("Executing " + wid);
 
 //		New scheduling code: Run n and move to end of schedule
@@ -300,10 +579,7 @@ public class JavaComponent extends ComponentCore {
                     Kompics.logger.debug("Not scheduling component {} / State is {}", component, state);
                     // try again
                     if (wc > 0) {
-                        if (scheduler == null) {
-                            scheduler = Kompics.getScheduler();
-                        }
-                        scheduler.schedule(this, wid);
+                        schedule(wid);
                     }
                     return; // Don't run anything else
                 }
@@ -326,35 +602,16 @@ public class JavaComponent extends ComponentCore {
                 continue;
             }
 
-            List<Handler<?>> handlers = nextPort.getSubscribedHandlers(event);
-
-            if (handlers != null) {
-                for (Handler h : handlers) {
-                    if (executeEvent(event, h)) {
-                        break; // state changed don't handle the rest of the event
-                    }
-                }
-            }
-            if (event instanceof PatternExtractor) {
-                PatternExtractor pe = (PatternExtractor) event;
-                List<MatchedHandler> mhandlers = nextPort.getSubscribedMatchers(pe);
-                if (mhandlers != null) {
-                    for (MatchedHandler mh : mhandlers) {
-                        if (executeEvent(pe, mh)) {
-                            break; // state changed don't handle the rest of the event
-                        }
-                    }
-                }
+            if (metrics != null) {
+                nextPort.markExecuted(1);
             }
+            executeHandlers(nextPort, event);
             wc = workCount.decrementAndGet();
             count++;
         }
 
         if (wc > 0) {
-            if (scheduler == null) {
-                scheduler = Kompics.getScheduler();
-            }
-            scheduler.schedule(this, wid);
+            schedule(wid);
         }
 
 //		Classic scheduling code: Run once and move to end of schedule
@@ -383,8 +640,111 @@ public class JavaComponent extends ComponentCore {
 //		}
     }
 
+    private void schedule(int wid) {
+        if (scheduler == null) {
+            scheduler = Kompics.getScheduler();
+        }
+        if (metrics != null) {
+            metrics.scheduled();
+        }
+        scheduler.schedule(this, wid);
+    }
+
+    /*
+     * Like the loop above, but ports are ready at most once and a pass drains
+     * up to the remaining budget from one port, settling the port and work
+     * counters once per pass.
+     */
+    private void executeBatched() {
+        int n = (batchSize > 0) ? batchSize : Kompics.maxNumOfExecutedEvents.get();
+        int count = 0;
+        int wc = workCount.get();
+
+        while ((count < n) && wc > 0) {
+            if (state == State.FAULTY) { // state might have changed between iterations
+                return;
+            }
+            if ((state == State.PASSIVE) || (state == State.STARTING)) {
+                KompicsEvent event = negativeControl.pickFirstEvent();
+                if (event == null) {
+                    Kompics.logger.debug("Not scheduling component {} / State is {}", component, state);
+                    // try again
+                    if (wc > 0) {
+                        schedule(wid);
+                    }
+                    return; // Don't run anything else
+                }
+                readyPorts.remove(negativeControl);
+                executeHandlers(negativeControl, event);
+                if (negativeControl.markExecuted(1)) {
+                    readyPorts.offer(negativeControl);
+                }
+                wc = workCount.decrementAndGet();
+                count++;
+                continue;
+            }
+            JavaPort<?> nextPort = (JavaPort<?>) readyPorts.poll();
+            if (nextPort == null) {
+                wc = workCount.decrementAndGet();
+                count++;
+                continue;
+            }
+            int avail = Math.min(n - count, nextPort.queuedEvents());
+            if (avail <= 0) { // stale, whoever queues next makes it ready again
+                count++;
+                continue;
+            }
+            State before = state;
+            int done = 0;
+            while (done < avail) {
+                KompicsEvent event = nextPort.pickFirstEvent();
+                if (event == null) {
+                    Kompics.logger.debug("Couldn't find event to schedule: {} / {} / {}", new Object[]{component, state, wc});
+                    done = avail; // the queue was cleared, drop the count
+                    break;
+                }
+                done++;
+                if (executeHandlers(nextPort, event) || (state != before)) {
+                    break;
+                }
+            }
+            if (nextPort.markExecuted(done)) {
+                readyPorts.offer(nextPort);
+            }
+            wc = workCount.addAndGet(-done);
+            count += done;
+        }
+
+        if (wc > 0) {
+            schedule(wid);
+        }
+    }
+
+    /*
+     * Runs all handlers and matchers subscribed to the event at the port.
+     * Returns true if one of them faulted.
+     */
+    private boolean executeHandlers(JavaPort<?> port, KompicsEvent event) {
+        Handler<?>[] handlers = port.getSubscribedHandlers(event);
+        for (Handler<?> h : handlers) {
+            if (executeEvent(event, h)) {
+                return true; // state changed don't handle the rest of the event
+            }
+        }
+        if (event instanceof PatternExtractor) {
+            PatternExtractor<?, ?> pe = (PatternExtractor<?, ?>) event;
+            for (MatchedHandler<?, ?, ?> mh : port.getSubscribedMatchers(pe)) {
+                if (executeEvent(pe, mh)) {
+                    return true; // state changed don't handle the rest of the event
+                }
+            }
+        }
+        return false;
+    }
+
     @SuppressWarnings("unchecked")
     private boolean executeEvent(KompicsEvent event, Handler<?> handler) {
+        long start = (metrics != null) ? metrics.handling() : 0;
         try {
             ((Handler<KompicsEvent>) handler).handle(event);
             return false; // no state change
@@ -393,20 +753,47 @@ public class JavaComponent extends ComponentCore {
             markSubtreeAs(State.FAULTY);
             escalateFault(new Fault(throwable, this, event));
             return true; // state changed
+        } finally {
+            if (metrics != null) {
+                metrics.handled(handler, start);
+            }
         }
     }
 
-    @SuppressWarnings("unchecked")
-    private boolean executeEvent(PatternExtractor event, MatchedHandler handler) {
+    // the port only hands out handlers whose context type the event has,
+    // but their type arguments can't be named here
+    @SuppressWarnings({"rawtypes", "unchecked"})
+    private boolean executeEvent(PatternExtractor<?, ?> event, MatchedHandler<?, ?, ?> handler) {
+        long start = (metrics != null) ? metrics.handling() : 0;
         try {
-            handler.handle(event.extractValue(), event);
+            ((MatchedHandler) handler).handle(event.extractValue(), event);
             return false; // no state change
         } catch (Throwable throwable) {
             Kompics.logger.error("Handling an event caused a fault! Might be handled later...", throwable);
             markSubtreeAs(State.FAULTY);
             escalateFault(new Fault(throwable, this, event));
             return true; // state changed
+        } finally {
+            if (metrics != null) {
+                metrics.handled(handler, start);
+            }
+        }
+    }
+
+    /*
+     * Events queued at the ports owned by this component, which are the
+     * inside halves of the pairs in the port maps.
+     */
+    Map<String, Integer> queueDepths() {
+        Map<String, Integer> depths = new TreeMap<String, Integer>();
+        depths.put("control", negativeControl.queuedEvents());
+        for (Map.Entry<Class<? extends PortType>, JavaPort<? extends PortType>> e : positivePorts.entrySet()) {
+            depths.put(e.getKey().getName() + "-", ((JavaPort<?>) e.getValue().getPair()).queuedEvents());
         }
+        for (Map.Entry<Class<? extends PortType>, JavaPort<? extends PortType>> e : negativePorts.entrySet()) {
+            depths.put(e.getKey().getName() + "+", ((JavaPort<?>) e.getValue().getPair()).queuedEvents());
+        }
+        return depths;
     }
 
     @Override
@@ -459,99 +846,124 @@ public class JavaComponent extends ComponentCore {
             }
         }
     };
+
+    @Override
+    void requestDone(Direct.Pending<?> pending) {
+        eventReceived(negativeControl, pending, wid);
+    }
+
+    Handler<Direct.Pending<?>> requestHandler = new Handler<Direct.Pending<?>>() {
+
+        @Override
+        public void handle(Direct.Pending<?> event) {
+            event.run();
+        }
+    };
     Handler<Update> configHandler = new Handler<Update>() {
 
         @Override
         public void handle(Update event) {
-            UpdateAction action = JavaComponent.this.component.handleUpdate(event.update);
+            ConfigUpdate update = event.update;
+            boolean downwards = (parent != null) && (event.forwarder == parent.id());
+            if (downwards) {
+                // take everything the parent forwarded since the last time
+                update = pendingUpdate.getAndSet(null);
+                if (update == null) {
+                    return; // picked up with an earlier event
+                }
+            }
+            UpdateAction action = JavaComponent.this.component.handleUpdate(update);
             switch (action.selfStrategy) {
                 case ORIGINAL:
-                    ((Config.Impl) conf).apply(event.update, action.merger);
+                    ((Config.Impl) conf).apply(update, action.merger);
                     break;
                 case MAP:
                     ((Config.Impl) conf).apply(
                             action.selfMapper.map(
-                                    event.update,
-                                    event.update.modify(id())
+                                    update,
+                                    update.modify(id())
                             ), action.merger
                     );
                     break;
                 case SWALLOW:
                     break;
             }
-            if ((parent != null) && (event.forwarder == parent.id())) { // downwards
-                switch (action.downStrategy) {
-                    case ORIGINAL: {
-                        Update forwardedEvent = new Update(event.update, id());
-                        for (Component child : children) {
-                            ((PortCore<ControlPort>) child.getControl()).doTrigger(
-                                    forwardedEvent, wid, component.getComponentCore());
-                        }
-                    }
+            ConfigUpdate downUpdate = null;
+            switch (action.downStrategy) {
+                case ORIGINAL:
+                    downUpdate = update;
                     break;
-                    case MAP: {
-                        ConfigUpdate mappedUpdate = action.downMapper.map(event.update, event.update.modify(id()));
-                        Update forwardedEvent = new Update(mappedUpdate, id());
-                        for (Component child : children) {
-                            ((PortCore<ControlPort>) child.getControl()).doTrigger(
-                                    forwardedEvent, wid, component.getComponentCore());
-                        }
-                    }
+                case MAP:
+                    downUpdate = action.downMapper.map(update, update.modify(id()));
                     break;
-                    case SWALLOW:
-                        break;
+                case SWALLOW:
+                    break;
+            }
+            if (downUpdate != null) {
+                for (ComponentCore child : children) {
+                    if (downwards || (child.id() != event.forwarder)) { // not back to where it came from
+                        forwardDown(child, downUpdate);
+                    }
                 }
-            } else { // upwards and to other children
-                switch (action.downStrategy) {
+            }
+            if (!downwards && (parent != null)) { // upwards
+                switch (action.upStrategy) {
                     case ORIGINAL: {
-                        Update forwardedEvent = new Update(event.update, id());
-                        for (Component child : children) {
-                            if (child.id() != event.forwarder) {
-                                ((PortCore<ControlPort>) child.getControl()).doTrigger(
-                                        forwardedEvent, wid, component.getComponentCore());
-                            }
-                        }
+                        Update forwardedEvent = new Update(update, id());
+                        ((PortCore<ControlPort>) parent.getControl()).doTrigger(
+                                forwardedEvent, wid, component.getComponentCore());
                     }
                     break;
+
                     case MAP: {
-                        ConfigUpdate mappedUpdate = action.downMapper.map(event.update, event.update.modify(id()));
+                        ConfigUpdate mappedUpdate = action.upMapper.map(update, update.modify(id()));
                         Update forwardedEvent = new Update(mappedUpdate, id());
-                        for (Component child : children) {
-                            if (child.id() != event.forwarder) {
-                                ((PortCore<ControlPort>) child.getControl()).doTrigger(
-                                        forwardedEvent, wid, component.getComponentCore());
-                            }
-                        }
+                        ((PortCore<ControlPort>) parent.getControl()).doTrigger(
+                                forwardedEvent, wid, component.getComponentCore());
                     }
                     break;
                     case SWALLOW:
                         break;
                 }
-                if (parent != null) {
-                    switch (action.upStrategy) {
-                        case ORIGINAL: {
-                            Update forwardedEvent = new Update(event.update, id());
-                            ((PortCore<ControlPort>) parent.getControl()).doTrigger(
-                                    forwardedEvent, wid, component.getComponentCore());
-                        }
-                        break;
-
-                        case MAP: {
-                            ConfigUpdate mappedUpdate = action.upMapper.map(event.update, event.update.modify(id()));
-                            Update forwardedEvent = new Update(mappedUpdate, id());
-                            ((PortCore<ControlPort>) parent.getControl()).doTrigger(
-                                    forwardedEvent, wid, component.getComponentCore());
-                        }
-                        break;
-                        case SWALLOW:
-                            break;
-                    }
-                }
             }
             component.postUpdate();
         }
     };
 
+    /**
+     * Passes {@code update} down to {@code child}, restricted to the keys
+     * the child's subtree is interested in.
+     * <p>
+     * Updates the child has not picked up yet are merged with this one, and
+     * only the first of them needs an event to wake the child up.
+     * <p>
+     * @param child the child
+     * @param update the update
+     */
+    private void forwardDown(ComponentCore child, ConfigUpdate update) {
+        String[] interest = child.updateInterest;
+        ConfigUpdate filtered = (interest == null) ? update : update.filter(interest);
+        if (filtered == null) {
+            return; // nothing the subtree cares about
+        }
+        if (!(child instanceof JavaComponent)) {
+            ((PortCore<ControlPort>) child.getControl()).doTrigger(
+                    new Update(filtered, id()), wid, this);
+            return;
+        }
+        AtomicReference<ConfigUpdate> pending = ((JavaComponent) child).pendingUpdate;
+        ConfigUpdate prev;
+        ConfigUpdate next;
+        do {
+            prev = pending.get();
+            next = (prev == null) ? filtered : prev.merge(filtered);
+        } while (!pending.compareAndSet(prev, next));
+        if (prev == null) {
+            ((PortCore<ControlPort>) child.getControl()).doTrigger(
+                    new Update(filtered, id()), wid, this);
+        }
+    }
+
     @Override
     public ComponentDefinition getComponent() {
         return component;
@@ -563,9 +975,8 @@ public class JavaComponent extends ComponentCore {
         impl.apply(update, ValueMerger.NONE);
         Update forwardedEvent = new Update(update, id());
         // forward down
-        for (Component child : children) {
-            ((PortCore<ControlPort>) child.getControl()).doTrigger(
-                    forwardedEvent, wid, this);
+        for (ComponentCore child : children) {
+            forwardDown(child, update);
         }
         // forward up
         ((PortCore<ControlPort>) parent.getControl()).doTrigger(
@@ -597,6 +1008,109 @@ public class JavaComponent extends ComponentCore {
         activeSet.remove(child);
     }
     private Set<Component> activeSet = new HashSet<Component>();
+
+    /**
+     * Hands {@code event} to {@code targets} as one batch.
+     * <p>
+     * The event is queued straight at each child's control port, without
+     * going through port routing, and the children report back through
+     * {@link #countOffParentBatch()}. Children of another core type get it
+     * the regular way. Must be called holding the children read lock.
+     * <p>
+     * @param targets the children to send to
+     * @param event Start or Stop
+     */
+    private void sendToBatch(List<ComponentCore> targets, final KompicsEvent event) {
+        int n = 0;
+        for (ComponentCore child : targets) {
+            if (child instanceof JavaComponent) {
+                n++;
+            } else {
+                ((PortCore<ControlPort>) child.getControl()).doTrigger(
+                        event, wid, component.getComponentCore());
+            }
+        }
+        if (n == 0) {
+            return;
+        }
+        final ComponentCore[] batch = new ComponentCore[n];
+        int i = 0;
+        for (ComponentCore child : targets) {
+            if (child instanceof JavaComponent) {
+                batch[i++] = child;
+            }
+        }
+        lifecycleBatch = batch;
+        PENDING_CHILDREN.set(this, n);
+        Kompics.logger.debug("{} sending {} to {} children", new Object[]{this, event, n});
+        final int chunks = (n + LIFECYCLE_CHUNK_SIZE - 1) / LIFECYCLE_CHUNK_SIZE;
+        Scheduler s = (scheduler != null) ? scheduler : Kompics.getScheduler();
+        if ((chunks == 1) || (s == null)) {
+            sendToChunk(batch, 0, n, event);
+            return;
+        }
+        // helpers only take chunks nobody has claimed yet, and the children
+        // report back on their own, so nobody waits for them
+        final AtomicInteger nextChunk = new AtomicInteger(0);
+        Runnable sender = new Runnable() {
+
+            @Override
+            public void run() {
+                int chunk;
+                while ((chunk = nextChunk.getAndIncrement()) < chunks) {
+                    int from = chunk * LIFECYCLE_CHUNK_SIZE;
+                    sendToChunk(batch, from, Math.min(batch.length, from + LIFECYCLE_CHUNK_SIZE), event);
+                }
+            }
+        };
+        int helpers = Math.min(chunks, s.getParallelism()) - 1;
+        for (int h = 0; h < helpers; h++) {
+            try {
+                s.execute(sender);
+            } catch (RejectedExecutionException ex) {
+                break; // shutting down, do the rest here
+            }
+        }
+        sender.run();
+    }
+
+    private void sendToChunk(ComponentCore[] batch, int from, int to, KompicsEvent event) {
+        for (int i = from; i < to; i++) {
+            JavaComponent child = (JavaComponent) batch[i];
+            child.inParentBatch = true;
+            child.eventReceived(child.negativeControl, event, wid);
+        }
+    }
+
+    private static final int LIFECYCLE_CHUNK_SIZE = 256;
+
+    private Started startedEvent() {
+        if (startedEvent == null) {
+            startedEvent = new Started(component.getComponentCore());
+        }
+        return startedEvent;
+    }
+
+    private Stopped stoppedEvent() {
+        if (stoppedEvent == null) {
+            stoppedEvent = new Stopped(component.getComponentCore());
+        }
+        return stoppedEvent;
+    }
+
+    /**
+     * Counts this component off its parent's batch, if it is part of one.
+     * <p>
+     * @return whether the parent should be notified, that is this component
+     * was started or stopped on its own or it is the last of its batch
+     */
+    private boolean countOffParentBatch() {
+        if (!inParentBatch) {
+            return true;
+        }
+        inParentBatch = false;
+        return PENDING_CHILDREN.decrementAndGet((JavaComponent) parent) == 0;
+    }
     Handler<Start> handleStart = new Handler<Start>() {
         @Override
         public void handle(Start event) {
@@ -609,17 +1123,21 @@ public class JavaComponent extends ComponentCore {
                 if (!children.isEmpty()) {
                     Kompics.logger.debug(JavaComponent.this + " starting");
                     state = Component.State.STARTING;
-                    for (ComponentCore child : children) {
-                        Kompics.logger.debug("Sending Start to child: " + child);
-                        // start child
-                        ((PortCore<ControlPort>) child.getControl()).doTrigger(
-                                Start.event, wid, component.getComponentCore());
+                    if (fastLifecycle) {
+                        sendToBatch(children, Start.event);
+                    } else {
+                        for (ComponentCore child : children) {
+                            Kompics.logger.debug("Sending Start to child: " + child);
+                            // start child
+                            ((PortCore<ControlPort>) child.getControl()).doTrigger(
+                                    Start.event, wid, component.getComponentCore());
+                        }
                     }
                 } else {
                     Kompics.logger.debug(JavaComponent.this + " started");
                     state = Component.State.ACTIVE;
-                    if (parent != null) {
-                        ((PortCore<ControlPort>) parent.getControl()).doTrigger(new Started(component.getComponentCore()), wid, component.getComponentCore());
+                    if ((parent != null) && countOffParentBatch()) {
+                        ((PortCore<ControlPort>) parent.getControl()).doTrigger(startedEvent(), wid, component.getComponentCore());
                     }
                 }
             } finally {
@@ -646,21 +1164,33 @@ public class JavaComponent extends ComponentCore {
                 if (!children.isEmpty()) {
                     Kompics.logger.debug(JavaComponent.this + " stopping");
                     state = Component.State.STOPPING;
-                    for (ComponentCore child : children) {
-                        if (child.state() != Component.State.ACTIVE) {
-                            continue; // don't send stop events to already stopping components
+                    if (fastLifecycle) {
+                        List<ComponentCore> active = new ArrayList<ComponentCore>(children.size());
+                        for (ComponentCore child : children) {
+                            if (child.state() == Component.State.ACTIVE) {
+                                active.add(child);
+                            }
+                        }
+                        sendToBatch(active, Stop.event);
+                    } else {
+                        for (ComponentCore child : children) {
+                            if (child.state() != Component.State.ACTIVE) {
+                                continue; // don't send stop events to already stopping components
+                            }
+                            Kompics.logger.debug("Sending Stop to child: " + child);
+                            // stop child
+                            ((PortCore<ControlPort>) child.getControl()).doTrigger(
+                                    Stop.event, wid, component.getComponentCore());
                         }
-                        Kompics.logger.debug("Sending Stop to child: " + child);
-                        // stop child
-                        ((PortCore<ControlPort>) child.getControl()).doTrigger(
-                                Stop.event, wid, component.getComponentCore());
                     }
                 } else {
                     Kompics.logger.debug(JavaComponent.this + " stopped");
                     state = Component.State.PASSIVE;
                     component.tearDown();
                     if (parent != null) {
-                        ((PortCore<ControlPort>) parent.getControl()).doTrigger(new Stopped(component.getComponentCore()), wid, component.getComponentCore());
+                        if (countOffParentBatch()) {
+                            ((PortCore<ControlPort>) parent.getControl()).doTrigger(stoppedEvent(), wid, component.getComponentCore());
+                        }
                     } else {
                         synchronized (component.getComponentCore()) {
                             component.getComponentCore().notifyAll();
@@ -679,6 +1209,20 @@ public class JavaComponent extends ComponentCore {
     ;
     };
     
+    /*
+     * Drops the queued control events. Unbatched execution never settles the
+     * queue depth for dropped events, so they are counted off here.
+     */
+    private void cleanControlEvents() {
+        int dropped = 0;
+        while (negativeControl.pickFirstEvent() != null) {
+            dropped++;
+        }
+        if (!batched && (metrics != null) && (dropped > 0)) {
+            negativeControl.markExecuted(dropped);
+        }
+    }
+
     Handler<Kill> handleKill = new Handler<Kill>() {
 
         @Override
@@ -692,7 +1236,7 @@ public class JavaComponent extends ComponentCore {
                 if (!children.isEmpty()) {
                     Kompics.logger.debug(JavaComponent.this + " slowly dying");
                     state = Component.State.STOPPING;
-                    ((PortCore<ControlPort>) getControl().getPair()).cleanEvents(); // if multiple kills are queued up just ignore everything
+                    cleanControlEvents(); // if multiple kills are queued up just ignore everything
                     for (ComponentCore child : children) {
                         if (child.state() != Component.State.ACTIVE) {
                             continue; // don't send stop events to already stopping components
@@ -705,7 +1249,7 @@ public class JavaComponent extends ComponentCore {
                 } else {
                     Kompics.logger.debug(JavaComponent.this + " dying");
                     state = Component.State.PASSIVE;
-                    ((PortCore<ControlPort>) getControl().getPair()).cleanEvents(); // if multiple kills are queued up just ignore everything
+                    cleanControlEvents(); // if multiple kills are queued up just ignore everything
                     component.tearDown();
                     if (parent != null) {
                         ((PortCore<ControlPort>) parent.getControl()).doTrigger(new Killed(component.getComponentCore()), wid, component.getComponentCore());
@@ -761,14 +1305,19 @@ public class JavaComponent extends ComponentCore {
         public void handle(Started event) {
             Kompics.logger.debug(JavaComponent.this + " got Started event from " + event.component);
             activeSet.add(event.component);
+            if ((lifecycleBatch != null) && (PENDING_CHILDREN.get(JavaComponent.this) == 0)) {
+                // the whole batch is up, the last child only reported for all of them
+                activeSet.addAll(Arrays.asList(lifecycleBatch));
+                lifecycleBatch = null;
+            }
             Kompics.logger.debug(JavaComponent.this + " active set has " + activeSet.size() + " members");
             try {
                 childrenLock.readLock().lock();
                 if ((activeSet.size() == children.size()) && (state == Component.State.STARTING)) {
                     Kompics.logger.debug(JavaComponent.this + " started");
                     state = Component.State.ACTIVE;
-                    if (parent != null) {
-                        ((PortCore<ControlPort>) parent.getControl()).doTrigger(new Started(component.getComponentCore()), wid, component.getComponentCore());
+                    if ((parent != null) && countOffParentBatch()) {
+                        ((PortCore<ControlPort>) parent.getControl()).doTrigger(startedEvent(), wid, component.getComponentCore());
                     }
                 }
             } finally {
@@ -790,13 +1339,22 @@ public class JavaComponent extends ComponentCore {
             Kompics.logger.debug(JavaComponent.this + " got Stopped event from " + event.component);
 
             activeSet.remove(event.component);
+            if ((lifecycleBatch != null) && (PENDING_CHILDREN.get(JavaComponent.this) == 0)) {
+                // the whole batch is down, the last child only reported for all of them
+                for (ComponentCore child : lifecycleBatch) {
+                    activeSet.remove(child);
+                }
+                lifecycleBatch = null;
+            }
             Kompics.logger.debug(JavaComponent.this + " active set has " + activeSet.size() + " members");
             if (activeSet.isEmpty() && (state == Component.State.STOPPING)) {
                 Kompics.logger.debug(JavaComponent.this + " stopped");
                 state = Component.State.PASSIVE;
                 component.tearDown();
                 if (parent != null) {
-                    ((PortCore<ControlPort>) parent.getControl()).doTrigger(new Stopped(component.getComponentCore()), wid, component.getComponentCore());
+                    if (countOffParentBatch()) {
+                        ((PortCore<ControlPort>) parent.getControl()).doTrigger(stoppedEvent(), wid, component.getComponentCore());
+                    }
                 } else {
                     synchronized (component.getComponentCore()) {
                         component.getComponentCore().notifyAll();
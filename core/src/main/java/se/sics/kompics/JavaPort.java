@@ -21,17 +21,30 @@
 package se.sics.kompics;
 
 import com.google.common.collect.ArrayListMultimap;
+import com.google.common.collect.ImmutableListMultimap;
+import com.google.common.collect.ImmutableMap;
 import java.lang.reflect.Method;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Comparator;
 import java.util.HashMap;
-import java.util.LinkedList;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.TreeSet;
-import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
 
 /**
  * The <code>PortCore</code> class.
+ * <p>
+ * A port without subscriptions of its own that is joined to one other port
+ * by a single {@link BiDirectionalChannel} is fused: events triggered on it
+ * skip the channel and the far port and are delivered straight to the port
+ * behind it. Subscribing, connecting or disconnecting anything else undoes
+ * this, see {@link JavaComponent#FUSED_CHANNELS_KEY}.
  *
  * @author Cosmin Arad {@literal <cosmin@sics.se>}
  * @author Jim Dowling {@literal <jdowling@sics.se>}
@@ -40,27 +53,52 @@ import java.util.concurrent.locks.ReentrantReadWriteLock;
  */
 public class JavaPort<P extends PortType> extends PortCore<P> {
 
+    private static final Handler<?>[] NO_HANDLERS = new Handler<?>[0];
+    private static final MatchedHandler<?, ?, ?>[] NO_MATCHERS = new MatchedHandler<?, ?, ?>[0];
+
     private JavaPort<P> pair;
-    private final ReentrantReadWriteLock rwLock;
+    private final ReentrantLock updateLock;
+    /*
+     * subscriptions and channels, only modified holding updateLock
+     */
     private final ArrayListMultimap<Class<? extends KompicsEvent>, Handler<?>> subs = ArrayListMultimap.create();
-    private final HashMap<Class<? extends PatternExtractor>, ArrayListMultimap<Object, MatchedHandler>> matchers = new HashMap<Class<? extends PatternExtractor>, ArrayListMultimap<Object, MatchedHandler>>();
+    private final HashMap<Class<?>, ArrayListMultimap<Object, MatchedHandler<?, ?, ?>>> matchers = new HashMap<Class<?>, ArrayListMultimap<Object, MatchedHandler<?, ?, ?>>>();
     private ArrayList<ChannelCore<P>> normalChannels = new ArrayList<ChannelCore<P>>();
     private ChannelSelectorSet selectorChannels = new ChannelSelectorSet();
-    ;
-    private SpinlockQueue<KompicsEvent> eventQueue = new SpinlockQueue<KompicsEvent>();
+    /**
+     * Immutable copy of the subscriptions and channels above, republished
+     * after every change. Delivery and execution only ever read this.
+     */
+    private volatile Routing routing = Routing.EMPTY;
+    private final EventQueue<KompicsEvent> eventQueue;
+    /*
+     * queued events the owner was told about, only used by batching owners
+     * and to report queue depths
+     */
+    private final AtomicInteger queued = new AtomicInteger(0);
+    /*
+     * last handler lookup, only touched by the thread executing the owner
+     */
+    private Routing lastRouting;
+    private Class<? extends KompicsEvent> lastEventType;
+    private Handler<?>[] lastHandlers;
+    private Routing lastMatcherRouting;
+    private Class<? extends KompicsEvent> lastMatcherType;
+    private MatcherTable lastMatchers;
 
     public JavaPort(JavaPort<P> other) {
         this.isPositive = other.isPositive;
         this.portType = other.portType;
-        this.rwLock = other.rwLock;
+        this.updateLock = other.updateLock;
         this.owner = other.owner;
         this.isControlPort = other.isControlPort;
+        this.eventQueue = other.eventQueue;
     }
 
     JavaPort(boolean positive, P portType, ComponentCore owner) {
         this.isPositive = positive;
         this.portType = portType;
-        this.rwLock = new ReentrantReadWriteLock();
+        this.updateLock = new ReentrantLock();
         // this.subs = new HashMap<Class<? extends KompicsEvent>,
         // ArrayList<Handler<?>>>();
         // this.allChannels = new ArrayList<ChannelCore<P>>();
@@ -69,6 +107,12 @@ public class JavaPort<P extends PortType> extends PortCore<P> {
         // this.remotePorts = new HashMap<PortCore<P>, ChannelCore<P>>();
         this.owner = owner;
         this.isControlPort = (portType instanceof ControlPort);
+        // lifecycle and fault events must never be dropped or held back
+        if ((owner == null) || isControlPort) {
+            this.eventQueue = new SpinlockQueue<KompicsEvent>();
+        } else {
+            this.eventQueue = owner.createEventQueue();
+        }
     }
 
     @Override
@@ -82,41 +126,52 @@ public class JavaPort<P extends PortType> extends PortCore<P> {
 
     @Override
     public void addChannel(ChannelCore<P> channel) {
-        rwLock.writeLock().lock();
+        updateLock.lock();
         try {
             normalChannels.add(channel);
+            publish();
         } finally {
-            rwLock.writeLock().unlock();
+            updateLock.unlock();
         }
     }
 
     @Override
     public void addChannel(ChannelCore<P> channel, ChannelSelector<?, ?> selector) {
-        rwLock.writeLock().lock();
+        updateLock.lock();
         try {
             selectorChannels.addChannelSelector(channel, selector);
+            publish();
         } finally {
-            rwLock.writeLock().unlock();
+            updateLock.unlock();
         }
     }
 
     @Override
     public void removeChannel(ChannelCore<P> channel) {
-        rwLock.writeLock().lock();
+        updateLock.lock();
         try {
             selectorChannels.removeChannel(channel);
             normalChannels.remove(channel);
+            publish();
         } finally {
-            rwLock.writeLock().unlock();
+            updateLock.unlock();
         }
     }
 
-    // delivers the event to the connected channels (called holding read lock)
-    private boolean deliverToChannels(KompicsEvent event, int wid) {
+    // delivers the event to the connected channels
+    private boolean deliverToChannels(KompicsEvent event, int wid, Routing r) {
         //Kompics.logger.debug("{}: trying to deliver {} to channels...", owner.getComponent(), event);
         boolean delivered = false;
-        if (normalChannels != null) {
-            for (ChannelCore<?> channel : normalChannels) {
+        for (ChannelCore<?> channel : r.normalChannels) {
+            if (isPositive) {
+                channel.forwardToNegative(event, wid);
+            } else {
+                channel.forwardToPositive(event, wid);
+            }
+            delivered = true;
+        }
+        if (r.selectorChannels != null) {
+            for (ChannelCore<?> channel : r.selectorChannels.channels(event)) {
                 if (isPositive) {
                     channel.forwardToNegative(event, wid);
                 } else {
@@ -125,19 +180,6 @@ public class JavaPort<P extends PortType> extends PortCore<P> {
                 delivered = true;
             }
         }
-        if (selectorChannels != null) {
-            ArrayList<ChannelCore<?>> channels = selectorChannels.get(event);
-            if (channels != null) {
-                for (ChannelCore channel : channels) {
-                    if (isPositive) {
-                        channel.forwardToNegative(event, wid);
-                    } else {
-                        channel.forwardToPositive(event, wid);
-                    }
-                    delivered = true;
-                }
-            }
-        }
         //Kompics.logger.debug("{}: {}", owner.getComponent(), delivered ? "succeeded" : "failed");
         return delivered;
     }
@@ -161,12 +203,13 @@ public class JavaPort<P extends PortType> extends PortCore<P> {
                     + eventType.getCanonicalName() + " events.");
         }
 
-        rwLock.writeLock().lock();
+        updateLock.lock();
         try {
             subs.put(handler.getEventType(), handler);
+            publish();
 
         } finally {
-            rwLock.writeLock().unlock();
+            updateLock.unlock();
         }
     }
 
@@ -190,17 +233,34 @@ public class JavaPort<P extends PortType> extends PortCore<P> {
                     + cxtType.getCanonicalName() + " events.");
         }
 
-        rwLock.writeLock().lock();
+        updateLock.lock();
         try {
-            ArrayListMultimap<Object, MatchedHandler> patterns = matchers.get(handler.getCxtType());
+            ArrayListMultimap<Object, MatchedHandler<?, ?, ?>> patterns = matchers.get(handler.getCxtType());
             if (patterns == null) {
                 patterns = ArrayListMultimap.create();
                 matchers.put(cxtType, patterns);
             }
             patterns.put(handler.pattern(), handler);
+            publish();
+        } finally {
+            updateLock.unlock();
+        }
+    }
 
+    /*
+     * For events the runtime queues on the port itself, which are never
+     * triggered on it and so don't have to be part of the port type.
+     */
+    <E extends KompicsEvent> void doRuntimeSubscribe(Handler<E> handler) {
+        if (handler.getEventType() == null) {
+            handler.setEventType(reflectHandlerEventType(handler));
+        }
+        updateLock.lock();
+        try {
+            subs.put(handler.getEventType(), handler);
+            publish();
         } finally {
-            rwLock.writeLock().unlock();
+            updateLock.unlock();
         }
     }
 
@@ -219,12 +279,13 @@ public class JavaPort<P extends PortType> extends PortCore<P> {
                     + eventType.getCanonicalName() + " events.");
         }
 
-        rwLock.writeLock().lock();
+        updateLock.lock();
         try {
             subs.put(handler.getEventType(), handler);
+            publish();
 
         } finally {
-            rwLock.writeLock().unlock();
+            updateLock.unlock();
         }
     }
 
@@ -235,7 +296,7 @@ public class JavaPort<P extends PortType> extends PortCore<P> {
             handler.setEventType(eventType);
         }
 
-        rwLock.writeLock().lock();
+        updateLock.lock();
         try {
             if (!subs.remove(handler.getEventType(), handler)) {
                 throw new RuntimeException("Handler " + handler
@@ -244,8 +305,9 @@ public class JavaPort<P extends PortType> extends PortCore<P> {
                         + portType.getClass().getCanonicalName() + " for "
                         + eventType.getCanonicalName() + " events.");
             }
+            publish();
         } finally {
-            rwLock.writeLock().unlock();
+            updateLock.unlock();
         }
     }
 
@@ -256,9 +318,9 @@ public class JavaPort<P extends PortType> extends PortCore<P> {
             handler.setCxtType(cxtType);
         }
 
-        rwLock.writeLock().lock();
+        updateLock.lock();
         try {
-            ArrayListMultimap<Object, MatchedHandler> patterns = matchers.get(handler.getCxtType());
+            ArrayListMultimap<Object, MatchedHandler<?, ?, ?>> patterns = matchers.get(handler.getCxtType());
             if (patterns == null) {
                 throw new RuntimeException("Handler " + handler
                         + " is not subscribed to "
@@ -278,46 +340,34 @@ public class JavaPort<P extends PortType> extends PortCore<P> {
                 if (patterns.isEmpty()) {
                     matchers.remove(handler.getCxtType());
                 }
+                publish();
             }
 
         } finally {
-            rwLock.writeLock().unlock();
+            updateLock.unlock();
         }
     }
 
-    List<Handler<?>> getSubscribedHandlers(KompicsEvent event) {
-
+    Handler<?>[] getSubscribedHandlers(KompicsEvent event) {
+        Routing r = routing;
         Class<? extends KompicsEvent> eventType = event.getClass();
-        List<Handler<?>> ret = new LinkedList<Handler<?>>();
-
-        for (Class<? extends KompicsEvent> eType : subs.keySet()) {
-            if (eType.isAssignableFrom(eventType)) {
-                List<Handler<?>> handlers = subs.get(eType);
-                if (handlers != null) {
-                    ret.addAll(handlers);
-                }
-            }
+        if ((r != lastRouting) || (eventType != lastEventType)) {
+            lastHandlers = r.handlers(eventType);
+            lastRouting = r;
+            lastEventType = eventType;
         }
-        return ret;
+        return lastHandlers;
     }
 
-    List<MatchedHandler> getSubscribedMatchers(PatternExtractor event) {
+    MatchedHandler<?, ?, ?>[] getSubscribedMatchers(PatternExtractor<?, ?> event) {
+        Routing r = routing;
         Class<? extends KompicsEvent> eventType = event.getClass();
-        List<MatchedHandler> ret = new LinkedList<MatchedHandler>();
-
-        for (Class<? extends KompicsEvent> eType : matchers.keySet()) {
-            if (eType.isAssignableFrom(eventType)) {
-                ArrayListMultimap<Object, MatchedHandler> patterns = matchers.get(eType);
-                if (patterns == null) {
-                    continue;
-                }
-                List<MatchedHandler> handlers = patterns.get(event.extractPattern());
-                if (handlers != null) {
-                    ret.addAll(handlers);
-                }
-            }
+        if ((r != lastMatcherRouting) || (eventType != lastMatcherType)) {
+            lastMatchers = r.matchers(eventType);
+            lastMatcherRouting = r;
+            lastMatcherType = eventType;
         }
-        return ret;
+        return lastMatchers.get(event);
     }
 
     // TODO optimize trigger/subscribe
@@ -341,52 +391,152 @@ public class JavaPort<P extends PortType> extends PortCore<P> {
         pair.deliver(event, wid);
     }
 
+    @Override
+    void doTriggerAll(List<? extends KompicsEvent> events, int wid, ChannelCore<?> channel) {
+        for (KompicsEvent event : events) {
+            if (event instanceof Request) {
+                ((Request) event).pushPathElement(channel);
+            }
+        }
+        pair.deliverAll(events, wid);
+    }
+
+    @Override
+    void doTriggerAll(List<? extends KompicsEvent> events, int wid, ComponentCore component) {
+        for (KompicsEvent event : events) {
+            if (event instanceof Request) {
+                ((Request) event).pushPathElement(component);
+            }
+        }
+        pair.deliverAll(events, wid);
+    }
+
+    /*
+     * Like deliver, but looks up the subscribers once per run of events of
+     * the same class and hands everything for the owner and for each channel
+     * over in one go. Responses follow their own path and selector channels
+     * pick per event, so batches involving either go one by one.
+     */
+    private void deliverAll(List<? extends KompicsEvent> events, int wid) {
+        Routing r = routing;
+        boolean simple = (r.selectorChannels == null);
+        for (KompicsEvent event : events) {
+            if ((event instanceof Response) || (event instanceof Direct.Response)) {
+                simple = false;
+                break;
+            }
+        }
+        if (!simple) {
+            for (KompicsEvent event : events) {
+                deliver(event, wid);
+            }
+            return;
+        }
+        if (r.fusedTarget != null) {
+            if (!r.fusedChannel.isDestroyed()) {
+                for (KompicsEvent event : events) {
+                    if (event instanceof Request) {
+                        ((Request) event).pushPathElement(r.fusedChannel);
+                    }
+                }
+                r.fusedTarget.deliverAll(events, wid);
+            }
+            return;
+        }
+        boolean toChannels = r.normalChannels.length > 0;
+        ArrayList<KompicsEvent> local = new ArrayList<KompicsEvent>(events.size());
+        Class<? extends KompicsEvent> lastType = null;
+        boolean subscribed = false;
+        for (KompicsEvent event : events) {
+            Class<? extends KompicsEvent> eventType = event.getClass();
+            if (eventType != lastType) {
+                lastType = eventType;
+                subscribed = r.handlers(eventType).length > 0;
+            }
+            if (subscribed || ((event instanceof PatternExtractor) && hasMatchers(eventType, r))) {
+                local.add(event);
+            } else if (!toChannels && !portType.hasEvent(isPositive, eventType)) {
+                // error, event type doesn't flow on this port in this direction
+                throw new RuntimeException(eventType.getCanonicalName()
+                        + " events cannot be triggered on "
+                        + (!isPositive ? "positive " : "negative ")
+                        + portType.getClass().getCanonicalName());
+            }
+        }
+        if (!local.isEmpty()) {
+            owner.eventsReceived(this, local, wid);
+        }
+        for (ChannelCore<?> channel : r.normalChannels) {
+            if (channel instanceof SimpleChannel) {
+                SimpleChannel<?> sc = (SimpleChannel<?>) channel;
+                if (isPositive) {
+                    sc.forwardAllToNegative(events, wid);
+                } else {
+                    sc.forwardAllToPositive(events, wid);
+                }
+            } else {
+                for (KompicsEvent event : events) {
+                    if (isPositive) {
+                        channel.forwardToNegative(event, wid);
+                    } else {
+                        channel.forwardToPositive(event, wid);
+                    }
+                }
+            }
+        }
+    }
+
     private void deliver(KompicsEvent event, int wid) {
         Class<? extends KompicsEvent> eventType = event.getClass();
         boolean delivered = false;
 
-        rwLock.readLock().lock();
-        try {
-            if (event instanceof Response) {
-                Response response = (Response) event;
-                RequestPathElement pe = response.getTopPathElement();
-                if (pe != null) {
-                    if (pe.isChannel()) {
-                        ChannelCore<?> caller = (ChannelCore<?>) pe
-                                .getChannel();
-                        if (caller != null) {
-                            // caller can be null since it is a WeakReference
-                            delivered = deliverToCallerChannel(event, wid,
-                                    caller);
-                        }
-                    } else {
-                        ComponentCore component = pe.getComponent();
-                        if (component == owner) {
-                            delivered = deliverToSubscribers(event, wid,
-                                    eventType);
-                        } else {
-                            throw new RuntimeException(
-                                    "Response path invalid: expected to arrive to component "
-                                    + component.getComponent()
-                                    + " but instead arrived at "
-                                    + owner.getComponent());
-                        }
+        Routing r = routing;
+        if ((r.fusedTarget != null) && !(event instanceof Response) && !(event instanceof Direct.Response)) {
+            // what the channel and the far port would do
+            if (!r.fusedChannel.isDestroyed()) {
+                if (event instanceof Request) {
+                    ((Request) event).pushPathElement(r.fusedChannel);
+                }
+                r.fusedTarget.deliver(event, wid);
+            }
+            return;
+        }
+        if (event instanceof Response) {
+            Response response = (Response) event;
+            long pe = response.popPathElement();
+            if (pe != RequestPath.NONE) {
+                if (RequestPath.isChannel(pe)) {
+                    ChannelCore<?> caller = RequestPath.channel(pe);
+                    if (caller != null) {
+                        // caller can be null since it is only weakly registered
+                        delivered = deliverToCallerChannel(event, wid,
+                                caller);
                     }
                 } else {
-                    // response event has arrived to request origin and was
-                    // triggered further. We treat it as a regular event
-                    delivered = deliverToSubscribers(event, wid, eventType);
-                    delivered |= deliverToChannels(event, wid);
+                    ComponentCore component = RequestPath.component(pe);
+                    if (component == owner) {
+                        delivered = deliverToSubscribers(event, wid,
+                                eventType, r);
+                    } else {
+                        throw new RuntimeException(
+                                "Response path invalid: expected to arrive to component "
+                                + component.getComponent()
+                                + " but instead arrived at "
+                                + owner.getComponent());
+                    }
                 }
-            } else if (event instanceof Direct.Response) {
-                delivered = deliverToSubscribers(event, wid, eventType);
             } else {
-                // event is not a response event
-                delivered = deliverToSubscribers(event, wid, eventType);
-                delivered |= deliverToChannels(event, wid);
+                // response event has arrived to request origin and was
+                // triggered further. We treat it as a regular event
+                delivered = deliverToSubscribers(event, wid, eventType, r);
+                delivered |= deliverToChannels(event, wid, r);
             }
-        } finally {
-            rwLock.readLock().unlock();
+        } else if (event instanceof Direct.Response) {
+            delivered = deliverToSubscribers(event, wid, eventType, r);
+        } else {
+            // event is not a response event
+            delivered = deliverToSubscribers(event, wid, eventType, r);
+            delivered |= deliverToChannels(event, wid, r);
         }
 
         if (!delivered) {
@@ -419,7 +569,7 @@ public class JavaPort<P extends PortType> extends PortCore<P> {
     }
 
     // delivers this response event to the channel through which the
-    // corresponding request event came (called holding read lock)
+    // corresponding request event came
     private boolean deliverToCallerChannel(KompicsEvent event, int wid,
             ChannelCore<?> caller) {
         // Kompics.logger.debug("Caller +{}-{} in {} fwd {}", new Object[] {
@@ -439,48 +589,48 @@ public class JavaPort<P extends PortType> extends PortCore<P> {
         return true;
     }
 
-    // deliver event to the local component (called holding read lock)
+    // deliver event to the local component
     private boolean deliverToSubscribers(KompicsEvent event, int wid,
-            Class<? extends KompicsEvent> eventType) {
+            Class<? extends KompicsEvent> eventType, Routing r) {
         //Kompics.logger.debug("{}: trying to deliver {} to subscribers...", owner, event);
 
-        for (Class<? extends KompicsEvent> eType : subs.keySet()) {
-            if (eType.isAssignableFrom(eventType)) {
-                // there is at least one subscription
-                doDeliver(event, wid);
-                //Kompics.logger.debug("{}: Delivered {} to subscribers", owner.getComponent(), event);
-                return true;
-            }
+        if (r.handlers(eventType).length > 0) {
+            // there is at least one subscription
+            doDeliver(event, wid);
+            //Kompics.logger.debug("{}: Delivered {} to subscribers", owner.getComponent(), event);
+            return true;
         }
-        if (event instanceof PatternExtractor) {
-            PatternExtractor pe = (PatternExtractor) event;
-            for (Class<? extends KompicsEvent> eType : matchers.keySet()) {
-                if (eType.isAssignableFrom(eventType)) {
-                    ArrayListMultimap<Object, MatchedHandler> patterns = matchers.get(eType);
-                    if (patterns == null) {
-                        continue;
-                    }
-                    List<MatchedHandler> handlers = patterns.get(pe.extractPattern());
-                    if (!handlers.isEmpty()) {
-                        // there is at least one subscription
-                        doDeliver(event, wid);
-                        //Kompics.logger.debug("{}: Delivered {} to subscribers", owner.getComponent(), event);
-                        return true;
-                    }
-                }
-            }
+        if ((event instanceof PatternExtractor) && hasMatchers(eventType, r)) {
+            // there is at least one subscription
+            doDeliver(event, wid);
+            //Kompics.logger.debug("{}: Delivered {} to subscribers", owner.getComponent(), event);
+            return true;
         }
         //Kompics.logger.debug("{}: Couldn't deliver {}, no matching subscribers", owner.getComponent(), event);
         return false;
     }
 
+    /*
+     * Only asks whether the class has matchers at all, the pattern is
+     * extracted once, when the event is executed. An event whose pattern
+     * nobody matches is dropped there.
+     */
+    private boolean hasMatchers(Class<? extends KompicsEvent> eventType, Routing r) {
+        return !r.matchers(eventType).isEmpty();
+    }
+
     private void doDeliver(KompicsEvent event, int wid) {
         owner.eventReceived(this, event, wid);
     }
 
     @Override
     public void enqueue(KompicsEvent event) {
-        eventQueue.offer(event);
+        eventQueue.enqueue(event);
+    }
+
+    @Override
+    boolean offer(KompicsEvent event) {
+        return eventQueue.enqueue(event);
     }
 
     KompicsEvent pickFirstEvent() {
@@ -491,6 +641,26 @@ public class JavaPort<P extends PortType> extends PortCore<P> {
         return !eventQueue.isEmpty();
     }
 
+    /**
+     * @return {@code true} if this port just went from no to one queued
+     * event and must be made ready
+     */
+    boolean markQueued() {
+        return queued.getAndIncrement() == 0;
+    }
+
+    int queuedEvents() {
+        return queued.get();
+    }
+
+    /**
+     * @param n number of events taken off the queue
+     * @return {@code true} if events remain and the port must stay ready
+     */
+    boolean markExecuted(int n) {
+        return queued.addAndGet(-n) > 0;
+    }
+
     @SuppressWarnings("unchecked")
     private <E extends KompicsEvent> Class<E> reflectEventType(Class handlerC, int parameter) {
         Class<E> eventType = null;
@@ -551,12 +721,13 @@ public class JavaPort<P extends PortType> extends PortCore<P> {
 
     @Override
     public void cleanChannels() {
-        rwLock.writeLock().lock();
+        updateLock.lock();
         try {
             selectorChannels.clear();
             normalChannels.clear();
+            publish();
         } finally {
-            rwLock.writeLock().unlock();
+            updateLock.unlock();
         }
     }
 
@@ -581,7 +752,9 @@ public class JavaPort<P extends PortType> extends PortCore<P> {
     @Override
     public List<Channel<P>> findChannelsTo(PortCore<P> port) {
         List<Channel<P>> channels = new ArrayList<Channel<P>>();
-        for (ChannelCore<P> c : normalChannels) {
+        Routing r = routing;
+        for (ChannelCore<?> cnt : r.normalChannels) {
+            ChannelCore<P> c = (ChannelCore<P>) cnt;
             if (this.isPositive) {
                 if (c.hasNegativePort(port)) {
                     channels.add(c);
@@ -592,18 +765,180 @@ public class JavaPort<P extends PortType> extends PortCore<P> {
                 }
             }
         }
-        for (ChannelCore<?> cnt : selectorChannels) {
-            ChannelCore<P> c = (ChannelCore<P>) cnt; // must be right type...just got lost in the ChannelSelector
-            if (this.isPositive) {
-                if (c.hasNegativePort(port)) {
-                    channels.add(c);
+        if (r.selectorChannels != null) {
+            for (ChannelCore<?> cnt : r.selectorChannels) {
+                ChannelCore<P> c = (ChannelCore<P>) cnt; // must be right type...just got lost in the ChannelSelector
+                if (this.isPositive) {
+                    if (c.hasNegativePort(port)) {
+                        channels.add(c);
+                    }
+                } else {
+                    if (c.hasPositivePort(port)) {
+                        channels.add(c);
+                    }
                 }
+            }
+        }
+        return channels;
+    }
+
+    // publishes a new routing snapshot of the current subscriptions and
+    // channels (called holding updateLock)
+    private void publish() {
+        BiDirectionalChannel<?> fused = null;
+        if (subs.isEmpty() && matchers.isEmpty() && selectorChannels.isEmpty()
+                && (normalChannels.size() == 1) && (normalChannels.get(0) instanceof BiDirectionalChannel)
+                && ((owner == null) || !(owner instanceof JavaComponent) || ((JavaComponent) owner).fuseChannels)) {
+            fused = (BiDirectionalChannel<?>) normalChannels.get(0);
+        }
+        routing = new Routing(subs, matchers, normalChannels, selectorChannels, fused, isPositive);
+    }
+
+    /**
+     * @return whether events arriving at this port skip its channel
+     */
+    boolean isFused() {
+        return routing.fusedTarget != null;
+    }
+
+    /**
+     * Read-only view of a port's subscriptions and channels.
+     * <p>
+     * A new instance replaces the old one on every (rare) update, so the
+     * delivery path needs only a single volatile read instead of a lock.
+     */
+    private static final class Routing {
+
+        static final Routing EMPTY = new Routing(
+                ArrayListMultimap.<Class<? extends KompicsEvent>, Handler<?>>create(),
+                new HashMap<Class<?>, ArrayListMultimap<Object, MatchedHandler<?, ?, ?>>>(),
+                new ArrayList<ChannelCore<?>>(), new ChannelSelectorSet(), null, false);
+
+        final ImmutableListMultimap<Class<? extends KompicsEvent>, Handler<?>> subs;
+        final ImmutableMap<Class<?>, ImmutableListMultimap<Object, MatchedHandler<?, ?, ?>>> matchers;
+        final ChannelCore<?>[] normalChannels;
+        final ChannelSelectorSet selectorChannels; // null if there are none
+        /*
+         * the only channel and the port behind its far end, if fused
+         */
+        final BiDirectionalChannel<?> fusedChannel;
+        final JavaPort<?> fusedTarget;
+        /**
+         * Handlers per concrete event class, resolved against {@link #subs}
+         * on first use.
+         */
+        private final ConcurrentHashMap<Class<? extends KompicsEvent>, Handler<?>[]> handlerCache = new ConcurrentHashMap<Class<? extends KompicsEvent>, Handler<?>[]>();
+        /**
+         * Matched handlers per concrete event class, resolved against
+         * {@link #matchers} on first use.
+         */
+        private final ConcurrentHashMap<Class<? extends KompicsEvent>, MatcherTable> matcherCache = new ConcurrentHashMap<Class<? extends KompicsEvent>, MatcherTable>();
+
+        Routing(ArrayListMultimap<Class<? extends KompicsEvent>, Handler<?>> subs,
+                HashMap<Class<?>, ArrayListMultimap<Object, MatchedHandler<?, ?, ?>>> matchers,
+                List<? extends ChannelCore<?>> normalChannels,
+                ChannelSelectorSet selectorChannels,
+                BiDirectionalChannel<?> fused, boolean isPositive) {
+            this.subs = ImmutableListMultimap.copyOf(subs);
+            ImmutableMap.Builder<Class<?>, ImmutableListMultimap<Object, MatchedHandler<?, ?, ?>>> mb = ImmutableMap.builder();
+            for (Map.Entry<Class<?>, ArrayListMultimap<Object, MatchedHandler<?, ?, ?>>> e : matchers.entrySet()) {
+                mb.put(e.getKey(), ImmutableListMultimap.copyOf(e.getValue()));
+            }
+            this.matchers = mb.build();
+            this.normalChannels = normalChannels.toArray(new ChannelCore<?>[normalChannels.size()]);
+            this.selectorChannels = selectorChannels.isEmpty() ? null : new ChannelSelectorSet(selectorChannels);
+            PortCore<?> far = null;
+            if (fused != null) {
+                far = isPositive ? fused.negativePort : fused.positivePort;
+            }
+            if (far instanceof JavaPort) {
+                this.fusedChannel = fused;
+                this.fusedTarget = ((JavaPort<?>) far).pair;
             } else {
-                if (c.hasPositivePort(port)) {
-                    channels.add(c);
+                this.fusedChannel = null;
+                this.fusedTarget = null;
+            }
+        }
+
+        Handler<?>[] handlers(Class<? extends KompicsEvent> eventType) {
+            Handler<?>[] handlers = handlerCache.get(eventType);
+            if (handlers == null) {
+                EventMetadata meta = EventMetadata.of(eventType);
+                ArrayList<Handler<?>> resolved = new ArrayList<Handler<?>>();
+                for (Class<? extends KompicsEvent> eType : subs.keySet()) {
+                    if (meta.isSubtypeOf(eType)) {
+                        resolved.addAll(subs.get(eType));
+                    }
                 }
+                handlers = resolved.isEmpty() ? NO_HANDLERS : resolved.toArray(new Handler<?>[resolved.size()]);
+                handlerCache.put(eventType, handlers);
             }
+            return handlers;
+        }
+
+        MatcherTable matchers(Class<? extends KompicsEvent> eventType) {
+            MatcherTable table = matcherCache.get(eventType);
+            if (table == null) {
+                table = matchers.isEmpty() ? MatcherTable.EMPTY : new MatcherTable(EventMetadata.of(eventType), matchers);
+                matcherCache.put(eventType, table);
+            }
+            return table;
+        }
+    }
+
+    /**
+     * Matched handlers for one concrete event class, merged over all the
+     * context types it is a subtype of, by pattern.
+     * <p>
+     * {@code Class} patterns, which is what every {@link ClassMatchedHandler}
+     * uses, are looked up by identity, anything else by {@code equals}.
+     */
+    private static final class MatcherTable {
+
+        static final MatcherTable EMPTY = new MatcherTable();
+
+        private final IdentityHashMap<Object, MatchedHandler<?, ?, ?>[]> classPatterns = new IdentityHashMap<Object, MatchedHandler<?, ?, ?>[]>();
+        private final HashMap<Object, MatchedHandler<?, ?, ?>[]> otherPatterns = new HashMap<Object, MatchedHandler<?, ?, ?>[]>();
+
+        private MatcherTable() {
+        }
+
+        MatcherTable(EventMetadata meta, Map<Class<?>, ImmutableListMultimap<Object, MatchedHandler<?, ?, ?>>> matchers) {
+            LinkedHashMap<Object, List<MatchedHandler<?, ?, ?>>> merged = new LinkedHashMap<Object, List<MatchedHandler<?, ?, ?>>>();
+            for (Map.Entry<Class<?>, ImmutableListMultimap<Object, MatchedHandler<?, ?, ?>>> e : matchers.entrySet()) {
+                if (!meta.isSubtypeOf(e.getKey())) {
+                    continue;
+                }
+                for (Map.Entry<Object, Collection<MatchedHandler<?, ?, ?>>> p : e.getValue().asMap().entrySet()) {
+                    List<MatchedHandler<?, ?, ?>> handlers = merged.get(p.getKey());
+                    if (handlers == null) {
+                        handlers = new ArrayList<MatchedHandler<?, ?, ?>>();
+                        merged.put(p.getKey(), handlers);
+                    }
+                    handlers.addAll(p.getValue());
+                }
+            }
+            for (Map.Entry<Object, List<MatchedHandler<?, ?, ?>>> e : merged.entrySet()) {
+                MatchedHandler<?, ?, ?>[] handlers = e.getValue().toArray(new MatchedHandler<?, ?, ?>[e.getValue().size()]);
+                if (e.getKey() instanceof Class) {
+                    classPatterns.put(e.getKey(), handlers);
+                } else {
+                    otherPatterns.put(e.getKey(), handlers);
+                }
+            }
+        }
+
+        boolean isEmpty() {
+            return classPatterns.isEmpty() && otherPatterns.isEmpty();
+        }
+
+        MatchedHandler<?, ?, ?>[] get(PatternExtractor<?, ?> event) {
+            if (isEmpty()) {
+                return NO_MATCHERS;
+            }
+            Object pattern = event.extractPattern();
+            MatchedHandler<?, ?, ?>[] handlers = (pattern instanceof Class) ? classPatterns.get(pattern) : otherPatterns.get(pattern);
+            return (handlers != null) ? handlers : NO_MATCHERS;
         }
-        return channels;
     }
 }
@@ -22,6 +22,10 @@ package se.sics.kompics;
 
 import java.lang.reflect.Constructor;
 import java.lang.reflect.InvocationTargetException;
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.atomic.AtomicInteger;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -47,6 +51,12 @@ public final class Kompics {
     public static AtomicInteger maxNumOfExecutedEvents = new AtomicInteger(1);
     private static boolean on = false;
     private static Scheduler scheduler;
+    /*
+     * not guarded by obj, components look these up and release them while
+     * shutdown() holds the lock
+     */
+    private static final ConcurrentMap<String, Scheduler> schedulerGroups = new ConcurrentHashMap<String, Scheduler>();
+    private static final Set<Scheduler> dedicatedSchedulers = Collections.newSetFromMap(new ConcurrentHashMap<Scheduler, Boolean>());
     private static ComponentCore mainCore;
     private static final Kompics obj = new Kompics();
     private static final FaultHandler defaultFaultHandler = new FaultHandler() {
@@ -74,6 +84,44 @@ public final class Kompics {
         }
     }
 
+    /**
+     * Registers a scheduler that components can be placed on with
+     * {@link JavaComponent#SCHEDULER_GROUP_KEY}, for example to keep
+     * latency-critical components apart from bulk processing.
+     * <p>
+     * @param name the group name
+     * @param sched the scheduler, shut down together with Kompics
+     */
+    public static void addSchedulerGroup(String name, Scheduler sched) {
+        synchronized (obj) {
+            if (on) {
+                throw new RuntimeException("Kompics already created");
+            }
+            if (name.equals(JavaComponent.DEFAULT_GROUP) || name.equals(JavaComponent.DEDICATED_GROUP)
+                    || (schedulerGroups.putIfAbsent(name, sched) != null)) {
+                throw new RuntimeException("Scheduler group " + name + " already exists");
+            }
+        }
+    }
+
+    public static Scheduler getSchedulerGroup(String name) {
+        return schedulerGroups.get(name);
+    }
+
+    static Scheduler createDedicatedScheduler() {
+        Scheduler sched = new ThreadPoolScheduler(1);
+        dedicatedSchedulers.add(sched);
+        sched.proceed();
+        return sched;
+    }
+
+    static void releaseDedicatedScheduler(Scheduler sched) {
+        if (dedicatedSchedulers.remove(sched)) {
+            // may be called from the scheduler's own thread
+            sched.asyncShutdown();
+        }
+    }
+
     public static void setFaultHandler(FaultHandler fh) {
         synchronized (obj) {
             if (on) {
@@ -200,7 +248,10 @@ public final class Kompics {
                     mainComponent = constr.newInstance(initEvent);
                 }
                 mainCore = mainComponent.getComponentCore();
-                mainCore.setScheduler(scheduler);
+                mainCore.registerMetrics();
+                if (mainCore.scheduler == null) { // not placed in a group of its own
+                    mainCore.setScheduler(scheduler);
+                }
 
                 //mainCore.workCount.incrementAndGet();
                 // start Main
@@ -227,6 +278,9 @@ public final class Kompics {
             }
 
             scheduler.proceed();
+            for (Scheduler sched : schedulerGroups.values()) {
+                sched.proceed();
+            }
         }
     }
 
@@ -267,21 +321,35 @@ public final class Kompics {
                     mainCore.cleanPorts();
                 }
                 mainCore.cleanPorts();
+                mainCore.unregisterMetrics();
             }
             if (scheduler != null) {
                 scheduler.shutdown();
             }
+            shutdownSchedulerGroups();
             on = false;
             scheduler = null;
             obj.notifyAll();
         }
     }
 
+    private static void shutdownSchedulerGroups() {
+        for (Scheduler sched : schedulerGroups.values()) {
+            sched.shutdown();
+        }
+        schedulerGroups.clear();
+        for (Scheduler sched : dedicatedSchedulers) {
+            sched.shutdown();
+        }
+        dedicatedSchedulers.clear();
+    }
+
     public static void forceShutdown() {
         synchronized (obj) {
             if (scheduler != null) {
                 scheduler.shutdown();
             }
+            shutdownSchedulerGroups();
             on = false;
             scheduler = null;
 
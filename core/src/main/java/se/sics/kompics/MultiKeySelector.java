@@ -0,0 +1,50 @@
+/*
+ * This file is part of the Kompics component model runtime.
+ *
+ * Copyright (C) 2009 Swedish Institute of Computer Science (SICS) 
+ * Copyright (C) 2009 Royal Institute of Technology (KTH)
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package se.sics.kompics;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * A {@link ChannelSelector} that selects its channel for any of a set of
+ * values.
+ * <p>
+ * All selectors of one class share a single hash index, so an event finds
+ * its channels with one lookup however many keys and channels there are.
+ * <p>
+ * @param <E> the event type
+ * @param <F> the key type
+ */
+public abstract class MultiKeySelector<E extends KompicsEvent, F> extends ChannelSelector<E, F> {
+
+    private final Set<F> keys;
+
+    protected MultiKeySelector(Class<E> eventType, Collection<? extends F> keys, boolean positive) {
+        super(eventType, null, positive);
+        this.keys = Collections.unmodifiableSet(new HashSet<F>(keys));
+    }
+
+    public final Set<F> getKeys() {
+        return keys;
+    }
+}
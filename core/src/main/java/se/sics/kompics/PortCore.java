@@ -54,5 +54,47 @@ public abstract class PortCore<P extends PortType> implements Negative<P>, Posit
 
     public abstract void cleanEvents();
 
+    /**
+     * Enqueues an event for the owner to execute.
+     * <p>
+     * @param event the event
+     * @return {@code false} if an older event was dropped to make room, in
+     * which case the owner has no additional work
+     */
+    boolean offer(KompicsEvent event) {
+        enqueue(event);
+        return true;
+    }
+
+    /**
+     * Triggers a batch of events arriving over a channel, in order.
+     * <p>
+     * The default triggers them one by one.
+     * <p>
+     * @param events the events
+     * @param wid the worker id
+     * @param channel the channel that triggered the events
+     */
+    void doTriggerAll(List<? extends KompicsEvent> events, int wid, ChannelCore<?> channel) {
+        for (KompicsEvent event : events) {
+            doTrigger(event, wid, channel);
+        }
+    }
+
+    /**
+     * Triggers a batch of events from a component, in order.
+     * <p>
+     * The default triggers them one by one.
+     * <p>
+     * @param events the events
+     * @param wid the worker id
+     * @param component the component that triggered the events
+     */
+    void doTriggerAll(List<? extends KompicsEvent> events, int wid, ComponentCore component) {
+        for (KompicsEvent event : events) {
+            doTrigger(event, wid, component);
+        }
+    }
+
     public abstract List<Channel<P>> findChannelsTo(PortCore<P> port);
 }
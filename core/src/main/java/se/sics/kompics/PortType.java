@@ -118,15 +118,7 @@ public abstract class PortType {
 	 * @return true, if successful
 	 */
 	public final boolean hasPositive(Class<? extends KompicsEvent> eventType) {
-		if (positive.contains(eventType)) {
-			return true;
-		}
-		for (Class<? extends KompicsEvent> eType : positive) {
-			if (eType.isAssignableFrom(eventType)) {
-				return true;
-			}
-		}
-		return false;
+		return EventMetadata.of(eventType).travels(this, true);
 	}
 
 	/**
@@ -138,11 +130,19 @@ public abstract class PortType {
 	 * @return true, if successful
 	 */
 	public final boolean hasNegative(Class<? extends KompicsEvent> eventType) {
-		if (negative.contains(eventType)) {
+		return EventMetadata.of(eventType).travels(this, false);
+	}
+
+	/*
+	 * the uncached check, the result is cached in EventMetadata
+	 */
+	final boolean declares(boolean positive, EventMetadata event) {
+		Set<Class<? extends KompicsEvent>> declared = positive ? this.positive : this.negative;
+		if (declared.contains(event.getType())) {
 			return true;
 		}
-		for (Class<? extends KompicsEvent> eType : negative) {
-			if (eType.isAssignableFrom(eventType)) {
+		for (Class<? extends KompicsEvent> eType : declared) {
+			if (event.isSubtypeOf(eType)) {
 				return true;
 			}
 		}
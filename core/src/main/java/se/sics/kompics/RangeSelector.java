@@ -0,0 +1,67 @@
+/*
+ * This file is part of the Kompics component model runtime.
+ *
+ * Copyright (C) 2009 Swedish Institute of Computer Science (SICS) 
+ * Copyright (C) 2009 Royal Institute of Technology (KTH)
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package se.sics.kompics;
+
+/**
+ * A {@link ChannelSelector} that selects its channel for events whose
+ * {@link #getPosition(KompicsEvent) position} lies in
+ * {@code [lower, upper)}.
+ * <p>
+ * Ranges may overlap. All selectors of one class share an index of sorted
+ * boundaries, so an event finds its channels with one binary search.
+ * <p>
+ * @param <E> the event type
+ */
+public abstract class RangeSelector<E extends KompicsEvent> extends ChannelSelector<E, Long> {
+
+    private final long lower;
+    private final long upper;
+
+    protected RangeSelector(Class<E> eventType, long lower, long upper, boolean positive) {
+        super(eventType, null, positive);
+        if (lower >= upper) {
+            throw new IllegalArgumentException("Empty range [" + lower + ", " + upper + ")");
+        }
+        this.lower = lower;
+        this.upper = upper;
+    }
+
+    public abstract long getPosition(E event);
+
+    @Override
+    public final Long getValue(E event) {
+        return getPosition(event);
+    }
+
+    /**
+     * @return the inclusive lower bound
+     */
+    public final long getLower() {
+        return lower;
+    }
+
+    /**
+     * @return the exclusive upper bound
+     */
+    public final long getUpper() {
+        return upper;
+    }
+}
@@ -20,7 +20,7 @@
  */
 package se.sics.kompics;
 
-import java.util.ArrayDeque;
+import java.util.Arrays;
 
 /**
  * The <code>Request</code> class.
@@ -33,20 +33,30 @@ import java.util.ArrayDeque;
 @Deprecated
 public abstract class Request implements KompicsEvent {
 
-    ArrayDeque<RequestPathElement> requestPath = new ArrayDeque<RequestPathElement>();
+    private static final long[] NO_PATH = new long[0];
+    /*
+     * the path taken so far as RequestPath elements, last hop on top
+     */
+    long[] requestPath = NO_PATH;
+    int pathLength = 0;
 
     public void pushPathElement(ChannelCore<?> channel) {
-        RequestPathElement pe = new RequestPathElement(channel);
-        requestPath.push(pe);
+        push(RequestPath.element(channel));
     }
 
     public void pushPathElement(ComponentCore component) {
-        RequestPathElement pe = new RequestPathElement(component);
-        RequestPathElement topPE = requestPath.peek();
-        if ((topPE != null) && (pe.compareTo(topPE) == 0)) {
+        long pe = RequestPath.element(component);
+        if ((pathLength > 0) && (requestPath[pathLength - 1] == pe)) {
             return; // avoid path duplication
         }
-        requestPath.push(pe);
+        push(pe);
+    }
+
+    private void push(long pe) {
+        if (pathLength == requestPath.length) {
+            requestPath = Arrays.copyOf(requestPath, Math.max(4, pathLength * 2));
+        }
+        requestPath[pathLength++] = pe;
     }
 
     @Override
@@ -0,0 +1,244 @@
+/*
+ * This file is part of the Kompics component model runtime.
+ *
+ * Copyright (C) 2009 Swedish Institute of Computer Science (SICS) 
+ * Copyright (C) 2009 Royal Institute of Technology (KTH)
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package se.sics.kompics;
+
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+/**
+ * Compact encoding of the path a legacy {@link Request} took, so that its
+ * {@link Response} can retrace it.
+ * <p>
+ * Every channel and component that shows up on a path is given a slot in a
+ * registry that only holds it weakly. A path element is then a single long:
+ * the slot index shifted left by one, with the low bit set for channels, in
+ * the lower half, and the generation the slot had when it was handed out in
+ * the upper half. A request keeps its path in a long array.
+ * <p>
+ * Slots of collected objects are freed and handed out again with a new
+ * generation, so a stale element resolves to {@code null}, just like the
+ * weak references of {@link RequestPathElement} used to, and never to the
+ * slot's next owner. Slots are kept in chunks, and a chunk is dropped once
+ * all of its objects were collected.
+ */
+final class RequestPath {
+
+    /**
+     * Returned when a path is empty.
+     */
+    static final long NONE = -1;
+    private static final int CHUNK_BITS = 10;
+    private static final int CHUNK_SIZE = 1 << CHUNK_BITS;
+    private static final int CHUNK_MASK = CHUNK_SIZE - 1;
+    private static final int MAX_CHUNKS = (Integer.MAX_VALUE >>> CHUNK_BITS) + 1;
+    /*
+     * written holding the lock. Readers got their element through a path
+     * that was built after the registration, which orders the reads, and
+     * anything they see of a later change fails the generation check.
+     */
+    private static volatile Chunk[] chunks = new Chunk[16];
+    private static final ReferenceQueue<Object> collected = new ReferenceQueue<Object>();
+    private static final Map<ChannelCore<?>, Long> otherChannels = new WeakHashMap<ChannelCore<?>, Long>();
+    private static final Object lock = new Object();
+    /*
+     * lowest chunk that may have room, and the generation for the next slot
+     */
+    private static int firstFree = 0;
+    private static int nextGeneration = 1;
+
+    private RequestPath() {
+    }
+
+    static long element(ChannelCore<?> channel) {
+        if (channel instanceof SimpleChannel) {
+            SimpleChannel<?> sc = (SimpleChannel<?>) channel;
+            long pe = sc.pathElement;
+            if (pe == 0) {
+                synchronized (lock) {
+                    pe = sc.pathElement;
+                    if (pe == 0) {
+                        pe = register(channel, 1);
+                        sc.pathElement = pe;
+                    }
+                }
+            }
+            return pe;
+        }
+        synchronized (lock) {
+            Long known = otherChannels.get(channel);
+            if (known == null) {
+                known = register(channel, 1);
+                otherChannels.put(channel, known);
+            }
+            return known;
+        }
+    }
+
+    static long element(ComponentCore component) {
+        long pe = component.pathElement;
+        if (pe == 0) {
+            synchronized (lock) {
+                pe = component.pathElement;
+                if (pe == 0) {
+                    pe = register(component, 0);
+                    component.pathElement = pe;
+                }
+            }
+        }
+        return pe;
+    }
+
+    static boolean isChannel(long element) {
+        return (element & 1) != 0;
+    }
+
+    /**
+     * @param element a channel element
+     * @return the channel, or {@code null} if it was collected
+     */
+    static ChannelCore<?> channel(long element) {
+        return (ChannelCore<?>) resolve(element);
+    }
+
+    /**
+     * @param element a component element
+     * @return the component, or {@code null} if it was collected
+     */
+    static ComponentCore component(long element) {
+        return (ComponentCore) resolve(element);
+    }
+
+    static RequestPathElement toElement(long element) {
+        if (isChannel(element)) {
+            return new RequestPathElement(channel(element));
+        }
+        return new RequestPathElement(component(element));
+    }
+
+    static int index(long element) {
+        return ((int) element) >>> 1;
+    }
+
+    private static int generation(long element) {
+        return (int) (element >>> 32);
+    }
+
+    private static Object resolve(long element) {
+        int index = index(element);
+        Chunk[] cs = chunks;
+        int c = index >>> CHUNK_BITS;
+        if (c >= cs.length) {
+            return null;
+        }
+        Chunk chunk = cs[c];
+        if (chunk == null) {
+            return null;
+        }
+        Slot s = chunk.slots[index & CHUNK_MASK];
+        if ((s == null) || (s.generation != generation(element))) {
+            return null;
+        }
+        return s.get();
+    }
+
+    // called holding the lock
+    private static long register(Object o, int channelBit) {
+        expunge();
+        Chunk[] cs = chunks;
+        int c = firstFree;
+        while ((c < cs.length) && (cs[c] != null) && !cs[c].hasRoom()) {
+            c++;
+        }
+        if (c == cs.length) {
+            if (c == MAX_CHUNKS) {
+                throw new KompicsException("Too many live components and channels on request paths");
+            }
+            cs = Arrays.copyOf(cs, Math.min(MAX_CHUNKS, cs.length * 2));
+        }
+        if (cs[c] == null) {
+            cs[c] = new Chunk();
+        }
+        firstFree = c;
+        int index = (c << CHUNK_BITS) | cs[c].take();
+        int generation = nextGeneration++;
+        if (nextGeneration == 0) {
+            nextGeneration = 1; // 0 marks an unregistered element
+        }
+        cs[c].slots[index & CHUNK_MASK] = new Slot(o, index, generation);
+        chunks = cs;
+        return (((long) generation) << 32) | (((long) index) << 1) | channelBit;
+    }
+
+    // called holding the lock
+    private static void expunge() {
+        Reference<?> r;
+        while ((r = collected.poll()) != null) {
+            Slot s = (Slot) r;
+            int c = s.index >>> CHUNK_BITS;
+            Chunk chunk = chunks[c];
+            chunk.release(s.index & CHUNK_MASK);
+            if (chunk.live == 0) {
+                chunks[c] = null;
+            }
+            firstFree = Math.min(firstFree, c);
+        }
+    }
+
+    private static final class Chunk {
+
+        final Slot[] slots = new Slot[CHUNK_SIZE];
+        private final int[] free = new int[CHUNK_SIZE];
+        private int freeCount = 0;
+        private int fresh = 0;
+        int live = 0;
+
+        boolean hasRoom() {
+            return (freeCount > 0) || (fresh < CHUNK_SIZE);
+        }
+
+        int take() {
+            live++;
+            return (freeCount > 0) ? free[--freeCount] : fresh++;
+        }
+
+        void release(int offset) {
+            slots[offset] = null;
+            free[freeCount++] = offset;
+            live--;
+        }
+    }
+
+    private static final class Slot extends WeakReference<Object> {
+
+        final int index;
+        final int generation;
+
+        Slot(Object referent, int index, int generation) {
+            super(referent, collected);
+            this.index = index;
+            this.generation = generation;
+        }
+    }
+}
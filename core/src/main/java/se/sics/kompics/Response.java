@@ -20,8 +20,6 @@
  */
 package se.sics.kompics;
 
-import java.util.ArrayDeque;
-
 // TODO: Auto-generated Javadoc
 /**
  * The <code>Response</code> class.
@@ -34,7 +32,11 @@ import java.util.ArrayDeque;
 @Deprecated
 public abstract class Response implements KompicsEvent {
 
-    private ArrayDeque<RequestPathElement> requestPath;
+    /*
+     * the request's path, retraced from the top down to 0
+     */
+    private long[] requestPath;
+    private int pathLength;
 
     /**
      * Instantiates a new response.
@@ -43,10 +45,28 @@ public abstract class Response implements KompicsEvent {
      */
     protected Response(Request request) {
         requestPath = request.requestPath;
+        pathLength = request.pathLength;
     }
 
+    /**
+     * Removes the next hop back from the path.
+     *
+     * @return the hop
+     * @deprecated the delivery path uses the allocation free
+     * {@link #popPathElement()}
+     */
+    @Deprecated
     public RequestPathElement getTopPathElement() {
-        return requestPath.poll();
+        long pe = popPathElement();
+        return (pe == RequestPath.NONE) ? null : RequestPath.toElement(pe);
+    }
+
+    /**
+     * @return the next hop back as a {@link RequestPath} element, or
+     * {@link RequestPath#NONE} once the origin was reached
+     */
+    long popPathElement() {
+        return (pathLength > 0) ? requestPath[--pathLength] : RequestPath.NONE;
     }
 
     /*
@@ -0,0 +1,261 @@
+/*
+ * This file is part of the Kompics component model runtime.
+ *
+ * Copyright (C) 2009 Swedish Institute of Computer Science (SICS) 
+ * Copyright (C) 2009 Royal Institute of Technology (KTH)
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package se.sics.kompics;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * A bounded, array-backed {@link EventQueue}.
+ * <p>
+ * Slots are preallocated, so enqueueing does not allocate. Each slot carries a
+ * sequence number telling producers and consumers whose turn it is (after D.
+ * Vyukov's bounded queue). Polling is also CAS based, since producers applying
+ * {@link Backpressure#DROP_OLDEST} evict from the head.
+ * <p>
+ * @param <E> the element type
+ */
+public class RingQueue<E> implements EventQueue<E> {
+
+    /**
+     * What {@link RingQueue#offer(Object)} does when the queue is full.
+     */
+    public static enum Backpressure {
+
+        /**
+         * Wait until the consumer made room. Only threads outside of Kompics
+         * wait, e.g. ones triggering through a {@link ComponentProxy}. A
+         * scheduler's worker thread may be the one the consumer waits for,
+         * so there a full queue is handled like {@link #FAULT}.
+         */
+        BLOCK,
+        /**
+         * Drop the oldest queued element, in the same step that reuses its
+         * slot, so each offer drops at most one element.
+         */
+        DROP_OLDEST,
+        /**
+         * Throw a {@link KompicsException}. Within a handler this faults the
+         * triggering component.
+         */
+        FAULT;
+
+        /**
+         * Parses "block", "drop-oldest" or "fault", ignoring case.
+         * <p>
+         * @param s the configured value
+         * @return the policy
+         */
+        public static Backpressure fromString(String s) {
+            for (Backpressure b : values()) {
+                if (b.name().replace('_', '-').equalsIgnoreCase(s)) {
+                    return b;
+                }
+            }
+            throw new ConfigurationException("Unknown backpressure policy: " + s);
+        }
+    }
+
+    private static final int BLOCK_SPINS = 100;
+    private static final long BLOCK_PARK_NANOS = 50000;
+
+    private final Object[] buffer;
+    private final AtomicLongArray sequence;
+    private final int mask;
+    private final Backpressure policy;
+    private final AtomicLong tail = new AtomicLong(0);
+    private final AtomicLong head = new AtomicLong(0);
+
+    /**
+     * @param capacity the minimum capacity, rounded up to a power of two
+     * @param policy what to do when the queue is full
+     */
+    public RingQueue(int capacity, Backpressure policy) {
+        if (capacity < 1) {
+            throw new ConfigurationException("Queue capacity must be positive, was " + capacity);
+        }
+        int size = Integer.highestOneBit(capacity);
+        if (size < capacity) {
+            size <<= 1;
+        }
+        this.buffer = new Object[size];
+        this.sequence = new AtomicLongArray(size);
+        for (int i = 0; i < size; i++) {
+            sequence.set(i, i);
+        }
+        this.mask = size - 1;
+        this.policy = policy;
+    }
+
+    /**
+     * Adds an element, applying the queue's {@link Backpressure} policy if
+     * it is full.
+     * <p>
+     * @param e the element
+     * @return {@code false} if the oldest element was dropped to make room
+     */
+    public boolean offer(E e) {
+        return enqueue(e);
+    }
+
+    @Override
+    public boolean enqueue(E e) {
+        if (policy == Backpressure.DROP_OLDEST) {
+            return offerDroppingOldest(e);
+        }
+        int spins = 0;
+        while (!tryOffer(e)) {
+            if ((policy == Backpressure.FAULT) || Scheduler.isWorkerThread()) {
+                throw new KompicsException("Event queue is full (capacity " + capacity() + "), can't enqueue " + e);
+            }
+            if (spins < BLOCK_SPINS) {
+                spins++;
+                Thread.yield();
+            } else {
+                LockSupport.parkNanos(BLOCK_PARK_NANOS);
+            }
+        }
+        return true;
+    }
+
+    /*
+     * Claims the tail position even if its slot still holds the element from
+     * the previous lap, i.e. the oldest one. That element is then either
+     * taken by the consumer or dropped by advancing the head past it, and no
+     * other producer can get at the slot in between.
+     */
+    private boolean offerDroppingOldest(E e) {
+        long pos = tail.get();
+        while (true) {
+            int idx = (int) (pos & mask);
+            long seq = sequence.get(idx);
+            if ((seq == pos) || (seq == pos - mask)) {
+                if (tail.compareAndSet(pos, pos + 1)) {
+                    boolean dropped = false;
+                    if (seq != pos) {
+                        dropped = evict(idx, pos);
+                    }
+                    buffer[idx] = e;
+                    sequence.lazySet(idx, pos + 1);
+                    return !dropped;
+                }
+            }
+            pos = tail.get();
+        }
+    }
+
+    /*
+     * Frees the slot of position pos, claimed while it still held the
+     * element of position pos - capacity.
+     */
+    private boolean evict(int idx, long pos) {
+        long oldest = pos - buffer.length;
+        while (true) {
+            if (sequence.get(idx) == pos) {
+                return false; // the consumer took it
+            }
+            if (head.compareAndSet(oldest, oldest + 1)) {
+                buffer[idx] = null;
+                return true;
+            }
+            // the consumer is taking it, or an earlier producer has yet to
+            // drop the element before it
+            Thread.yield();
+        }
+    }
+
+    /**
+     * Adds an element if there is room.
+     * <p>
+     * @param e the element
+     * @return {@code false} if the queue was full
+     */
+    public boolean tryOffer(E e) {
+        long pos = tail.get();
+        while (true) {
+            int idx = (int) (pos & mask);
+            long diff = sequence.get(idx) - pos;
+            if (diff == 0) {
+                if (tail.compareAndSet(pos, pos + 1)) {
+                    buffer[idx] = e;
+                    sequence.lazySet(idx, pos + 1);
+                    return true;
+                }
+                pos = tail.get();
+            } else if (diff < 0) {
+                return false; // a whole lap behind: full
+            } else {
+                pos = tail.get();
+            }
+        }
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public E poll() {
+        long pos = head.get();
+        while (true) {
+            int idx = (int) (pos & mask);
+            long diff = sequence.get(idx) - (pos + 1);
+            if (diff == 0) {
+                if (head.compareAndSet(pos, pos + 1)) {
+                    E e = (E) buffer[idx];
+                    buffer[idx] = null;
+                    sequence.lazySet(idx, pos + buffer.length);
+                    return e;
+                }
+                pos = head.get();
+            } else if (diff < 0) {
+                return null; // slot not yet published: empty
+            } else {
+                pos = head.get();
+            }
+        }
+    }
+
+    @Override
+    public boolean isEmpty() {
+        long pos = head.get();
+        return sequence.get((int) (pos & mask)) != pos + 1;
+    }
+
+    @Override
+    public void clear() {
+        while (poll() != null) {
+            // drain
+        }
+    }
+
+    public int size() {
+        long h = head.get();
+        long t = tail.get();
+        return (int) Math.max(0, Math.min(t - h, buffer.length));
+    }
+
+    public int capacity() {
+        return buffer.length;
+    }
+
+    public Backpressure policy() {
+        return policy;
+    }
+}
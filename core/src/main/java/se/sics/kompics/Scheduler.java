@@ -10,9 +10,70 @@ public abstract class Scheduler {
 
     public abstract void asyncShutdown();
 
+    /**
+     * Runs a short task that is not a component execution, like a share of
+     * a bulk creation, on one of the scheduler's workers.
+     * <p>
+     * The default runs it on the calling thread, for schedulers whose
+     * workers only take components.
+     * <p>
+     * @param task the task
+     */
+    public void execute(Runnable task) {
+        task.run();
+    }
+
+    /**
+     * How many tasks the scheduler can run at the same time, to size work
+     * that is split up with {@link #execute(Runnable)}.
+     * <p>
+     * The default assumes one per processor.
+     * <p>
+     * @return the number of workers
+     */
+    public int getParallelism() {
+        return Runtime.getRuntime().availableProcessors();
+    }
+
+    /**
+     * Per-component data of the scheduler that runs the component, for
+     * schedulers that keep something like a reusable task per component.
+     * <p>
+     * @param component the component
+     * @return the data or null
+     */
+    protected static Object getSchedulerState(Component component) {
+        return ((ComponentCore) component).schedulerState;
+    }
+
+    protected static void setSchedulerState(Component component, Object state) {
+        ((ComponentCore) component).schedulerState = state;
+    }
+
     protected final void executeComponent(Component component, int w) {
         //Kompics.logger.error("Executing: {}", component.getComponent());
         ((ComponentCore) component).execute(w);
         //Kompics.logger.error("Finished executing: {}", component.getComponent());
     }
+
+    /*
+     * set once on each thread a scheduler runs components on, which must not
+     * wait for room in a full queue
+     */
+    private static final ThreadLocal<Boolean> workerThread = new ThreadLocal<Boolean>();
+
+    /**
+     * Marks the calling thread as one that executes components. Schedulers
+     * call this once when a worker thread starts.
+     */
+    protected static void markWorkerThread() {
+        workerThread.set(Boolean.TRUE);
+    }
+
+    /**
+     * @return whether the current thread executes components
+     */
+    static boolean isWorkerThread() {
+        return workerThread.get() != null;
+    }
 }
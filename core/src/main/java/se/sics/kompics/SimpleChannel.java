@@ -5,6 +5,8 @@
  */
 package se.sics.kompics;
 
+import java.util.List;
+
 /**
  *
  * @author lkroll
@@ -15,6 +17,10 @@ public abstract class SimpleChannel<PT extends PortType> implements ChannelCore<
     protected final PortCore<PT> positivePort;
     protected final PortCore<PT> negativePort;
     protected final PT portType;
+    /*
+     * element in the RequestPath registry, 0 until the channel is on a path
+     */
+    volatile long pathElement = 0;
     
     public SimpleChannel(PortCore<PT> positivePort, PortCore<PT> negativePort) {
         this.positivePort = positivePort;
@@ -27,6 +33,30 @@ public abstract class SimpleChannel<PT extends PortType> implements ChannelCore<
         return destroyed;
     }
 
+    /**
+     * Forwards a batch of events to the positive port, in order.
+     * <p>
+     * @param events the events
+     * @param wid the worker id
+     */
+    void forwardAllToPositive(List<? extends KompicsEvent> events, int wid) {
+        for (KompicsEvent event : events) {
+            forwardToPositive(event, wid);
+        }
+    }
+
+    /**
+     * Forwards a batch of events to the negative port, in order.
+     * <p>
+     * @param events the events
+     * @param wid the worker id
+     */
+    void forwardAllToNegative(List<? extends KompicsEvent> events, int wid) {
+        for (KompicsEvent event : events) {
+            forwardToNegative(event, wid);
+        }
+    }
+
     private void destroy() {
         destroyed = true;
     }
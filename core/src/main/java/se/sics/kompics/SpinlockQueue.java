@@ -30,14 +30,21 @@ import java.util.concurrent.ConcurrentLinkedQueue;
  * @author Jim Dowling {@literal <jdowling@sics.se>}
  * @version $Id$
  */
-public class SpinlockQueue<E> {
+public class SpinlockQueue<E> implements EventQueue<E> {
 
 	private final ConcurrentLinkedQueue<E> q = new ConcurrentLinkedQueue<E>();
 	
 	public void offer(E e) {
 		q.offer(e);
 	}
+
+	@Override
+	public boolean enqueue(E e) {
+		q.offer(e);
+		return true;
+	}
 	
+	@Override
 	public E poll() {
 		return q.poll();
 	}
@@ -46,6 +53,7 @@ public class SpinlockQueue<E> {
 		return q.peek();
 	}
 	
+	@Override
 	public boolean isEmpty() {
 		return q.isEmpty();
 	}
@@ -54,6 +62,7 @@ public class SpinlockQueue<E> {
             q.remove(e);
         }
         
+        @Override
         public void clear() {
             q.clear();
         }
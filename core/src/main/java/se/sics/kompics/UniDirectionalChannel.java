@@ -5,6 +5,8 @@
  */
 package se.sics.kompics;
 
+import java.util.List;
+
 /**
  *
  * @author lkroll
@@ -38,6 +40,20 @@ public class UniDirectionalChannel<PT extends PortType> extends SimpleChannel<PT
         }
     }
 
+    @Override
+    void forwardAllToPositive(List<? extends KompicsEvent> events, int wid) {
+        if (!destroyed && (direction == Direction.TO_POSITIVE)) {
+            positivePort.doTriggerAll(events, wid, this);
+        }
+    }
+
+    @Override
+    void forwardAllToNegative(List<? extends KompicsEvent> events, int wid) {
+        if (!destroyed && (direction == Direction.TO_NEGATIVE)) {
+            negativePort.doTriggerAll(events, wid, this);
+        }
+    }
+
     public static class Factory implements ChannelFactory {
 
         private final Direction direction;
@@ -22,6 +22,7 @@ package se.sics.kompics.config;
 
 import com.google.common.base.Optional;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.HashMap;
 import java.util.LinkedList;
@@ -124,8 +125,21 @@ public interface Config {
 
         private final AtomicLong versionFactory;
         private final BaselineConfig baseline;
-        private final HashMap<String, ConfigValue> values = new HashMap<>();
+        /*
+         * shared with copies until either side changes it, deepKeys are the
+         * keys that may hold values copies must clone
+         */
+        private PersistentMap<ConfigValue> values = PersistentMap.empty();
+        private String[] deepKeys = NO_KEYS;
         long version;
+        private static final String[] NO_KEYS = new String[0];
+        /*
+         * values resolved through ConfigKeys, by key index, valid while
+         * their stamp equals the number of updates applied
+         */
+        private volatile long stamp = 0;
+        private Resolved[] resolved = NO_RESOLVED;
+        private static final Resolved[] NO_RESOLVED = new Resolved[0];
 
         private Impl(BaselineConfig baseline, long version) {
             this(baseline, version, new AtomicLong(0));
@@ -310,27 +324,40 @@ public interface Config {
             } else {
                 copy = new Impl(baseline, version, versionFactory);
             }
-            for (Entry<String, ConfigValue> e : values.entrySet()) {
-                if (e.getValue() instanceof Builder.CV) {
-                    Builder.CV cv = (Builder.CV) e.getValue();
-                    switch (cv.options.copy) {
-                        case SHALLOW:
-                            copy.values.put(e.getKey(), cv);
-                            break;
-                        case DEEP: {
-                            Object ocopy = cv.options.cloner.clone(cv.unwrap());
-                            Builder.CV newCV = new Builder.CV(ocopy, cv.version, cv.options);
-                            copy.values.put(e.getKey(), newCV);
-                        }
-                        break;
+            copy.values = values;
+            copy.deepKeys = deepKeys;
+            for (String key : deepKeys) {
+                ConfigValue v = values.get(key);
+                if (v instanceof Builder.CV) {
+                    Builder.CV cv = (Builder.CV) v;
+                    if (cv.options.copy == ValueOptions.Copy.DEEP) {
+                        Object ocopy = cv.options.cloner.clone(cv.unwrap());
+                        Builder.CV newCV = new Builder.CV(ocopy, cv.version, cv.options);
+                        copy.values = copy.values.plus(key, newCV);
                     }
-                } else {
-                    copy.values.put(e.getKey(), e.getValue()); // always shallow if not Builder.CV
-                }
+                } // always shallow if not Builder.CV
             }
             return copy;
         }
 
+        <T> T resolve(ConfigKey<T> key) {
+            long s = stamp;
+            Resolved[] r = resolved;
+            if (key.index < r.length) {
+                Resolved res = r[key.index];
+                if ((res != null) && (res.stamp == s)) {
+                    return (T) res.value;
+                }
+            }
+            T value = key.lookup(this);
+            if (key.index >= r.length) {
+                r = Arrays.copyOf(r, Math.max(key.index + 1, 2 * r.length));
+                resolved = r;
+            }
+            r[key.index] = new Resolved(s, value);
+            return value;
+        }
+
         public void apply(ConfigUpdate update, Optional<ValueMerger> customMergeLogic) {
             this.version = update.versionId;
             for (Entry<String, ConfigValue> e : update.updates.entrySet()) {
@@ -339,16 +366,42 @@ public interface Config {
                     oldCV = baseline.getValue(e.getKey());
                 }
                 if (oldCV == null) { // if there's no previous value just insert the new one
-                    values.put(e.getKey(), e.getValue());
+                    put(e.getKey(), e.getValue());
                 } else {
                     if (customMergeLogic.isPresent()) {
                         ConfigValue cv = customMergeLogic.get().merge(e.getKey(), oldCV, e.getValue(), Builder.CVFactory.INSTANCE);
-                        values.put(e.getKey(), cv);
+                        put(e.getKey(), cv);
                     } else {
                         ConfigValue cv = e.getValue().options().merger.merge(e.getKey(), oldCV, e.getValue(), Builder.CVFactory.INSTANCE);
-                        values.put(e.getKey(), cv);
+                        put(e.getKey(), cv);
+                    }
+                }
+            }
+            stamp++; // drops everything resolved so far
+        }
+
+        private static final class Resolved {
+
+            final long stamp;
+            final Object value;
+
+            Resolved(long stamp, Object value) {
+                this.stamp = stamp;
+                this.value = value;
+            }
+        }
+
+        private void put(String key, ConfigValue cv) {
+            values = values.plus(key, cv);
+            if ((cv instanceof Builder.CV) && (((Builder.CV) cv).options.copy == ValueOptions.Copy.DEEP)) {
+                for (String k : deepKeys) {
+                    if (k.equals(key)) {
+                        return;
                     }
                 }
+                String[] newKeys = Arrays.copyOf(deepKeys, deepKeys.length + 1);
+                newKeys[deepKeys.length] = key;
+                deepKeys = newKeys;
             }
         }
 
@@ -0,0 +1,104 @@
+/*
+ * This file is part of the Kompics component model runtime.
+ *
+ * Copyright (C) 2009 Swedish Institute of Computer Science (SICS) 
+ * Copyright (C) 2009 Royal Institute of Technology (KTH)
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package se.sics.kompics.config;
+
+import com.google.common.base.Optional;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A typed handle for reading one config value repeatedly, e.g. in a
+ * handler.
+ * <p>
+ * The first {@link #get(Config)} on a {@link Config.Impl} looks the value up
+ * and converts it, later ones return the cached result until the config
+ * applies an update. Declare keys once, as constants:
+ * <pre>
+ * {@code
+ * static final ConfigKey<Long> TIMEOUT = new ConfigKey<Long>("my.timeout", Long.class, 1000L);
+ * ...
+ * long timeout = TIMEOUT.get(config());
+ * }
+ * </pre>
+ * <p>
+ * @param <T> the value type
+ */
+public final class ConfigKey<T> {
+
+    private static final AtomicInteger INDEX_FACTORY = new AtomicInteger(0);
+
+    public final String name;
+    public final Class<T> type;
+    private final T defaultValue;
+    /*
+     * where config instances cache the value for this key
+     */
+    final int index;
+
+    /**
+     * A key without default, {@link #get(Config)} returns null if the value
+     * is missing or can't be converted to {@code type}.
+     * <p>
+     * @param name the location of the value
+     * @param type the value type
+     */
+    public ConfigKey(String name, Class<T> type) {
+        this(name, type, null);
+    }
+
+    /**
+     * @param name the location of the value
+     * @param type the value type
+     * @param defaultValue returned if the value is missing or can't be
+     * converted to {@code type}
+     */
+    public ConfigKey(String name, Class<T> type, T defaultValue) {
+        this.name = name;
+        this.type = type;
+        this.defaultValue = defaultValue;
+        this.index = INDEX_FACTORY.getAndIncrement();
+    }
+
+    /**
+     * Reads the value of this key from {@code conf}.
+     * <p>
+     * @param conf the config
+     * @return the value, or the default if none
+     */
+    public T get(Config conf) {
+        if (conf instanceof Config.Impl) {
+            return ((Config.Impl) conf).resolve(this);
+        }
+        return lookup(conf);
+    }
+
+    T lookup(Config conf) {
+        Optional<T> v = conf.readValue(name, type);
+        if (v.isPresent()) {
+            return v.get();
+        }
+        return defaultValue;
+    }
+
+    @Override
+    public String toString() {
+        return "ConfigKey(" + name + ": " + type.getSimpleName() + ")";
+    }
+}
@@ -46,6 +46,57 @@ public class ConfigUpdate implements Iterable<Entry<String, ConfigValue>> {
         return updates.entrySet().iterator();
     }
 
+    /**
+     * Combines this update with a later one, as if both were applied one
+     * after the other.
+     * <p>
+     * Values at the same key are combined with the merger of the later
+     * value.
+     * <p>
+     * @param later the later update
+     * @return the combined update
+     */
+    public ConfigUpdate merge(ConfigUpdate later) {
+        HashMap<String, ConfigValue> merged = new HashMap<>(updates);
+        for (Entry<String, ConfigValue> e : later.updates.entrySet()) {
+            ConfigValue earlier = merged.get(e.getKey());
+            if (earlier == null) {
+                merged.put(e.getKey(), e.getValue());
+            } else {
+                merged.put(e.getKey(), e.getValue().options().merger.merge(
+                        e.getKey(), earlier, e.getValue(), Config.Builder.CVFactory.INSTANCE));
+            }
+        }
+        return new ConfigUpdate(merged, Math.max(versionId, later.versionId), later.creator);
+    }
+
+    /**
+     * Restricts this update to the keys starting with one of
+     * {@code keyPrefixes}.
+     * <p>
+     * @param keyPrefixes the key prefixes
+     * @return the restricted update, this one if all keys match or null if
+     * none does
+     */
+    public ConfigUpdate filter(String[] keyPrefixes) {
+        HashMap<String, ConfigValue> kept = new HashMap<>();
+        for (Entry<String, ConfigValue> e : updates.entrySet()) {
+            for (String prefix : keyPrefixes) {
+                if (e.getKey().startsWith(prefix)) {
+                    kept.put(e.getKey(), e.getValue());
+                    break;
+                }
+            }
+        }
+        if (kept.isEmpty()) {
+            return null;
+        }
+        if (kept.size() == updates.size()) {
+            return this;
+        }
+        return new ConfigUpdate(kept, versionId, creator);
+    }
+
     public ConfigUpdateFactory modify(UUID creator) {
         return new Factory(creator);
     }
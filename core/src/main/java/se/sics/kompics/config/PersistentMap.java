@@ -0,0 +1,216 @@
+/*
+ * This file is part of the Kompics component model runtime.
+ *
+ * Copyright (C) 2009 Swedish Institute of Computer Science (SICS) 
+ * Copyright (C) 2009 Royal Institute of Technology (KTH)
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package se.sics.kompics.config;
+
+/**
+ * An immutable map from strings to values as a hash array mapped trie.
+ * <p>
+ * {@link #plus(String, Object)} returns a new map that shares all nodes
+ * with this one except those on the path to the changed key, so copying a
+ * map is free and an update allocates a few small arrays.
+ * <p>
+ * @param <V> the value type
+ */
+final class PersistentMap<V> {
+
+    private static final int BITS = 5;
+    private static final int MASK = (1 << BITS) - 1;
+    private static final PersistentMap<Object> EMPTY = new PersistentMap<Object>(BitmapNode.EMPTY, 0);
+
+    private final Node root;
+    private final int size;
+
+    private PersistentMap(Node root, int size) {
+        this.root = root;
+        this.size = size;
+    }
+
+    @SuppressWarnings("unchecked")
+    static <V> PersistentMap<V> empty() {
+        return (PersistentMap<V>) EMPTY;
+    }
+
+    int size() {
+        return size;
+    }
+
+    @SuppressWarnings("unchecked")
+    V get(String key) {
+        return (V) root.find(0, hash(key), key);
+    }
+
+    /**
+     * Returns a map with {@code key} bound to {@code value}.
+     * <p>
+     * @param key the key
+     * @param value the value, not null
+     * @return the new map, or this one if nothing changed
+     */
+    PersistentMap<V> plus(String key, V value) {
+        boolean[] added = new boolean[1];
+        Node newRoot = root.assoc(0, hash(key), key, value, added);
+        if (newRoot == root) {
+            return this;
+        }
+        return new PersistentMap<V>(newRoot, added[0] ? size + 1 : size);
+    }
+
+    private static int hash(String key) {
+        int h = key.hashCode();
+        return h ^ (h >>> 16);
+    }
+
+    private static Object[] cloneAndSet(Object[] array, int i, Object o) {
+        Object[] clone = array.clone();
+        clone[i] = o;
+        return clone;
+    }
+
+    private static abstract class Node {
+
+        abstract Object find(int shift, int hash, String key);
+
+        abstract Node assoc(int shift, int hash, String key, Object value, boolean[] added);
+    }
+
+    /*
+     * Holds up to 32 slots, one per 5 bit chunk of the hash at this level.
+     * Each slot is a key/value pair in the array, or null and a sub-node.
+     */
+    private static final class BitmapNode extends Node {
+
+        static final BitmapNode EMPTY = new BitmapNode(0, new Object[0]);
+
+        private final int bitmap;
+        private final Object[] array;
+
+        BitmapNode(int bitmap, Object[] array) {
+            this.bitmap = bitmap;
+            this.array = array;
+        }
+
+        @Override
+        Object find(int shift, int hash, String key) {
+            int bit = 1 << ((hash >>> shift) & MASK);
+            if ((bitmap & bit) == 0) {
+                return null;
+            }
+            int idx = 2 * Integer.bitCount(bitmap & (bit - 1));
+            Object k = array[idx];
+            Object v = array[idx + 1];
+            if (k == null) {
+                return ((Node) v).find(shift + BITS, hash, key);
+            }
+            return key.equals(k) ? v : null;
+        }
+
+        @Override
+        Node assoc(int shift, int hash, String key, Object value, boolean[] added) {
+            int bit = 1 << ((hash >>> shift) & MASK);
+            int idx = 2 * Integer.bitCount(bitmap & (bit - 1));
+            if ((bitmap & bit) == 0) {
+                Object[] newArray = new Object[array.length + 2];
+                System.arraycopy(array, 0, newArray, 0, idx);
+                newArray[idx] = key;
+                newArray[idx + 1] = value;
+                System.arraycopy(array, idx, newArray, idx + 2, array.length - idx);
+                added[0] = true;
+                return new BitmapNode(bitmap | bit, newArray);
+            }
+            Object k = array[idx];
+            Object v = array[idx + 1];
+            if (k == null) {
+                Node n = ((Node) v).assoc(shift + BITS, hash, key, value, added);
+                if (n == v) {
+                    return this;
+                }
+                return new BitmapNode(bitmap, cloneAndSet(array, idx + 1, n));
+            }
+            if (key.equals(k)) {
+                if (v == value) {
+                    return this;
+                }
+                return new BitmapNode(bitmap, cloneAndSet(array, idx + 1, value));
+            }
+            added[0] = true;
+            Object[] newArray = array.clone();
+            newArray[idx] = null;
+            newArray[idx + 1] = split(shift + BITS, (String) k, v, hash, key, value);
+            return new BitmapNode(bitmap, newArray);
+        }
+
+        private static Node split(int shift, String k1, Object v1, int h2, String k2, Object v2) {
+            int h1 = hash(k1);
+            if (h1 == h2) {
+                return new CollisionNode(h1, new Object[]{k1, v1, k2, v2});
+            }
+            boolean[] ignored = new boolean[1];
+            return EMPTY.assoc(shift, h1, k1, v1, ignored).assoc(shift, h2, k2, v2, ignored);
+        }
+    }
+
+    /*
+     * Keys whose hashes are equal in all 32 bits.
+     */
+    private static final class CollisionNode extends Node {
+
+        private final int hash;
+        private final Object[] array;
+
+        CollisionNode(int hash, Object[] array) {
+            this.hash = hash;
+            this.array = array;
+        }
+
+        @Override
+        Object find(int shift, int hash, String key) {
+            for (int i = 0; i < array.length; i += 2) {
+                if (key.equals(array[i])) {
+                    return array[i + 1];
+                }
+            }
+            return null;
+        }
+
+        @Override
+        Node assoc(int shift, int hash, String key, Object value, boolean[] added) {
+            if (hash != this.hash) {
+                // push this node one level down
+                int bit = 1 << ((this.hash >>> shift) & MASK);
+                return new BitmapNode(bit, new Object[]{null, this}).assoc(shift, hash, key, value, added);
+            }
+            for (int i = 0; i < array.length; i += 2) {
+                if (key.equals(array[i])) {
+                    if (array[i + 1] == value) {
+                        return this;
+                    }
+                    return new CollisionNode(hash, cloneAndSet(array, i + 1, value));
+                }
+            }
+            Object[] newArray = new Object[array.length + 2];
+            System.arraycopy(array, 0, newArray, 0, array.length);
+            newArray[array.length] = key;
+            newArray[array.length + 1] = value;
+            added[0] = true;
+            return new CollisionNode(hash, newArray);
+        }
+    }
+}
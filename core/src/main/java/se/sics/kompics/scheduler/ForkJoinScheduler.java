@@ -0,0 +1,187 @@
+/*
+ * This file is part of the Kompics component model runtime.
+ *
+ * Copyright (C) 2009 Swedish Institute of Computer Science (SICS) 
+ * Copyright (C) 2009 Royal Institute of Technology (KTH)
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package se.sics.kompics.scheduler;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import se.sics.kompics.Component;
+import se.sics.kompics.Kompics;
+import se.sics.kompics.Scheduler;
+
+/**
+ * A scheduler backed by an async-mode {@link ForkJoinPool}.
+ * <p>
+ * Each component gets one {@link ComponentTask} that is forked again every
+ * time the component is scheduled, so scheduling doesn't allocate. Work
+ * scheduled from one of the pool's threads goes to that thread's own queue,
+ * other threads submit to the pool. Stealing is left to the pool.
+ * <p>
+ * The pool drains a worker's local queue before looking at submissions, and
+ * a component waiting for its children keeps rescheduling itself. So now and
+ * then a worker moves one submission to its own queue, like the fairness
+ * pick of {@link Worker}.
+ */
+public class ForkJoinScheduler extends Scheduler {
+
+    private static final int FAIRNESS_MASK = 63;
+
+    private final Pool pool;
+
+    public ForkJoinScheduler(int workers) {
+        pool = new Pool(workers);
+    }
+
+    @Override
+    public void schedule(Component c, int w) {
+        ComponentTask task = (ComponentTask) getSchedulerState(c);
+        if (task == null) {
+            // a component is only ever scheduled once at a time, so this
+            // can't race with another schedule of the same component
+            task = new ComponentTask(c);
+            setSchedulerState(c, task);
+        }
+        Thread t = Thread.currentThread();
+        if ((t instanceof KompicsWorkerThread)
+                && (((KompicsWorkerThread) t).getPool() == pool)) {
+            KompicsWorkerThread kwt = (KompicsWorkerThread) t;
+            if ((++kwt.forkCount & FAIRNESS_MASK) == 0) {
+                ForkJoinTask<?> submission = pool.takeSubmission();
+                if (submission != null) {
+                    submission.fork();
+                }
+            }
+            task.fork();
+        } else {
+            pool.execute(task);
+        }
+    }
+
+    @Override
+    public void proceed() {
+    }
+
+    @Override
+    public void execute(Runnable task) {
+        pool.execute(task);
+    }
+
+    @Override
+    public int getParallelism() {
+        return pool.getParallelism();
+    }
+
+    @Override
+    public void shutdown() {
+        pool.shutdown();
+        try {
+            if (!pool.awaitTermination(Kompics.SHUTDOWN_TIMEOUT, TimeUnit.MILLISECONDS)) {
+                Kompics.logger.warn("Failed orderly Kompics shutdown");
+            }
+        } catch (InterruptedException ex) {
+            Kompics.logger.warn("Failed orderly Kompics shutdown", ex);
+        }
+    }
+
+    @Override
+    public void asyncShutdown() {
+        pool.shutdown();
+    }
+
+    /**
+     * Runs one component.
+     * <p>
+     * {@link #exec()} never reports completion, which keeps the task
+     * reusable: it may be forked again, even while the previous execution is
+     * still returning.
+     */
+    private final class ComponentTask extends ForkJoinTask<Void> {
+
+        private static final long serialVersionUID = -8207340410523766311L;
+        private final Component component;
+
+        ComponentTask(Component component) {
+            this.component = component;
+        }
+
+        @Override
+        public Void getRawResult() {
+            return null;
+        }
+
+        @Override
+        protected void setRawResult(Void value) {
+        }
+
+        @Override
+        protected boolean exec() {
+            try {
+                executeComponent(component, 0);
+            } catch (Throwable t) {
+                // an exceptional task would never run again
+                Kompics.logger.error("Error while executing " + component, t);
+            }
+            return false;
+        }
+    }
+
+    private static final class Pool extends ForkJoinPool {
+
+        Pool(int workers) {
+            super(workers, new KompicsWorkerFactory(), null, true);
+        }
+
+        ForkJoinTask<?> takeSubmission() {
+            return pollSubmission();
+        }
+    }
+
+    static final class KompicsWorkerThread extends ForkJoinWorkerThread {
+
+        int forkCount = 0;
+
+        KompicsWorkerThread(ForkJoinPool pool) {
+            super(pool);
+        }
+
+        @Override
+        protected void onStart() {
+            super.onStart();
+            markWorkerThread();
+        }
+    }
+
+    static class KompicsWorkerFactory implements ForkJoinPool.ForkJoinWorkerThreadFactory {
+
+        final AtomicInteger threadNumber = new AtomicInteger(1);
+
+        @Override
+        public ForkJoinWorkerThread newThread(ForkJoinPool pool) {
+            ForkJoinWorkerThread t = new KompicsWorkerThread(pool);
+            t.setName("Kompics-fj-worker-" + threadNumber.getAndIncrement());
+            // keep the JVM alive like the other schedulers do
+            t.setDaemon(false);
+            return t;
+        }
+    }
+}
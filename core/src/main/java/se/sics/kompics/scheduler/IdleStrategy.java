@@ -0,0 +1,131 @@
+/*
+ * This file is part of the Kompics component model runtime.
+ *
+ * Copyright (C) 2009 Swedish Institute of Computer Science (SICS) 
+ * Copyright (C) 2009 Royal Institute of Technology (KTH)
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package se.sics.kompics.scheduler;
+
+import se.sics.kompics.ConfigurationException;
+import se.sics.kompics.config.Config;
+
+/**
+ * How an idle {@link Worker} waits for new work.
+ * <p>
+ * A worker that finds no work spins for a number of rounds, re-checking all
+ * queues each time. It then {@link Thread#yield() yields} for a number of
+ * rounds, and finally parks until a scheduling thread unparks it. A strategy
+ * that never parks trades CPU time for wake-up latency.
+ */
+public final class IdleStrategy {
+
+    /**
+     * The idle profile: "default" or "low-latency".
+     */
+    public static final String PROFILE_KEY = "kompics.scheduler.idle.profile";
+    /**
+     * Idle rounds spent spinning before yielding, overriding the profile.
+     */
+    public static final String SPINS_KEY = "kompics.scheduler.idle.spins";
+    /**
+     * Idle rounds spent yielding before parking, overriding the profile.
+     */
+    public static final String YIELDS_KEY = "kompics.scheduler.idle.yields";
+    /**
+     * Spin briefly, yield briefly, then park.
+     */
+    public static final IdleStrategy DEFAULT = new IdleStrategy(100, 10, true);
+    /**
+     * Spin longer, then keep yielding; workers never park.
+     */
+    public static final IdleStrategy LOW_LATENCY = new IdleStrategy(10000, 0, false);
+
+    private final int spins;
+    private final int yields;
+    private final boolean park;
+
+    /**
+     * Creates a strategy that parks after spinning and yielding.
+     * <p>
+     * @param spins idle rounds spent spinning
+     * @param yields idle rounds spent yielding
+     */
+    public IdleStrategy(int spins, int yields) {
+        this(spins, yields, true);
+    }
+
+    private IdleStrategy(int spins, int yields, boolean park) {
+        if (spins < 0 || yields < 0) {
+            throw new IllegalArgumentException("Idle thresholds must not be negative");
+        }
+        this.spins = spins;
+        this.yields = yields;
+        this.park = park;
+    }
+
+    /**
+     * Reads the strategy from {@link #PROFILE_KEY}, {@link #SPINS_KEY} and
+     * {@link #YIELDS_KEY}.
+     * <p>
+     * @param conf the configuration
+     * @return the strategy
+     */
+    public static IdleStrategy fromConfig(Config conf) {
+        String profile = conf.getValueOrDefault(PROFILE_KEY, "default");
+        IdleStrategy base;
+        if (profile.equalsIgnoreCase("default")) {
+            base = DEFAULT;
+        } else if (profile.equalsIgnoreCase("low-latency")) {
+            base = LOW_LATENCY;
+        } else {
+            throw new ConfigurationException("Unknown idle profile: " + profile);
+        }
+        int s = conf.getValueOrDefault(SPINS_KEY, base.spins);
+        int y = conf.getValueOrDefault(YIELDS_KEY, base.yields);
+        if ((s == base.spins) && (y == base.yields)) {
+            return base;
+        }
+        return new IdleStrategy(s, y, base.park);
+    }
+
+    /**
+     * Whether workers using this strategy ever park.
+     * <p>
+     * @return true if they do
+     */
+    public boolean parks() {
+        return park;
+    }
+
+    /**
+     * Spins or yields for the given idle round.
+     * <p>
+     * @param round the number of consecutive idle rounds so far
+     * @return true if the worker should park instead
+     */
+    boolean idle(int round) {
+        if (round < spins) {
+            // nothing to do, the caller re-checks its queues
+            return false;
+        }
+        if (!park || (round - spins) < yields) {
+            Thread.yield();
+            return false;
+        }
+        return true;
+    }
+}
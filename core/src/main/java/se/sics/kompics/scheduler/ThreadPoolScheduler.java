@@ -33,8 +33,10 @@ public class ThreadPoolScheduler extends Scheduler {
 
     private final ThreadPoolExecutor threadPool;
     private final ThreadPoolScheduler self;
+    private final int workers;
 
     public ThreadPoolScheduler(int workers) {
+        this.workers = workers;
         threadPool = new ThreadPoolExecutor(workers, workers, 60L,
                 TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(),
                 new KompicsThreadFactory(),
@@ -56,6 +58,16 @@ public class ThreadPoolScheduler extends Scheduler {
     public void proceed() {
     }
 
+    @Override
+    public void execute(Runnable task) {
+        threadPool.execute(task);
+    }
+
+    @Override
+    public int getParallelism() {
+        return workers;
+    }
+
     @Override
     public void shutdown() {
         threadPool.shutdown();
@@ -83,8 +95,15 @@ public class ThreadPoolScheduler extends Scheduler {
         }
 
         @Override
-        public Thread newThread(Runnable r) {
-            Thread t = new Thread(r, namePrefix
+        public Thread newThread(final Runnable r) {
+            Thread t = new Thread(new Runnable() {
+
+                @Override
+                public void run() {
+                    markWorkerThread();
+                    r.run();
+                }
+            }, namePrefix
                     + threadNumber.getAndIncrement());
             if (t.isDaemon()) {
                 t.setDaemon(false);
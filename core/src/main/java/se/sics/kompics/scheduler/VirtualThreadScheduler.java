@@ -0,0 +1,146 @@
+/*
+ * This file is part of the Kompics component model runtime.
+ *
+ * Copyright (C) 2009 Swedish Institute of Computer Science (SICS) 
+ * Copyright (C) 2009 Royal Institute of Technology (KTH)
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package se.sics.kompics.scheduler;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import se.sics.kompics.Component;
+import se.sics.kompics.Kompics;
+import se.sics.kompics.Scheduler;
+
+/**
+ * A scheduler for components whose handlers block, for example on JDBC or
+ * file IO.
+ * <p>
+ * Every execution of a component runs on its own virtual thread, so a
+ * blocked handler doesn't hold up other components. A component is still
+ * only scheduled once at a time, so its handlers still run one at a time.
+ * <p>
+ * Virtual threads are looked up reflectively so the runtime still builds for
+ * Java 7. On JVMs without them this falls back to a cached pool of platform
+ * threads, which also keeps blocking handlers from stalling the others, at
+ * the cost of one OS thread per blocked component.
+ * <p>
+ * Handlers that block while holding a monitor pin the virtual thread to its
+ * carrier, prefer {@link java.util.concurrent.locks.Lock}s in such handlers.
+ */
+public class VirtualThreadScheduler extends Scheduler {
+
+    private static final String VIRTUAL_FACTORY = "newVirtualThreadPerTaskExecutor";
+
+    private final ExecutorService executor;
+    private final boolean virtual;
+
+    public VirtualThreadScheduler() {
+        this(VIRTUAL_FACTORY);
+    }
+
+    /**
+     * Looks up the virtual thread executor under the given factory name, so
+     * tests can force the fallback.
+     */
+    VirtualThreadScheduler(String factory) {
+        ExecutorService vexec = newVirtualThreadExecutor(factory);
+        if (vexec != null) {
+            executor = vexec;
+            virtual = true;
+        } else {
+            Kompics.logger.info("Virtual threads are not available, using a cached thread pool");
+            executor = Executors.newCachedThreadPool(new ThreadPoolScheduler.KompicsThreadFactory());
+            virtual = false;
+        }
+    }
+
+    /**
+     * Whether executions run on virtual threads or on the fallback pool.
+     * <p>
+     * @return true for virtual threads
+     */
+    public boolean usesVirtualThreads() {
+        return virtual;
+    }
+
+    @Override
+    public void schedule(Component c, int w) {
+        Runnable r = (Runnable) getSchedulerState(c);
+        if (r == null) {
+            // a component is only ever scheduled once at a time
+            r = new ComponentRunner(c);
+            setSchedulerState(c, r);
+        }
+        executor.execute(r);
+    }
+
+    @Override
+    public void proceed() {
+    }
+
+    @Override
+    public void execute(Runnable task) {
+        executor.execute(task);
+    }
+
+    @Override
+    public void shutdown() {
+        executor.shutdown();
+        try {
+            if (!executor.awaitTermination(Kompics.SHUTDOWN_TIMEOUT, TimeUnit.MILLISECONDS)) {
+                Kompics.logger.warn("Failed orderly Kompics shutdown");
+            }
+        } catch (InterruptedException ex) {
+            Kompics.logger.warn("Failed orderly Kompics shutdown", ex);
+        }
+    }
+
+    @Override
+    public void asyncShutdown() {
+        executor.shutdown();
+    }
+
+    private static ExecutorService newVirtualThreadExecutor(String factory) {
+        try {
+            Method m = Executors.class.getMethod(factory);
+            return (ExecutorService) m.invoke(null);
+        } catch (NoSuchMethodException ex) {
+            return null;
+        } catch (Exception ex) {
+            // e.g. preview features not enabled
+            Kompics.logger.debug("Could not create virtual thread executor", ex);
+            return null;
+        }
+    }
+
+    private final class ComponentRunner implements Runnable {
+
+        private final Component component;
+
+        ComponentRunner(Component component) {
+            this.component = component;
+        }
+
+        @Override
+        public void run() {
+            executeComponent(component, 0);
+        }
+    }
+}
@@ -0,0 +1,123 @@
+/*
+ * This file is part of the Kompics component model runtime.
+ *
+ * Copyright (C) 2009 Swedish Institute of Computer Science (SICS) 
+ * Copyright (C) 2009 Royal Institute of Technology (KTH)
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package se.sics.kompics.scheduler;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * A Chase-Lev work-stealing deque.
+ * <p>
+ * Only the owning worker may {@link #push(Object) push} and
+ * {@link #pop() pop}, both at the bottom (LIFO). Any thread may
+ * {@link #steal() steal} from the top (FIFO). The array grows when full and
+ * never shrinks.
+ * <p>
+ * @param <E> the element type
+ */
+final class WorkStealingDeque<E> {
+
+    private static final int INITIAL_CAPACITY = 64;
+
+    private volatile AtomicReferenceArray<E> array = new AtomicReferenceArray<E>(INITIAL_CAPACITY);
+    private final AtomicLong top = new AtomicLong(0);
+    private volatile long bottom = 0;
+
+    /**
+     * Owner only.
+     * <p>
+     * @param e the element
+     */
+    void push(E e) {
+        long b = bottom;
+        long t = top.get();
+        AtomicReferenceArray<E> a = array;
+        if (b - t >= a.length() - 1) {
+            a = grow(a, b, t);
+            array = a;
+        }
+        a.set((int) (b & (a.length() - 1)), e);
+        bottom = b + 1;
+    }
+
+    /**
+     * Owner only.
+     * <p>
+     * @return the most recently pushed element, or {@code null} if empty
+     */
+    E pop() {
+        long b = bottom - 1;
+        AtomicReferenceArray<E> a = array;
+        bottom = b;
+        long t = top.get();
+        long size = b - t;
+        if (size < 0) {
+            bottom = t;
+            return null;
+        }
+        int idx = (int) (b & (a.length() - 1));
+        E e = a.get(idx);
+        if (size > 0) {
+            a.set(idx, null);
+            return e;
+        }
+        // last element, race thieves for it
+        if (!top.compareAndSet(t, t + 1)) {
+            e = null;
+        }
+        bottom = t + 1;
+        return e;
+    }
+
+    /**
+     * @return the oldest element, or {@code null} if empty or another thread
+     * won the race for it
+     */
+    E steal() {
+        long t = top.get();
+        long b = bottom;
+        if (t >= b) {
+            return null;
+        }
+        AtomicReferenceArray<E> a = array;
+        E e = a.get((int) (t & (a.length() - 1)));
+        if (!top.compareAndSet(t, t + 1)) {
+            return null;
+        }
+        return e;
+    }
+
+    /**
+     * @return the approximate number of elements
+     */
+    int size() {
+        long size = bottom - top.get();
+        return (size > 0) ? (int) size : 0;
+    }
+
+    private static <E> AtomicReferenceArray<E> grow(AtomicReferenceArray<E> old, long b, long t) {
+        AtomicReferenceArray<E> a = new AtomicReferenceArray<E>(old.length() << 1);
+        for (long i = t; i < b; i++) {
+            a.set((int) (i & (a.length() - 1)), old.get((int) (i & (old.length() - 1))));
+        }
+        return a;
+    }
+}
@@ -20,7 +20,8 @@
  */
 package se.sics.kompics.scheduler;
 
-import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.locks.LockSupport;
 
 import se.sics.kompics.Component;
 import se.sics.kompics.ComponentCore;
@@ -41,25 +42,42 @@ public final class WorkStealingScheduler extends Scheduler {
 
     private final int workerCount;
     private final Worker[] workers;
-    private final boolean[] on;
+    private final IdleStrategy idleStrategy;
+    /**
+     * Workers that are parked or about to park.
+     */
     private final SpinlockQueue<Worker> sleepingWorkers;
-    private final AtomicInteger sleepingWorkerCount;
+    /**
+     * Tasks given to {@link #execute(Runnable)}, taken by any worker that
+     * has no components of its own to run.
+     */
+    private final SpinlockQueue<Runnable> tasks;
 
     /**
-     * Instantiates a new scheduler.
+     * Instantiates a new scheduler, reading the {@link IdleStrategy} from the
+     * Kompics config.
      *
      * @param wc the wc
      */
     public WorkStealingScheduler(int wc) {
+        this(wc, IdleStrategy.fromConfig(Kompics.getConfig()));
+    }
+
+    /**
+     * Instantiates a new scheduler.
+     *
+     * @param wc the wc
+     * @param idleStrategy how idle workers wait for work
+     */
+    public WorkStealingScheduler(int wc, IdleStrategy idleStrategy) {
         workerCount = wc;
         workers = new Worker[workerCount];
+        this.idleStrategy = idleStrategy;
         sleepingWorkers = new SpinlockQueue<Worker>();
-        sleepingWorkerCount = new AtomicInteger(0);
-        on = new boolean[workerCount];
+        tasks = new SpinlockQueue<Runnable>();
 
         for (int i = 0; i < workers.length; i++) {
             workers[i] = new Worker(this, i);
-            on[i] = true;
         }
     }
 
@@ -71,84 +89,95 @@ public final class WorkStealingScheduler extends Scheduler {
 
     public final void shutdown() {
         for (int i = 0; i < workers.length; i++) {
-            synchronized (workers[i]) {
-                on[i] = false;
-                workers[i].quitWhenNoMoreWork();
-                workers[i].notify();
-            }
+            workers[i].quitWhenNoMoreWork();
+            LockSupport.unpark(workers[i]);
         }
     }
 
     public final void schedule(Component component, int wid) {
         ComponentCore core = (ComponentCore) component;
-        // check if any worker need waking up
-        int swc = sleepingWorkerCount.get();
-        Worker toAwake = null;
-        if (swc > 0) {
-            swc = sleepingWorkerCount.getAndDecrement();
-            if (swc > 0) {
-                toAwake = sleepingWorkers.poll();
-            }
-        }
-
-        if (toAwake == null) {
+        Thread t = Thread.currentThread();
+        if ((t instanceof Worker) && (((Worker) t).getScheduler() == this)) {
             // add new work to the queue of the worker who generated it
-            workers[wid].addWork(core);
+            ((Worker) t).pushWork(core);
         } else {
-            // add new work to the queue of the worker to be awaken
-            workers[toAwake.getWid()].addWork(core);
+            // wid is only meaningful to the scheduler the caller runs on,
+            // which may be another scheduler group with fewer workers
+            workers[ThreadLocalRandom.current().nextInt(workerCount)].addWork(core);
+        }
+        wakeSleeper();
+    }
+
+    static void markWorker() {
+        markWorkerThread();
+    }
+
+    @Override
+    public void execute(Runnable task) {
+        tasks.offer(task);
+        wakeSleeper();
+    }
+
+    @Override
+    public int getParallelism() {
+        return workerCount;
+    }
 
-            // wake up sleeping worker
-            synchronized (toAwake) {
-                toAwake.notify();
+    private void wakeSleeper() {
+        // Publish the work before looking for sleepers. A worker announces
+        // itself before its last look at the queues, so either it sees the
+        // work or we see it.
+        if (!sleepingWorkers.isEmpty()) {
+            Worker toAwake = sleepingWorkers.poll();
+            if (toAwake != null) {
+                toAwake.wake();
             }
         }
+    }
 
+    final Runnable pollTask() {
+        return tasks.poll();
     }
 
+    /*
+     * Tries the other workers once each, starting at a random victim so
+     * thieves spread out. The first probe succeeds whenever there is plenty
+     * of work, the full round only happens before going to sleep.
+     */
     final ComponentCore stealWork(int wid) {
-        ComponentCore core = null;
-        int wmax, max;
-        do {
-            max = 0;
-            wmax = wid;
-            for (int i = 0; i < workers.length; i++) {
-                if (i != wid) {
-                    int wc = workers[i].getWorkCount();
-                    if (wc > max) {
-                        max = wc;
-                        wmax = i;
-                    }
+        int n = workers.length;
+        int start = ThreadLocalRandom.current().nextInt(n);
+        for (int i = 0; i < n; i++) {
+            int victim = (start + i) % n;
+            if (victim != wid) {
+                ComponentCore core = workers[victim].stealWork();
+                if (core != null) {
+                    return core;
                 }
             }
-            core = workers[wmax].getWork();
-            // repeat until some worker has some work
-        } while (core == null && max > 0);
-        return core;
+        }
+        return null;
     }
 
-    final void waitForWork(Worker w) {
-        synchronized (w) {
+    /*
+     * Called by an idle worker after it found no work for round consecutive
+     * rounds. Spins or yields according to the idle strategy. When it is
+     * time to park, the worker is first announced as sleeping and returns to
+     * check all queues once more, the next call parks it.
+     */
+    final boolean waitForWork(Worker w, int round) {
+        if (!idleStrategy.idle(round)) {
+            return false;
+        }
+        if (w.markSleeping()) {
             sleepingWorkers.offer(w);
-            sleepingWorkerCount.incrementAndGet();
-//			try {
-//				// Kompics.logger.debug("{} sleeping.", w.getWid());
-//				if (!on[w.getWid()]) {
-//					// do not wait when the worker is supposed to quit
-//					return;
-//				}
-//
-//				w.wait();
-//			} catch (InterruptedException e) {
-//			}
-            // Kompics.logger.debug("{} sleeping.", w.getWid());
-            if (!on[w.getWid()]) {
-                // do not wait when the worker is supposed to quit
-                return;
-            }
-            w.waitForWork();
-            // Kompics.logger.debug("{} woke up.", w.getWid());
+            return false;
         }
+        // Kompics.logger.debug("{} sleeping.", w.getWid());
+        w.sleepCount++;
+        LockSupport.park(this);
+        // Kompics.logger.debug("{} woke up.", w.getWid());
+        return true;
     }
 
     public final void logStats() {
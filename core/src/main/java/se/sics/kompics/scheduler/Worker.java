@@ -21,9 +21,10 @@
 package se.sics.kompics.scheduler;
 
 import java.util.concurrent.atomic.AtomicBoolean;
-import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
 
 import se.sics.kompics.ComponentCore;
+import se.sics.kompics.Kompics;
 import se.sics.kompics.SpinlockQueue;
 
 /**
@@ -35,15 +36,27 @@ import se.sics.kompics.SpinlockQueue;
  */
 public class Worker extends Thread {
 
+	private static final int FAIRNESS_MASK = 63;
+
 	private final WorkStealingScheduler scheduler;
 
 	private final int wid;
 
-	private final SpinlockQueue<ComponentCore> workQueue;
+	/**
+	 * Work scheduled by this worker's own thread.
+	 */
+	private final WorkStealingDeque<ComponentCore> workQueue;
 
-	private final AtomicInteger workCount;
+	/**
+	 * Work handed to this worker by other threads.
+	 */
+	private final SpinlockQueue<ComponentCore> inbox;
 
-	private final AtomicBoolean workAvailable = new AtomicBoolean(false);
+	/**
+	 * Set while this worker is in the scheduler's queue of sleeping
+	 * workers; only a waking thread clears it.
+	 */
+	private final AtomicBoolean sleeping = new AtomicBoolean(false);
 
 	private final AtomicBoolean shouldQuit;
 
@@ -61,8 +74,8 @@ public class Worker extends Thread {
 		super();
 		this.scheduler = scheduler;
 		this.wid = wid;
-		this.workQueue = new SpinlockQueue<ComponentCore>();
-		this.workCount = new AtomicInteger(0);
+		this.workQueue = new WorkStealingDeque<ComponentCore>();
+		this.inbox = new SpinlockQueue<ComponentCore>();
 		this.shouldQuit = new AtomicBoolean(false);
 		super.setName("Kompics worker-" + wid);
 	}
@@ -74,6 +87,7 @@ public class Worker extends Thread {
 	 */
 	@Override
 	public final void run() {
+		WorkStealingScheduler.markWorker();
 		while (true) {
 			try {
 				boolean stillOn = executeComponent();
@@ -88,9 +102,30 @@ public class Worker extends Thread {
 
 	private final boolean executeComponent() {
 		ComponentCore core = null;
+		int idleRounds = 0;
 		do {
-			// try to do local work
-			core = workQueue.poll();
+			if ((executionCount & FAIRNESS_MASK) == 0) {
+				// now and then take the oldest work, so that a busy chain of
+				// components can't starve the rest
+				core = inbox.poll();
+				if (core == null) {
+					core = workQueue.steal();
+				}
+			}
+			if (core == null) {
+				// try to do local work, newest first
+				core = workQueue.pop();
+			}
+			if (core == null) {
+				core = inbox.poll();
+			}
+			if (core == null) {
+				Runnable task = scheduler.pollTask();
+				if (task != null) {
+					runTask(task);
+					return true;
+				}
+			}
 			if (core == null) {
 				// got no more work; should I quit?
 				if (shouldQuit.get()) {
@@ -102,11 +137,12 @@ public class Worker extends Thread {
 				core = scheduler.stealWork(wid);
 				if (core == null) {
 					// there is no work in the system
-					sleepCount++;
-					scheduler.waitForWork(this);
+					if (scheduler.waitForWork(this, idleRounds)) {
+						idleRounds = 0;
+					} else if (idleRounds < Integer.MAX_VALUE) {
+						idleRounds++;
+					}
 				}
-			} else {
-				workCount.decrementAndGet();
 			}
 		} while (core == null);
 
@@ -117,27 +153,53 @@ public class Worker extends Thread {
 		return true;
 	}
 
-	final ComponentCore getWork() {
-		ComponentCore core = workQueue.poll();
-		if (core != null) {
-			workCount.decrementAndGet();
+	private void runTask(Runnable task) {
+		try {
+			task.run();
+		} catch (Throwable t) {
+			Kompics.logger.error("Task " + task + " failed on worker " + wid, t);
+		}
+	}
+
+	/**
+	 * Takes the oldest work from this worker, called by other workers.
+	 * 
+	 * @return the work or null
+	 */
+	final ComponentCore stealWork() {
+		ComponentCore core = workQueue.steal();
+		if (core == null) {
+			core = inbox.poll();
 		}
 		return core;
 	}
 
+	/**
+	 * Must only be called from this worker's thread.
+	 * 
+	 * @param core
+	 *            the work
+	 */
+	final void pushWork(ComponentCore core) {
+		workQueue.push(core);
+	}
+
 	final void addWork(ComponentCore core) {
-		workQueue.offer(core);
-		workCount.incrementAndGet();
-		workAvailable.set(true);
+		inbox.offer(core);
 	}
 
 	/**
 	 * Gets the work count.
 	 * 
-	 * @return the work count
+	 * @return the approximate number of components queued at this worker
+	 *         by its own thread
 	 */
 	public final int getWorkCount() {
-		return workCount.get();
+		return workQueue.size();
+	}
+
+	final WorkStealingScheduler getScheduler() {
+		return scheduler;
 	}
 
 	/**
@@ -152,17 +214,20 @@ public class Worker extends Thread {
 	final void quitWhenNoMoreWork() {
 		shouldQuit.set(true);
 	}
-	
+
 	/**
-	 * The caller is expected to hold the object lock on entry
+	 * @return true if this worker was not yet marked as sleeping
 	 */
-	void waitForWork() {
-		try {
-			if (!workAvailable.compareAndSet(true, false)) {
-				this.wait();
-			}
-		} catch (InterruptedException e) {
-			e.printStackTrace();
-		}
+	final boolean markSleeping() {
+		return sleeping.compareAndSet(false, true);
+	}
+
+	/**
+	 * Called by the thread that took this worker off the sleeping queue.
+	 * The permit is kept if the worker isn't parked yet.
+	 */
+	final void wake() {
+		sleeping.set(false);
+		LockSupport.unpark(this);
 	}
 }
@@ -0,0 +1,278 @@
+/*
+ * This file is part of the Kompics component model runtime.
+ *
+ * Copyright (C) 2009 Swedish Institute of Computer Science (SICS) 
+ * Copyright (C) 2009 Royal Institute of Technology (KTH)
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package se.sics.kompics;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+@RunWith(JUnit4.class)
+public class ChannelSelectorSetTest {
+
+    @Test
+    public void lookupTest() {
+        ChannelSelectorSet set = new ChannelSelectorSet();
+        TestChannel a = new TestChannel();
+        TestChannel b = new TestChannel();
+        TestChannel c = new TestChannel();
+        set.addChannelSelector(a, new DstSelector(1));
+        set.addChannelSelector(b, new DstSelector(1));
+        set.addChannelSelector(c, new DstSelector(2));
+
+        assertChannels(set.channels(new Msg(1)), a, b);
+        assertChannels(set.channels(new Msg(2)), c);
+        assertChannels(set.channels(new Msg(3)));
+        // the same array every time
+        Assert.assertSame(set.channels(new Msg(1)), set.channels(new Msg(1)));
+        // the public lookup hands out its own copy
+        Assert.assertEquals(Arrays.asList(set.channels(new Msg(1))), set.get(new Msg(1)));
+        Assert.assertNotSame(set.get(new Msg(1)), set.get(new Msg(1)));
+        // not a selected type at all
+        assertChannels(set.channels(new KompicsEvent() {
+        }));
+    }
+
+    @Test
+    public void subtypeTest() {
+        ChannelSelectorSet set = new ChannelSelectorSet();
+        TestChannel a = new TestChannel();
+        TestChannel b = new TestChannel();
+        set.addChannelSelector(a, new DstSelector(1));
+        set.addChannelSelector(b, new TagSelector("x"));
+
+        assertChannels(set.channels(new SubMsg(1, "y")), a);
+        assertChannels(set.channels(new SubMsg(2, "x")), b);
+        assertChannels(set.channels(new SubMsg(1, "x")), a, b);
+        assertChannels(set.channels(new Msg(1)), a);
+    }
+
+    @Test
+    public void removeTest() {
+        ChannelSelectorSet set = new ChannelSelectorSet();
+        TestChannel a = new TestChannel();
+        TestChannel b = new TestChannel();
+        set.addChannelSelector(a, new DstSelector(1));
+        set.addChannelSelector(b, new TagSelector("x"));
+        assertChannels(set.channels(new SubMsg(1, "x")), a, b);
+
+        ChannelSelectorSet copy = new ChannelSelectorSet(set);
+        set.removeChannel(b);
+        assertChannels(set.channels(new SubMsg(1, "x")), a);
+        assertChannels(copy.channels(new SubMsg(1, "x")), a, b);
+        set.removeChannel(a);
+        Assert.assertTrue(set.isEmpty());
+        assertChannels(set.channels(new SubMsg(1, "x")));
+    }
+
+    @Test
+    public void multiKeyTest() {
+        ChannelSelectorSet set = new ChannelSelectorSet();
+        TestChannel a = new TestChannel();
+        TestChannel b = new TestChannel();
+        set.addChannelSelector(a, new DstSetSelector(1, 2, 3));
+        set.addChannelSelector(b, new DstSetSelector(3, 4));
+
+        assertChannels(set.channels(new Msg(1)), a);
+        assertChannels(set.channels(new Msg(3)), a, b);
+        assertChannels(set.channels(new Msg(4)), b);
+        assertChannels(set.channels(new Msg(5)));
+        set.removeChannel(a);
+        assertChannels(set.channels(new Msg(3)), b);
+        assertChannels(set.channels(new Msg(1)));
+    }
+
+    @Test
+    public void hashRingTest() {
+        ChannelSelectorSet set = new ChannelSelectorSet();
+        TestChannel[] nodes = new TestChannel[4];
+        for (int i = 0; i < nodes.length; i++) {
+            nodes[i] = new TestChannel();
+            set.addChannelSelector(nodes[i], new DstRingSelector("node" + i));
+        }
+        Map<Integer, ChannelCore<?>> owners = new HashMap<Integer, ChannelCore<?>>();
+        int[] load = new int[nodes.length];
+        for (int key = 0; key < 1000; key++) {
+            ChannelCore<?>[] chans = set.channels(new Msg(key));
+            Assert.assertEquals(1, chans.length);
+            owners.put(key, chans[0]);
+            load[Arrays.asList(nodes).indexOf(chans[0])]++;
+        }
+        for (int l : load) {
+            Assert.assertTrue("Unbalanced ring " + Arrays.toString(load), l > 100);
+        }
+        // only the removed node's keys move
+        set.removeChannel(nodes[0]);
+        for (int key = 0; key < 1000; key++) {
+            ChannelCore<?> owner = set.channels(new Msg(key))[0];
+            Assert.assertNotSame(nodes[0], owner);
+            if (owners.get(key) != nodes[0]) {
+                Assert.assertSame(owners.get(key), owner);
+            }
+        }
+    }
+
+    @Test
+    public void rangeTest() {
+        ChannelSelectorSet set = new ChannelSelectorSet();
+        TestChannel a = new TestChannel();
+        TestChannel b = new TestChannel();
+        set.addChannelSelector(a, new DstRangeSelector(0, 10));
+        set.addChannelSelector(b, new DstRangeSelector(5, 20));
+
+        assertChannels(set.channels(new Msg(-1)));
+        assertChannels(set.channels(new Msg(0)), a);
+        assertChannels(set.channels(new Msg(4)), a);
+        assertChannels(set.channels(new Msg(5)), a, b);
+        assertChannels(set.channels(new Msg(9)), a, b);
+        assertChannels(set.channels(new Msg(10)), b);
+        assertChannels(set.channels(new Msg(19)), b);
+        assertChannels(set.channels(new Msg(20)));
+    }
+
+    private static void assertChannels(ChannelCore<?>[] actual, ChannelCore<?>... expected) {
+        Assert.assertEquals(expected.length, actual.length);
+        for (ChannelCore<?> e : expected) {
+            boolean found = false;
+            for (ChannelCore<?> c : actual) {
+                found |= (c == e);
+            }
+            Assert.assertTrue("Missing channel", found);
+        }
+    }
+
+    static class Msg implements KompicsEvent {
+
+        final int dst;
+
+        Msg(int dst) {
+            this.dst = dst;
+        }
+    }
+
+    static class SubMsg extends Msg {
+
+        final String tag;
+
+        SubMsg(int dst, String tag) {
+            super(dst);
+            this.tag = tag;
+        }
+    }
+
+    static class DstSelector extends ChannelSelector<Msg, Integer> {
+
+        DstSelector(int dst) {
+            super(Msg.class, dst, true);
+        }
+
+        @Override
+        public Integer getValue(Msg event) {
+            return event.dst;
+        }
+    }
+
+    static class TagSelector extends ChannelSelector<SubMsg, String> {
+
+        TagSelector(String tag) {
+            super(SubMsg.class, tag, true);
+        }
+
+        @Override
+        public String getValue(SubMsg event) {
+            return event.tag;
+        }
+    }
+
+    static class DstSetSelector extends MultiKeySelector<Msg, Integer> {
+
+        DstSetSelector(Integer... dsts) {
+            super(Msg.class, Arrays.asList(dsts), true);
+        }
+
+        @Override
+        public Integer getValue(Msg event) {
+            return event.dst;
+        }
+    }
+
+    static class DstRingSelector extends HashRingSelector<Msg, Integer> {
+
+        DstRingSelector(String node) {
+            super(Msg.class, node, 64, true);
+        }
+
+        @Override
+        public Integer getValue(Msg event) {
+            return event.dst;
+        }
+    }
+
+    static class DstRangeSelector extends RangeSelector<Msg> {
+
+        DstRangeSelector(long lower, long upper) {
+            super(Msg.class, lower, upper, true);
+        }
+
+        @Override
+        public long getPosition(Msg event) {
+            return event.dst;
+        }
+    }
+
+    static class TestChannel implements ChannelCore<PortType> {
+
+        @Override
+        public boolean isDestroyed() {
+            return false;
+        }
+
+        @Override
+        public boolean hasPositivePort(Port<PortType> port) {
+            return false;
+        }
+
+        @Override
+        public boolean hasNegativePort(Port<PortType> port) {
+            return false;
+        }
+
+        @Override
+        public void forwardToPositive(KompicsEvent event, int wid) {
+        }
+
+        @Override
+        public void forwardToNegative(KompicsEvent event, int wid) {
+        }
+
+        @Override
+        public void disconnect() {
+        }
+
+        @Override
+        public PortType getPortType() {
+            return null;
+        }
+    }
+}
@@ -24,6 +24,7 @@ import java.util.UUID;
 import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 import org.junit.Assert;
 import static org.junit.Assert.assertEquals;
 import org.junit.Test;
@@ -71,6 +72,75 @@ public class ConfigUpdateTest {
         Kompics.resetFaultHandler();
     }
 
+    @Test
+    public void interestTest() {
+        watchedUpdates.set(0);
+        ignoredUpdates.set(0);
+        Kompics.createAndStart(InterestParent.class);
+        waitFor("3");
+        Assert.assertTrue(watchedUpdates.get() <= 3);
+        Assert.assertEquals(0, ignoredUpdates.get());
+        Kompics.shutdown();
+    }
+
+    private static final AtomicInteger watchedUpdates = new AtomicInteger(0);
+    private static final AtomicInteger ignoredUpdates = new AtomicInteger(0);
+
+    public static class InterestParent extends ComponentDefinition {
+
+        {
+            create(BurstUpdater.class, Init.NONE);
+            create(Watcher.class, Init.NONE);
+            create(Ignorer.class, Init.NONE);
+        }
+    }
+
+    public static class BurstUpdater extends ComponentDefinition {
+
+        {
+            Handler<Start> startHandler = new Handler<Start>() {
+
+                @Override
+                public void handle(Start event) {
+                    for (int i = 1; i <= 3; i++) {
+                        Config.Builder builder = config().modify(id());
+                        builder.setValue("watched.value", i);
+                        updateConfig(builder.finalise());
+                    }
+                }
+            };
+            subscribe(startHandler, control);
+        }
+    }
+
+    public static class Watcher extends ComponentDefinition {
+
+        {
+            updateInterest("watched.");
+        }
+
+        @Override
+        public void postUpdate() {
+            watchedUpdates.incrementAndGet();
+            Integer value = config().getValueOrDefault("watched.value", 0);
+            if (value == 3) {
+                stringQ.offer(value.toString());
+            }
+        }
+    }
+
+    public static class Ignorer extends ComponentDefinition {
+
+        {
+            updateInterest("other.");
+        }
+
+        @Override
+        public void postUpdate() {
+            ignoredUpdates.incrementAndGet();
+        }
+    }
+
     public static class Parent extends ComponentDefinition {
 
         {
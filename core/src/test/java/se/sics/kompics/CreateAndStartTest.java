@@ -20,12 +20,21 @@
  */
 package se.sics.kompics;
 
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertTrue;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
 
 import org.junit.Test;
 
+import se.sics.kompics.scheduler.WorkStealingScheduler;
+
 /**
  * The <code>CreateAndStartTest</code> class tests component creation and start.
  * 
@@ -204,4 +213,205 @@ public class CreateAndStartTest {
 		assertTrue(comp3Started);
 		Kompics.shutdown();
 	}
+
+	private static final long TIMEOUT = 5000;
+	private static final Semaphore active = new Semaphore(0);
+
+	/**
+	 * Releases {@link #active} once a child's report turned the root active.
+	 */
+	private static class ActiveHandler extends Handler<Started> {
+		private final ComponentDefinition root;
+
+		public ActiveHandler(ComponentDefinition root) {
+			this.root = root;
+		}
+
+		public void handle(Started event) {
+			if (root.getComponentCore().state() == Component.State.ACTIVE) {
+				active.release();
+			}
+		}
+	}
+
+	/**
+	 * Waits for the root to turn active, as a shutdown while it is starting
+	 * won't kill it.
+	 */
+	private static void awaitActive() throws InterruptedException {
+		assertTrue("Timeout on waiting for the root to start",
+				active.tryAcquire(TIMEOUT, TimeUnit.MILLISECONDS));
+	}
+
+	private static final int COMP4_COUNT = 300;
+
+	private static class TestRoot4 extends ComponentDefinition {
+		public TestRoot4() {
+			List<TestInit4> inits = new ArrayList<TestInit4>();
+			for (int i = 0; i < COMP4_COUNT; i++) {
+				inits.add(new TestInit4(i));
+			}
+			comps4 = createAll(TestComponent4.class, inits);
+			subscribe(new ActiveHandler(this), control);
+		}
+	}
+
+	private static class TestInit4 extends Init<TestComponent4> {
+		final int id;
+
+		public TestInit4(int id) {
+			this.id = id;
+		}
+	}
+
+	private static class TestComponent4 extends ComponentDefinition {
+		final int id;
+
+		public TestComponent4(TestInit4 init) {
+			id = init.id;
+
+			subscribe(startHandler, control);
+		}
+
+		Handler<Start> startHandler = new Handler<Start>() {
+			public void handle(Start event) {
+				semaphore4.release();
+			}
+		};
+	}
+
+	private static volatile List<Component> comps4;
+	private static Semaphore semaphore4;
+
+	/**
+	 * Tests that components created in bulk are all registered, in order,
+	 * and started with their parent.
+	 * 
+	 * @throws Exception
+	 *             the exception
+	 */
+	@Test
+	public void testCreateAll() throws Exception {
+		semaphore4 = new Semaphore(0);
+		active.drainPermits();
+
+		Kompics.createAndStart(TestRoot4.class, 4);
+
+		semaphore4.acquire(COMP4_COUNT);
+		assertEquals(COMP4_COUNT, comps4.size());
+		for (int i = 0; i < COMP4_COUNT; i++) {
+			assertEquals(i, ((TestComponent4) comps4.get(i).getComponent()).id);
+		}
+		awaitActive();
+		Kompics.shutdown();
+	}
+
+	private static final int COMP6_COUNT = 512;
+
+	private static class TestRoot6 extends ComponentDefinition {
+		public TestRoot6() {
+			subscribe(startHandler, control);
+			subscribe(new ActiveHandler(this), control);
+		}
+
+		Handler<Start> startHandler = new Handler<Start>() {
+			public void handle(Start event) {
+				List<TestInit6> inits = new ArrayList<TestInit6>();
+				for (int i = 0; i < COMP6_COUNT; i++) {
+					inits.add(new TestInit6());
+				}
+				comps6 = createAll(TestComponent6.class, inits);
+				for (Component child : comps6) {
+					trigger(Start.event, child.control());
+				}
+				semaphore6.release();
+			}
+		};
+	}
+
+	private static class TestInit6 extends Init<TestComponent6> {
+	}
+
+	private static class TestComponent6 extends ComponentDefinition {
+		public TestComponent6(TestInit6 init) {
+			threads6.add(Thread.currentThread().getId());
+			try {
+				Thread.sleep(1); // long enough for idle workers to join in
+			} catch (InterruptedException ex) {
+				Thread.currentThread().interrupt();
+			}
+		}
+	}
+
+	private static volatile List<Component> comps6;
+	private static Semaphore semaphore6;
+	private static final Set<Long> threads6 = Collections
+			.newSetFromMap(new ConcurrentHashMap<Long, Boolean>());
+
+	/**
+	 * Tests that a bulk creation is shared with the scheduler's idle
+	 * workers.
+	 * 
+	 * @throws Exception
+	 *             the exception
+	 */
+	@Test
+	public void testCreateAllConcurrently() throws Exception {
+		semaphore6 = new Semaphore(0);
+		active.drainPermits();
+		threads6.clear();
+		Kompics.setScheduler(new WorkStealingScheduler(4));
+
+		Kompics.createAndStart(TestRoot6.class, 4);
+
+		semaphore6.acquire();
+		assertEquals(COMP6_COUNT, comps6.size());
+		assertTrue(threads6.size() > 1);
+		awaitActive();
+		Kompics.shutdown();
+	}
+
+	private static class TestRoot5 extends ComponentDefinition {
+		public TestRoot5() {
+			create(TestComponent5.class, new TestSubInit5());
+			subscribe(new ActiveHandler(this), control);
+		}
+	}
+
+	private static class TestInit5 extends Init<TestComponent5> {
+	}
+
+	private static class TestSubInit5 extends TestInit5 {
+	}
+
+	private static class TestComponent5 extends ComponentDefinition {
+		public TestComponent5(Init<TestComponent5> init) {
+			comp5Init = "generic";
+		}
+
+		public TestComponent5(TestInit5 init) {
+			comp5Init = "specific";
+		}
+	}
+
+	private static volatile String comp5Init;
+
+	/**
+	 * Tests that a component is created with the most specific constructor
+	 * its init event can be passed to.
+	 * 
+	 * @throws Exception
+	 *             the exception
+	 */
+	@Test
+	public void testAssignableInit() throws Exception {
+		comp5Init = null;
+		active.drainPermits();
+
+		Kompics.createAndStart(TestRoot5.class, 1);
+
+		assertEquals("specific", comp5Init);
+		awaitActive();
+		Kompics.shutdown();
+	}
 }
@@ -47,6 +47,7 @@ public class DirectRequestResponseTest {
 
     private static final String START = "STARTED";
     private static final String END = "FINISHED";
+    private static final String TIMEOUT = "TIMED OUT";
 
     @Test
     public void basicTest() {
@@ -65,7 +66,16 @@ public class DirectRequestResponseTest {
         Kompics.shutdown();
     }
 
-    public static class Down extends Direct.Request {
+    @Test
+    public void futureTest() {
+        Kompics.createAndStart(FutureParent.class);
+        waitFor(START);
+        waitFor(END);
+        waitFor(TIMEOUT);
+        Kompics.shutdown();
+    }
+
+    public static class Down extends Direct.Request<Up> {
 
         public final long id;
 
@@ -191,6 +201,109 @@ public class DirectRequestResponseTest {
         }
     }
 
+    public static class QuietPort extends PortType {
+
+        {
+            request(Down.class);
+            indication(Up.class);
+        }
+    }
+
+    public static class FutureParent extends ComponentDefinition {
+
+        Component caller = create(FutureCaller.class, Init.NONE);
+        Component ponger = create(Ponger.class, Init.NONE);
+        Component quiet = create(Quiet.class, Init.NONE);
+
+        {
+            connect(caller.getNegative(PPPort.class), ponger.getPositive(PPPort.class));
+            connect(caller.getNegative(QuietPort.class), quiet.getPositive(QuietPort.class));
+        }
+    }
+
+    public static class FutureCaller extends ComponentDefinition {
+
+        Positive<PPPort> p = requires(PPPort.class);
+        Positive<QuietPort> q = requires(QuietPort.class);
+        Component starver = create(Starver.class, Init.NONE);
+
+        private long scount = 0;
+        private long rcount = 0;
+        private boolean running = false; // only touched on this component's thread
+
+        Handler<Start> startHandler = new Handler<Start>() {
+
+            @Override
+            public void handle(Start event) {
+                stringQ.offer(START);
+                for (int i = 0; i < 10; i++) {
+                    send();
+                }
+                Direct.Pending<Up> pending = request(new Down(-1), q, 50, new Direct.Callback<Up>() {
+
+                    @Override
+                    public void completed(Up response) {
+                        Assert.fail("Quiet never answers!");
+                    }
+
+                    @Override
+                    public void timedOut() {
+                        stringQ.offer(TIMEOUT);
+                    }
+                });
+                Assert.assertFalse(pending.isDone());
+            }
+        };
+
+        private void send() {
+            final long id = scount++;
+            request(new Down(id), p, 5000, new Direct.Callback<Up>() {
+
+                @Override
+                public void completed(Up response) {
+                    Assert.assertFalse(running);
+                    running = true;
+                    Assert.assertEquals(id, response.id);
+                    Assert.assertEquals(rcount, response.id);
+                    rcount++;
+                    if (scount < num) {
+                        send();
+                    } else if (rcount == scount) {
+                        stringQ.offer(END);
+                    }
+                    running = false;
+                }
+
+                @Override
+                public void timedOut() {
+                    Assert.fail("Request " + id + " timed out");
+                }
+            });
+        }
+
+        {
+            connect(p, starver.getNegative(PPPort.class));
+            subscribe(startHandler, control);
+        }
+    }
+
+    public static class Quiet extends ComponentDefinition {
+
+        Negative<QuietPort> q = provides(QuietPort.class);
+
+        Handler<Down> downHandler = new Handler<Down>() {
+
+            @Override
+            public void handle(Down event) {
+                // never answers
+            }
+        };
+
+        {
+            subscribe(downHandler, q);
+        }
+    }
+
     private static void waitFor(String s) {
         try {
             String qString = stringQ.poll(timeout, timeUnit);
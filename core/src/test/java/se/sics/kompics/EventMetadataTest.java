@@ -0,0 +1,81 @@
+/*
+ * This file is part of the Kompics component model runtime.
+ *
+ * Copyright (C) 2009 Swedish Institute of Computer Science (SICS) 
+ * Copyright (C) 2009 Royal Institute of Technology (KTH)
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package se.sics.kompics;
+
+import java.io.Serializable;
+import java.util.Arrays;
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+@RunWith(JUnit4.class)
+public class EventMetadataTest {
+
+    @Test
+    public void hierarchyTest() {
+        EventMetadata meta = EventMetadata.of(SubEvent.class);
+        Assert.assertSame(meta, EventMetadata.of(SubEvent.class));
+        Assert.assertEquals(SubEvent.class, meta.getType());
+        Assert.assertEquals(Arrays.<Class<?>>asList(SubEvent.class, Tagged.class, BaseEvent.class, KompicsEvent.class,
+                Object.class, Serializable.class, Cloneable.class), meta.getSupertypes());
+        Assert.assertEquals(Arrays.<Class<?>>asList(Tagged.class, KompicsEvent.class, Serializable.class,
+                Cloneable.class), meta.getInterfaces());
+        Assert.assertTrue(meta.isSubtypeOf(SubEvent.class));
+        Assert.assertTrue(meta.isSubtypeOf(BaseEvent.class));
+        Assert.assertTrue(meta.isSubtypeOf(Serializable.class));
+        Assert.assertFalse(meta.isSubtypeOf(Start.class));
+        Assert.assertFalse(EventMetadata.of(BaseEvent.class).isSubtypeOf(SubEvent.class));
+    }
+
+    @Test
+    public void portDirectionTest() {
+        TestPort port = PortType.getPortType(TestPort.class);
+        Assert.assertTrue(port.hasPositive(BaseEvent.class));
+        Assert.assertTrue(port.hasPositive(SubEvent.class));
+        Assert.assertFalse(port.hasNegative(SubEvent.class));
+        Assert.assertTrue(port.hasNegative(OtherEvent.class));
+        Assert.assertFalse(port.hasPositive(OtherEvent.class));
+        // cached answers stay the same
+        Assert.assertTrue(port.hasEvent(true, SubEvent.class));
+        Assert.assertFalse(port.hasEvent(false, SubEvent.class));
+    }
+
+    interface Tagged extends Serializable {
+    }
+
+    static class BaseEvent implements KompicsEvent {
+    }
+
+    static class SubEvent extends BaseEvent implements Tagged {
+    }
+
+    static class OtherEvent implements KompicsEvent {
+    }
+
+    static class TestPort extends PortType {
+
+        {
+            indication(BaseEvent.class);
+            request(OtherEvent.class);
+        }
+    }
+}
@@ -0,0 +1,161 @@
+/*
+ * This file is part of the Kompics component model runtime.
+ *
+ * Copyright (C) 2009 Swedish Institute of Computer Science (SICS) 
+ * Copyright (C) 2009 Royal Institute of Technology (KTH)
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package se.sics.kompics;
+
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+@RunWith(JUnit4.class)
+public class FusedChannelTest {
+
+    private static final int EVENTS = 100;
+
+    @Test
+    public void fuseTest() throws Exception {
+        received1 = new Semaphore(0);
+        received2 = new Semaphore(0);
+        Kompics.createAndStart(Root.class, 2);
+        Root root = started.poll(5, TimeUnit.SECONDS);
+        Assert.assertNotNull("Timeout on waiting for the root to start", root);
+        Sender sender = (Sender) root.sender.getComponent();
+        JavaPort<TestPort> out = (JavaPort<TestPort>) root.sender.getNegative(TestPort.class);
+        Assert.assertTrue(out.isFused());
+        send(sender);
+        Assert.assertTrue(received1.tryAcquire(EVENTS, 5, TimeUnit.SECONDS));
+
+        // a second channel goes through the normal path
+        Channel<TestPort> c2 = Channel.TWO_WAY.connect((PortCore<TestPort>) root.sink2.getPositive(TestPort.class),
+                (PortCore<TestPort>) root.sender.getNegative(TestPort.class));
+        Assert.assertFalse(out.isFused());
+        send(sender);
+        Assert.assertTrue(received1.tryAcquire(EVENTS, 5, TimeUnit.SECONDS));
+        Assert.assertTrue(received2.tryAcquire(EVENTS, 5, TimeUnit.SECONDS));
+
+        // removing it fuses the first one again
+        root.disconnect(c2);
+        Assert.assertTrue(out.isFused());
+        send(sender);
+        Assert.assertTrue(received1.tryAcquire(EVENTS, 5, TimeUnit.SECONDS));
+        Assert.assertFalse(received2.tryAcquire(1, 100, TimeUnit.MILLISECONDS));
+
+        // as does subscribing on the port itself
+        root.subscribe(root.outsideHandler, root.sender.getNegative(TestPort.class));
+        Assert.assertFalse(out.isFused());
+        send(sender);
+        Assert.assertTrue(received1.tryAcquire(EVENTS, 5, TimeUnit.SECONDS));
+        Assert.assertTrue(received2.tryAcquire(EVENTS, 5, TimeUnit.SECONDS));
+
+        Kompics.shutdown();
+    }
+
+    private static void send(Sender sender) {
+        for (int i = 0; i < EVENTS; i++) {
+            sender.proxy.trigger(new TestEvent(), sender.port);
+        }
+    }
+
+    static class TestEvent implements KompicsEvent {
+    }
+
+    static class TestPort extends PortType {
+
+        {
+            request(TestEvent.class);
+        }
+    }
+
+    private static Semaphore received1;
+    private static Semaphore received2;
+    private static final BlockingQueue<Root> started = new LinkedBlockingQueue<Root>();
+
+    public static class Root extends ComponentDefinition {
+
+        final Component sender;
+        final Component sink2;
+
+        final Handler<Started> startedHandler = new Handler<Started>() {
+
+            @Override
+            public void handle(Started event) {
+                if (getComponentCore().state() == Component.State.ACTIVE) {
+                    started.offer(Root.this);
+                }
+            }
+        };
+
+        {
+            sender = create(Sender.class, Init.NONE);
+            Component sink1 = create(Sink1.class, Init.NONE);
+            sink2 = create(Sink2.class, Init.NONE);
+            connect(sink1.getPositive(TestPort.class), sender.getNegative(TestPort.class), Channel.TWO_WAY);
+            subscribe(startedHandler, control);
+        }
+
+        final Handler<TestEvent> outsideHandler = new Handler<TestEvent>() {
+
+            @Override
+            public void handle(TestEvent event) {
+                received2.release();
+            }
+        };
+    }
+
+    public static class Sender extends ComponentDefinition {
+
+        final Positive<TestPort> port = requires(TestPort.class);
+    }
+
+    public static class Sink1 extends ComponentDefinition {
+
+        {
+            Negative<TestPort> port = provides(TestPort.class);
+            Handler<TestEvent> testHandler = new Handler<TestEvent>() {
+
+                @Override
+                public void handle(TestEvent event) {
+                    received1.release();
+                }
+            };
+            subscribe(testHandler, port);
+        }
+    }
+
+    public static class Sink2 extends ComponentDefinition {
+
+        {
+            Negative<TestPort> port = provides(TestPort.class);
+            Handler<TestEvent> testHandler = new Handler<TestEvent>() {
+
+                @Override
+                public void handle(TestEvent event) {
+                    received2.release();
+                }
+            };
+            subscribe(testHandler, port);
+        }
+    }
+}
@@ -20,9 +20,14 @@
  */
 package se.sics.kompics;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
 import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 import org.junit.Assert;
 import org.junit.Test;
 import org.junit.runner.RunWith;
@@ -54,6 +59,22 @@ public class MatcherTest {
         Kompics.shutdown();
     }
 
+    @Test
+    public void patternTest() {
+        extractions.set(0);
+        Kompics.createAndStart(KeyParent.class);
+        waitFor(SENT);
+        List<String> received = new ArrayList<String>();
+        for (int i = 0; i < 4; i++) {
+            received.add(poll());
+        }
+        Collections.sort(received);
+        Assert.assertEquals(Arrays.asList("a:1", "a:2", "b:4", "sub-a:2"), received);
+        // once per event, including the one nobody matched
+        Assert.assertEquals(4, extractions.get());
+        Kompics.shutdown();
+    }
+
     public interface Data {
 
     }
@@ -146,6 +167,114 @@ public class MatcherTest {
         };
     }
 
+    public static class KeyEvent implements PatternExtractor<String, Integer> {
+
+        final String key;
+        final int value;
+
+        public KeyEvent(String key, int value) {
+            this.key = key;
+            this.value = value;
+        }
+
+        @Override
+        public String extractPattern() {
+            extractions.incrementAndGet();
+            return key;
+        }
+
+        @Override
+        public Integer extractValue() {
+            return value;
+        }
+    }
+
+    private static final AtomicInteger extractions = new AtomicInteger(0);
+
+    public static class SubKeyEvent extends KeyEvent {
+
+        public SubKeyEvent(String key, int value) {
+            super(key, value);
+        }
+    }
+
+    public static class KeyPort extends PortType {
+
+        {
+            indication(KeyEvent.class);
+        }
+    }
+
+    public static class KeyParent extends ComponentDefinition {
+
+        Positive<KeyPort> kp = requires(KeyPort.class);
+
+        public KeyParent() {
+            Component child = create(KeyChild.class, Init.NONE);
+            connect(this.kp.getPair(), child.getPositive(KeyPort.class));
+
+            subscribe(new KeyHandler<KeyEvent>(KeyEvent.class, "a", ""), kp);
+            subscribe(new KeyHandler<KeyEvent>(KeyEvent.class, "b", ""), kp);
+            subscribe(new KeyHandler<SubKeyEvent>(SubKeyEvent.class, "a", "sub-"), kp);
+        }
+    }
+
+    public static class KeyHandler<E extends KeyEvent> extends MatchedHandler<String, Integer, E> {
+
+        private final String key;
+        private final String prefix;
+
+        KeyHandler(Class<E> cxtType, String key, String prefix) {
+            this.key = key;
+            this.prefix = prefix;
+            setCxtType(cxtType);
+        }
+
+        @Override
+        public String pattern() {
+            return key;
+        }
+
+        @Override
+        public void handle(Integer content, E context) {
+            stringQ.offer(prefix + key + ":" + content);
+        }
+    }
+
+    public static class KeyChild extends ComponentDefinition {
+
+        Negative<KeyPort> kp = provides(KeyPort.class);
+
+        public KeyChild() {
+            subscribe(startHandler, control);
+        }
+
+        Handler<Start> startHandler = new Handler<Start>() {
+
+            @Override
+            public void handle(Start event) {
+                stringQ.offer(SENT);
+                trigger(new KeyEvent("a", 1), kp);
+                trigger(new SubKeyEvent("a", 2), kp);
+                trigger(new KeyEvent("c", 3), kp);
+                trigger(new KeyEvent("b", 4), kp);
+            }
+        };
+    }
+
+    private static String poll() {
+        try {
+            String qString = stringQ.poll(timeout, timeUnit);
+            if (qString == null) {
+                Assert.fail("Timeout on waiting for events");
+            }
+            return qString;
+        } catch (InterruptedException ex) {
+            Assert.fail("Interrupted while waiting for events");
+            return null;
+        }
+    }
+
     private static void waitFor(String s) {
         try {
             String qString = stringQ.poll(timeout, timeUnit);
@@ -0,0 +1,265 @@
+/*
+ * This file is part of the Kompics component model runtime.
+ *
+ * Copyright (C) 2009 Swedish Institute of Computer Science (SICS) 
+ * Copyright (C) 2009 Royal Institute of Technology (KTH)
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package se.sics.kompics;
+
+import java.lang.management.ManagementFactory;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.management.openmbean.TabularData;
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+import se.sics.kompics.config.Config;
+import se.sics.kompics.config.ValueMerger;
+
+@RunWith(JUnit4.class)
+public class MetricsTest {
+
+    private static final int EVENTS = 1000;
+
+    @Test
+    public void handlerTest() throws Exception {
+        Config.Builder cb = Kompics.getConfig().modify(UUID.randomUUID());
+        cb.setValue(JavaComponent.METRICS_KEY, true);
+        Config.Impl ci = (Config.Impl) Kompics.getConfig();
+        ci.apply(cb.finalise(), ValueMerger.NONE);
+        Kompics.createAndStart(Parent.class, 2);
+        Parent parent = started.poll(timeout, timeUnit);
+        Assert.assertNotNull("Timeout on waiting for the parent to start", parent);
+        waitFor(DONE);
+
+        Component sink = parent.sink;
+        ComponentMetrics metrics = sink.metrics();
+        Assert.assertNotNull(metrics);
+        Handler<?> testHandler = ((Sink) sink.getComponent()).testHandler;
+        ComponentMetrics.Stats stats = metrics.getHandler(testHandler);
+        // DONE is sent from within the last invocation, before it is recorded
+        long deadline = System.currentTimeMillis() + timeout;
+        while (stats.getCount() < EVENTS && System.currentTimeMillis() < deadline) {
+            Thread.sleep(1);
+            stats = metrics.getHandler(testHandler);
+        }
+        Assert.assertEquals(EVENTS, stats.getCount());
+        Assert.assertTrue(stats.getTotalNanos() >= stats.getMaxNanos());
+        long bucketed = 0;
+        for (long b : stats.getHistogram()) {
+            bucketed += b;
+        }
+        Assert.assertEquals(EVENTS, bucketed);
+        Assert.assertTrue(metrics.getReadyTime().getCount() > 0);
+        Map<String, Integer> depths = metrics.getQueueDepths();
+        Assert.assertEquals(Integer.valueOf(0), depths.get(TestPort.class.getName() + "+"));
+        Assert.assertEquals(Integer.valueOf(0), depths.get("control"));
+
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        ObjectName on = new ObjectName("se.sics.kompics:type=Component,name=\""
+                + Sink.class.getName() + "\",id=" + sink.id());
+        Assert.assertTrue(server.isRegistered(on));
+        TabularData handlers = (TabularData) server.getAttribute(on, "Handlers");
+        // the component's own start handler ran as well
+        Assert.assertEquals(metrics.getHandlers().size(), handlers.size());
+        Assert.assertTrue(metrics.getHandlers().containsKey(testHandler.getClass().getName()));
+
+        Kompics.shutdown();
+        Kompics.resetConfig();
+        // nothing was destroyed by its parent, shutdown unregisters them all
+        Assert.assertTrue(registered().isEmpty());
+    }
+
+    @Test
+    public void failedCreateTest() throws Exception {
+        Config.Builder cb = Kompics.getConfig().modify(UUID.randomUUID());
+        cb.setValue(JavaComponent.METRICS_KEY, true);
+        Config.Impl ci = (Config.Impl) Kompics.getConfig();
+        ci.apply(cb.finalise(), ValueMerger.NONE);
+        Kompics.createAndStart(FailingParent.class, 1);
+        waitFor(FAILED);
+
+        // only the parent is left, not the broken child or what it created
+        Set<ObjectName> names = registered();
+        Assert.assertEquals(1, names.size());
+        Assert.assertEquals("\"" + FailingParent.class.getName() + "\"", names.iterator().next().getKeyProperty("name"));
+
+        Kompics.shutdown();
+        Kompics.resetConfig();
+        Assert.assertTrue(registered().isEmpty());
+    }
+
+    @Test
+    public void killDepthTest() throws Exception {
+        Config.Builder cb = Kompics.getConfig().modify(UUID.randomUUID());
+        cb.setValue(JavaComponent.METRICS_KEY, true);
+        cb.setValue(JavaComponent.METRICS_JMX_KEY, false);
+        Config.Impl ci = (Config.Impl) Kompics.getConfig();
+        ci.apply(cb.finalise(), ValueMerger.NONE);
+        // one worker, so both kills are queued before the child runs
+        Kompics.createAndStart(KillParent.class, 1);
+        Component child = victims.poll(timeout, timeUnit);
+        Assert.assertNotNull("Timeout on waiting for the child", child);
+
+        // the second kill is dropped unhandled, and not counted forever
+        long deadline = System.currentTimeMillis() + timeout;
+        while ((child.metrics().getQueueDepths().get("control") != 0) && System.currentTimeMillis() < deadline) {
+            Thread.sleep(1);
+        }
+        Assert.assertEquals(Integer.valueOf(0), child.metrics().getQueueDepths().get("control"));
+
+        Kompics.shutdown();
+        Kompics.resetConfig();
+    }
+
+    private static Set<ObjectName> registered() throws Exception {
+        return ManagementFactory.getPlatformMBeanServer().queryNames(new ObjectName("se.sics.kompics:type=Component,*"), null);
+    }
+
+    static class TestEvent implements KompicsEvent {
+    }
+
+    static class TestPort extends PortType {
+
+        {
+            indication(TestEvent.class);
+        }
+    }
+
+    public static class Parent extends ComponentDefinition {
+
+        final Component sink;
+
+        {
+            Component source = create(Source.class, Init.NONE);
+            sink = create(Sink.class, Init.NONE);
+            connect(source.getPositive(TestPort.class), sink.getNegative(TestPort.class), Channel.TWO_WAY);
+            Handler<Started> startedHandler = new Handler<Started>() {
+
+                @Override
+                public void handle(Started event) {
+                    if (getComponentCore().state() == Component.State.ACTIVE) {
+                        started.offer(Parent.this);
+                    }
+                }
+            };
+            subscribe(startedHandler, control);
+        }
+    }
+
+    public static class KillParent extends ComponentDefinition {
+
+        {
+            final Component child = create(Source.class, Init.NONE);
+            Handler<Start> startHandler = new Handler<Start>() {
+
+                @Override
+                public void handle(Start event) {
+                    trigger(Kill.event, child.control());
+                    trigger(Kill.event, child.control());
+                    victims.offer(child);
+                }
+            };
+            subscribe(startHandler, control);
+        }
+    }
+
+    public static class FailingParent extends ComponentDefinition {
+
+        {
+            try {
+                create(Broken.class, Init.NONE);
+            } catch (RuntimeException ex) {
+                stringQ.offer(FAILED);
+            }
+        }
+    }
+
+    public static class Broken extends ComponentDefinition {
+
+        {
+            create(Sink.class, Init.NONE);
+            if (true) {
+                throw new IllegalStateException("broken on purpose");
+            }
+        }
+    }
+
+    public static class Source extends ComponentDefinition {
+
+        {
+            final Negative<TestPort> port = provides(TestPort.class);
+            Handler<Start> startHandler = new Handler<Start>() {
+
+                @Override
+                public void handle(Start event) {
+                    for (int i = 0; i < EVENTS; i++) {
+                        trigger(new TestEvent(), port);
+                    }
+                }
+            };
+            subscribe(startHandler, control);
+        }
+    }
+
+    public static class Sink extends ComponentDefinition {
+
+        private int received = 0;
+        final Handler<TestEvent> testHandler = new Handler<TestEvent>() {
+
+            @Override
+            public void handle(TestEvent event) {
+                received++;
+                if (received == EVENTS) {
+                    stringQ.offer(DONE);
+                }
+            }
+        };
+
+        {
+            Positive<TestPort> port = requires(TestPort.class);
+            subscribe(testHandler, port);
+        }
+    }
+
+    private static final BlockingQueue<String> stringQ = new LinkedBlockingQueue<String>();
+    private static final String DONE = "DONE";
+    private static final String FAILED = "FAILED";
+    private static final BlockingQueue<Parent> started = new LinkedBlockingQueue<Parent>();
+    private static final BlockingQueue<Component> victims = new LinkedBlockingQueue<Component>();
+    private static long timeout = 5000;
+    private static final TimeUnit timeUnit = TimeUnit.MILLISECONDS;
+
+    private static void waitFor(String s) {
+        try {
+            String qString = stringQ.poll(timeout, timeUnit);
+            if (qString == null) {
+                Assert.fail("Timeout on waiting for \'" + s + "\'");
+            }
+            Assert.assertEquals(s, qString);
+        } catch (InterruptedException ex) {
+            Assert.fail("Interrupted while waiting for \'" + s + "\'");
+        }
+    }
+}
@@ -0,0 +1,96 @@
+/*
+ * This file is part of the Kompics component model runtime.
+ *
+ * Copyright (C) 2009 Swedish Institute of Computer Science (SICS) 
+ * Copyright (C) 2009 Royal Institute of Technology (KTH)
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package se.sics.kompics;
+
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+@RunWith(JUnit4.class)
+public class RequestPathTest {
+
+    private static final long timeout = 5000;
+
+    @Test
+    public void collectedTest() {
+        ComponentCore core = new Empty().getComponentCore();
+        long pe = RequestPath.element(core);
+        Assert.assertFalse(RequestPath.isChannel(pe));
+        Assert.assertEquals(pe, RequestPath.element(core));
+        Assert.assertSame(core, RequestPath.component(pe));
+        Assert.assertSame(core, RequestPath.toElement(pe).getComponent());
+        core = null;
+        awaitCollected(pe);
+        Assert.assertNull(RequestPath.toElement(pe).getComponent());
+    }
+
+    @Test
+    public void reuseTest() {
+        long stale = RequestPath.element(new Empty().getComponentCore());
+        awaitCollected(stale);
+        // other tests' components may be freed too, so the slot may not
+        // be the first one handed out again
+        List<ComponentCore> alive = new ArrayList<ComponentCore>();
+        long deadline = System.currentTimeMillis() + timeout;
+        while (System.currentTimeMillis() < deadline) {
+            ComponentCore core = new Empty().getComponentCore();
+            alive.add(core);
+            long pe = RequestPath.element(core);
+            if (RequestPath.index(pe) == RequestPath.index(stale)) {
+                Assert.assertFalse(pe == stale);
+                Assert.assertSame(core, RequestPath.component(pe));
+                // a stale path never reaches the slot's new owner
+                Assert.assertNull(RequestPath.component(stale));
+                return;
+            }
+            if ((alive.size() % 64) == 0) {
+                System.gc();
+                sleep(); // collected slots are only freed once enqueued
+            }
+        }
+        Assert.fail("Slot of a collected component was not reused");
+    }
+
+    private static void awaitCollected(long pe) {
+        long deadline = System.currentTimeMillis() + timeout;
+        while (RequestPath.component(pe) != null) {
+            if (System.currentTimeMillis() > deadline) {
+                Assert.fail("Component was not collected");
+            }
+            System.gc();
+            sleep();
+        }
+    }
+
+    private static void sleep() {
+        try {
+            Thread.sleep(10);
+        } catch (InterruptedException ex) {
+            Assert.fail("Interrupted while waiting for the collector");
+        }
+    }
+
+    public static class Empty extends ComponentDefinition {
+    }
+}
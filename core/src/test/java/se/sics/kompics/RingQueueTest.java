@@ -0,0 +1,284 @@
+/*
+ * This file is part of the Kompics component model runtime.
+ *
+ * Copyright (C) 2009 Swedish Institute of Computer Science (SICS) 
+ * Copyright (C) 2009 Royal Institute of Technology (KTH)
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package se.sics.kompics;
+
+import java.util.UUID;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+import se.sics.kompics.config.Config;
+import se.sics.kompics.config.ValueMerger;
+
+@RunWith(JUnit4.class)
+public class RingQueueTest {
+
+    private static final int EVENTS = 10000;
+
+    @Test
+    public void boundsTest() {
+        RingQueue<Integer> q = new RingQueue<Integer>(3, RingQueue.Backpressure.FAULT);
+        Assert.assertEquals(4, q.capacity());
+        Assert.assertTrue(q.isEmpty());
+        for (int i = 0; i < 4; i++) {
+            Assert.assertTrue(q.offer(i));
+        }
+        Assert.assertFalse(q.tryOffer(4));
+        try {
+            q.offer(4);
+            Assert.fail("Full queue accepted an element");
+        } catch (KompicsException ex) {
+            // expected
+        }
+        for (int i = 0; i < 4; i++) {
+            Assert.assertEquals(Integer.valueOf(i), q.poll());
+        }
+        Assert.assertNull(q.poll());
+        Assert.assertTrue(q.isEmpty());
+    }
+
+    @Test
+    public void dropOldestTest() {
+        RingQueue<Integer> q = new RingQueue<Integer>(2, RingQueue.Backpressure.DROP_OLDEST);
+        Assert.assertTrue(q.offer(0));
+        Assert.assertTrue(q.offer(1));
+        Assert.assertFalse(q.offer(2));
+        Assert.assertEquals(2, q.size());
+        Assert.assertEquals(Integer.valueOf(1), q.poll());
+        Assert.assertEquals(Integer.valueOf(2), q.poll());
+        Assert.assertNull(q.poll());
+    }
+
+    @Test
+    public void dropOldestRaceTest() throws InterruptedException {
+        final RingQueue<Integer> q = new RingQueue<Integer>(64, RingQueue.Backpressure.DROP_OLDEST);
+        final AtomicInteger grown = new AtomicInteger(0);
+        Thread[] producers = new Thread[4];
+        for (int i = 0; i < producers.length; i++) {
+            producers[i] = new Thread() {
+
+                @Override
+                public void run() {
+                    for (int j = 0; j < EVENTS; j++) {
+                        if (q.offer(j)) {
+                            grown.incrementAndGet();
+                        }
+                    }
+                }
+            };
+            producers[i].start();
+        }
+        for (Thread t : producers) {
+            t.join();
+        }
+        // every offer either grew the queue or dropped exactly one element
+        Assert.assertEquals(q.capacity(), grown.get());
+        int n = 0;
+        while (q.poll() != null) {
+            n++;
+        }
+        Assert.assertEquals(grown.get(), n);
+    }
+
+    @Test
+    public void blockingPortsTest() throws InterruptedException {
+        setQueueConfig("block");
+        Kompics.createAndStart(ExternalParent.class, 2);
+        ExternalParent parent = started.poll(timeout, timeUnit);
+        if (parent == null) {
+            Assert.fail("Timeout on waiting for the parent to start");
+        }
+        // this thread isn't executing components, so it waits for room
+        for (int i = 0; i < EVENTS; i++) {
+            parent.proxy.trigger(new TestEvent(i), parent.sinkPort);
+        }
+        waitFor(DONE);
+        Kompics.shutdown();
+        Kompics.resetConfig();
+    }
+
+    @Test
+    public void blockingWorkerTest() {
+        setQueueConfig("block");
+        Kompics.setFaultHandler(new FaultHandler() {
+
+            @Override
+            public Fault.ResolveAction handle(Fault f) {
+                if (f.getCause() instanceof KompicsException) {
+                    stringQ.offer(FAULT);
+                }
+                return Fault.ResolveAction.DESTROY;
+            }
+        });
+        // a worker waiting for room could be the one the sink needs, so
+        // flooding from a handler faults like the fault policy does
+        Kompics.createAndStart(Parent.class, 1);
+        waitFor(FAULT);
+        try {
+            Kompics.waitForTermination();
+        } catch (InterruptedException ex) {
+            Assert.fail(ex.getMessage());
+        }
+        Kompics.resetConfig();
+        Kompics.resetFaultHandler();
+    }
+
+    @Test
+    public void faultingPortsTest() {
+        setQueueConfig("fault");
+        Kompics.setFaultHandler(new FaultHandler() {
+
+            @Override
+            public Fault.ResolveAction handle(Fault f) {
+                if (f.getCause() instanceof KompicsException) {
+                    stringQ.offer(FAULT);
+                }
+                return Fault.ResolveAction.DESTROY;
+            }
+        });
+        // a single worker can't run the sink while the source floods it
+        Kompics.createAndStart(Parent.class, 1);
+        waitFor(FAULT);
+        try {
+            Kompics.waitForTermination();
+        } catch (InterruptedException ex) {
+            Assert.fail(ex.getMessage());
+        }
+        Kompics.resetConfig();
+        Kompics.resetFaultHandler();
+    }
+
+    private static void setQueueConfig(String backpressure) {
+        Config.Builder cb = Kompics.getConfig().modify(UUID.randomUUID());
+        cb.setValue(JavaComponent.QUEUE_TYPE_KEY, "ring");
+        cb.setValue(JavaComponent.QUEUE_CAPACITY_KEY, 16);
+        cb.setValue(JavaComponent.QUEUE_BACKPRESSURE_KEY, backpressure);
+        Config.Impl ci = (Config.Impl) Kompics.getConfig();
+        ci.apply(cb.finalise(), ValueMerger.NONE);
+    }
+
+    static class TestEvent implements KompicsEvent {
+
+        final int id;
+
+        public TestEvent(int id) {
+            this.id = id;
+        }
+    }
+
+    static class TestPort extends PortType {
+
+        {
+            indication(TestEvent.class);
+        }
+    }
+
+    public static class Parent extends ComponentDefinition {
+
+        {
+            Component source = create(Source.class, Init.NONE);
+            Component sink = create(Sink.class, Init.NONE);
+            connect(source.getPositive(TestPort.class), sink.getNegative(TestPort.class), Channel.TWO_WAY);
+        }
+    }
+
+    public static class ExternalParent extends ComponentDefinition {
+
+        final Negative<TestPort> sinkPort;
+
+        {
+            Component sink = create(Sink.class, Init.NONE);
+            sinkPort = sink.getNegative(TestPort.class);
+            Handler<Started> startedHandler = new Handler<Started>() {
+
+                @Override
+                public void handle(Started event) {
+                    // the sink reported in, so this parent is active now
+                    if (getComponentCore().state() == Component.State.ACTIVE) {
+                        started.offer(ExternalParent.this);
+                    }
+                }
+            };
+            subscribe(startedHandler, control);
+        }
+    }
+
+    public static class Source extends ComponentDefinition {
+
+        {
+            final Negative<TestPort> port = provides(TestPort.class);
+            Handler<Start> startHandler = new Handler<Start>() {
+
+                @Override
+                public void handle(Start event) {
+                    for (int i = 0; i < EVENTS; i++) {
+                        trigger(new TestEvent(i), port);
+                    }
+                }
+            };
+            subscribe(startHandler, control);
+        }
+    }
+
+    public static class Sink extends ComponentDefinition {
+
+        private int expected = 0;
+
+        {
+            Positive<TestPort> port = requires(TestPort.class);
+            Handler<TestEvent> testHandler = new Handler<TestEvent>() {
+
+                @Override
+                public void handle(TestEvent event) {
+                    Assert.assertEquals(expected, event.id);
+                    expected++;
+                    if (expected == EVENTS) {
+                        stringQ.offer(DONE);
+                    }
+                }
+            };
+            subscribe(testHandler, port);
+        }
+    }
+
+    private static final BlockingQueue<String> stringQ = new LinkedBlockingQueue<String>();
+    private static final BlockingQueue<ExternalParent> started = new LinkedBlockingQueue<ExternalParent>();
+    private static final String DONE = "DONE";
+    private static final String FAULT = "FAULT";
+    private static long timeout = 5000;
+    private static final TimeUnit timeUnit = TimeUnit.MILLISECONDS;
+
+    private static void waitFor(String s) {
+        try {
+            String qString = stringQ.poll(timeout, timeUnit);
+            if (qString == null) {
+                Assert.fail("Timeout on waiting for \'" + s + "\'");
+            }
+            Assert.assertEquals(s, qString);
+        } catch (InterruptedException ex) {
+            Assert.fail("Interrupted while waiting for \'" + s + "\'");
+        }
+    }
+}
@@ -0,0 +1,276 @@
+/*
+ * This file is part of the Kompics component model runtime.
+ *
+ * Copyright (C) 2009 Swedish Institute of Computer Science (SICS) 
+ * Copyright (C) 2009 Royal Institute of Technology (KTH)
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package se.sics.kompics;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+import se.sics.kompics.config.Config;
+import se.sics.kompics.config.ConfigUpdate;
+import se.sics.kompics.scheduler.ThreadPoolScheduler;
+import se.sics.kompics.scheduler.WorkStealingScheduler;
+
+@RunWith(JUnit4.class)
+public class SchedulerGroupTest {
+
+    @Test
+    public void groupsTest() {
+        Scheduler bulk = new ThreadPoolScheduler(1);
+        Kompics.addSchedulerGroup("bulk", bulk);
+        active = new CountDownLatch(1);
+        Kompics.createAndStart(Parent.class, 1);
+        Map<String, Long> threadIds = waitForReports(4);
+        Long parentThread = threadIds.get("parent");
+        Long dedicatedThread = threadIds.get("dedicated");
+        Long bulkThread = threadIds.get("bulk");
+        Long bulkChildThread = threadIds.get("bulk-child");
+        Assert.assertFalse(parentThread.equals(dedicatedThread));
+        Assert.assertFalse(parentThread.equals(bulkThread));
+        Assert.assertFalse(dedicatedThread.equals(bulkThread));
+        // children stay in their parent's group
+        Assert.assertEquals(bulkThread, bulkChildThread);
+        Assert.assertSame(bulk, Kompics.getSchedulerGroup("bulk"));
+        awaitActive(); // a shutdown while starting won't kill the root
+        Kompics.shutdown();
+        Assert.assertNull(Kompics.getSchedulerGroup("bulk"));
+    }
+
+    @Test
+    public void workStealingGroupsTest() {
+        // events cross from four workers to one and back, so the senders'
+        // worker ids are mostly out of range for the receiving scheduler
+        Kompics.setScheduler(new WorkStealingScheduler(4));
+        Kompics.addSchedulerGroup("small", new WorkStealingScheduler(1));
+        active = new CountDownLatch(1);
+        Kompics.createAndStart(PingParent.class, 4);
+        Map<String, Long> threadIds = waitForReports(PINGERS);
+        Set<Long> echoThreads = new HashSet<Long>(threadIds.values());
+        // everything in the small group runs on its only worker
+        Assert.assertEquals(1, echoThreads.size());
+        Assert.assertFalse(pingerThreads.contains(echoThreads.iterator().next()));
+        awaitActive();
+        Kompics.shutdown();
+    }
+
+    private static final int PINGERS = 4;
+    private static final int PINGS = 1000;
+    private static final Set<Long> pingerThreads = Collections.synchronizedSet(new HashSet<Long>());
+
+    static class Ping implements KompicsEvent {
+
+        final int n;
+
+        Ping(int n) {
+            this.n = n;
+        }
+    }
+
+    static class EchoPort extends PortType {
+
+        {
+            request(Ping.class);
+            indication(Ping.class);
+        }
+    }
+
+    public static class PingParent extends ComponentDefinition {
+
+        {
+            subscribe(new Active(this), control);
+            Config.Builder cb = config().modify(id());
+            cb.setValue(JavaComponent.SCHEDULER_GROUP_KEY, "small");
+            ConfigUpdate small = cb.finalise();
+            for (int i = 0; i < PINGERS; i++) {
+                Component pinger = create(Pinger.class, Init.NONE);
+                Component echo = create(Echo.class, new EchoInit("echo-" + i), small);
+                connect(pinger.getNegative(EchoPort.class), echo.getPositive(EchoPort.class), Channel.TWO_WAY);
+            }
+        }
+    }
+
+    public static class Pinger extends ComponentDefinition {
+
+        {
+            final Positive<EchoPort> echo = requires(EchoPort.class);
+            Handler<Start> startHandler = new Handler<Start>() {
+
+                @Override
+                public void handle(Start event) {
+                    trigger(new Ping(0), echo);
+                }
+            };
+            Handler<Ping> pingHandler = new Handler<Ping>() {
+
+                @Override
+                public void handle(Ping event) {
+                    pingerThreads.add(Thread.currentThread().getId());
+                    if (event.n < PINGS) {
+                        trigger(new Ping(event.n + 1), echo);
+                    }
+                }
+            };
+            subscribe(startHandler, control);
+            subscribe(pingHandler, echo);
+        }
+    }
+
+    public static class EchoInit extends Init<Echo> {
+
+        final String name;
+
+        public EchoInit(String name) {
+            this.name = name;
+        }
+    }
+
+    public static class Echo extends ComponentDefinition {
+
+        public Echo(final EchoInit init) {
+            final Negative<EchoPort> echo = provides(EchoPort.class);
+            Handler<Ping> pingHandler = new Handler<Ping>() {
+
+                @Override
+                public void handle(Ping event) {
+                    if (event.n == PINGS) {
+                        reports.offer(new Object[]{init.name, Thread.currentThread().getId()});
+                    }
+                    trigger(event, echo);
+                }
+            };
+            subscribe(pingHandler, echo);
+        }
+    }
+
+    public static class Parent extends ComponentDefinition {
+
+        {
+            subscribe(new Active(this), control);
+            create(Reporter.class, new ReporterInit("parent"));
+            create(Reporter.class, new ReporterInit("dedicated"), group(JavaComponent.DEDICATED_GROUP));
+            create(BulkReporter.class, Init.NONE, group("bulk"));
+        }
+
+        private ConfigUpdate group(String name) {
+            Config.Builder cb = config().modify(id());
+            cb.setValue(JavaComponent.SCHEDULER_GROUP_KEY, name);
+            return cb.finalise();
+        }
+    }
+
+    public static class BulkReporter extends ComponentDefinition {
+
+        {
+            create(Reporter.class, new ReporterInit("bulk-child"));
+            subscribe(new Report("bulk"), control);
+        }
+    }
+
+    public static class ReporterInit extends Init<Reporter> {
+
+        final String name;
+
+        public ReporterInit(String name) {
+            this.name = name;
+        }
+    }
+
+    public static class Reporter extends ComponentDefinition {
+
+        public Reporter(ReporterInit init) {
+            subscribe(new Report(init.name), control);
+        }
+    }
+
+    static class Report extends Handler<Start> {
+
+        private final String name;
+
+        Report(String name) {
+            this.name = name;
+        }
+
+        @Override
+        public void handle(Start event) {
+            reports.offer(new Object[]{name, Thread.currentThread().getId()});
+        }
+    }
+
+    /**
+     * Opens {@link #active} once the root's last child has started, that is
+     * when the root itself turned active.
+     */
+    static class Active extends Handler<Started> {
+
+        private final ComponentDefinition root;
+
+        Active(ComponentDefinition root) {
+            this.root = root;
+        }
+
+        @Override
+        public void handle(Started event) {
+            if (root.getComponentCore().state() == Component.State.ACTIVE) {
+                active.countDown();
+            }
+        }
+    }
+
+    private static final BlockingQueue<Object[]> reports = new LinkedBlockingQueue<Object[]>();
+    private static volatile CountDownLatch active;
+    private static final long timeout = 5000;
+
+    private static void awaitActive() {
+        try {
+            if (!active.await(timeout, TimeUnit.MILLISECONDS)) {
+                Assert.fail("Timeout on waiting for the root to start");
+            }
+        } catch (InterruptedException ex) {
+            Assert.fail("Interrupted while waiting for the root to start");
+        }
+    }
+
+    private static Map<String, Long> waitForReports(int n) {
+        Map<String, Long> threadIds = new HashMap<String, Long>();
+        try {
+            for (int i = 0; i < n; i++) {
+                Object[] report = reports.poll(timeout, TimeUnit.MILLISECONDS);
+                if (report == null) {
+                    Assert.fail("Timeout on waiting for reports");
+                }
+                threadIds.put((String) report[0], (Long) report[1]);
+            }
+        } catch (InterruptedException ex) {
+            Assert.fail("Interrupted while waiting for reports");
+        }
+        Assert.assertEquals(n, threadIds.size());
+        return threadIds;
+    }
+}
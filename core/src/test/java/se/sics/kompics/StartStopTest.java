@@ -4,6 +4,7 @@
  */
 package se.sics.kompics;
 
+import java.util.UUID;
 import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.LinkedBlockingQueue;
 import static org.junit.Assert.assertTrue;
@@ -11,6 +12,8 @@ import static org.junit.Assert.fail;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.junit.runners.JUnit4;
+import se.sics.kompics.config.Config;
+import se.sics.kompics.config.ValueMerger;
 
 /**
  *
@@ -58,6 +61,29 @@ public class StartStopTest {
 
     }
 
+    @Test
+    public void testFastLifecycle() {
+        queue = new LinkedBlockingQueue<KompicsEvent>();
+        Config.Builder cb = Kompics.getConfig().modify(UUID.randomUUID());
+        cb.setValue(JavaComponent.FAST_LIFECYCLE_KEY, true);
+        ((Config.Impl) Kompics.getConfig()).apply(cb.finalise(), ValueMerger.NONE);
+
+        Kompics.createAndStart(WideRoot.class, 4);
+        try {
+            KompicsEvent e = queue.take();
+            assertTrue("Tree started.", e instanceof Started);
+            assertTrue("Children started.", WideRoot.childrenStarted);
+            e = queue.take();
+            assertTrue("Tree stopped.", e instanceof Stopped);
+            assertTrue("Children stopped.", WideRoot.childrenStopped);
+        } catch (InterruptedException ex) {
+            fail(ex.getMessage());
+        }
+
+        Kompics.shutdown();
+        Kompics.resetConfig();
+    }
+
     public static class TestPort extends PortType {
 
         {
@@ -134,6 +160,71 @@ public class StartStopTest {
         }
     }
 
+    public static class WideRoot extends ComponentDefinition {
+
+        static volatile boolean childrenStarted = false;
+        static volatile boolean childrenStopped = false;
+        final Component wide = create(WideComponent.class, Init.NONE);
+
+        {
+            Handler<Started> startedHandler = new Handler<Started>() {
+                @Override
+                public void handle(Started event) {
+                    childrenStarted = allChildrenIn(Component.State.ACTIVE);
+                    queue.offer(event);
+                    trigger(Stop.event, wide.control());
+                }
+            };
+            Handler<Stopped> stoppedHandler = new Handler<Stopped>() {
+                @Override
+                public void handle(Stopped event) {
+                    childrenStopped = allChildrenIn(Component.State.PASSIVE);
+                    destroy(wide);
+                    queue.offer(event);
+                }
+            };
+            subscribe(startedHandler, control);
+            subscribe(stoppedHandler, control);
+        }
+
+        private boolean allChildrenIn(Component.State s) {
+            for (Component middle : ((ComponentCore) wide).children) {
+                if (middle.state() != s) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+
+    public static class WideComponent extends ComponentDefinition {
+
+        {
+            // wide enough to be sent in several chunks
+            for (int i = 0; i < 1000; i++) {
+                create(DeepComponent.class, new DeepComponent.Init(3));
+            }
+        }
+    }
+
+    public static class DeepComponent extends ComponentDefinition {
+
+        public DeepComponent(Init init) {
+            if (init.depth > 0) {
+                create(DeepComponent.class, new Init(init.depth - 1));
+            }
+        }
+
+        public static class Init extends se.sics.kompics.Init<DeepComponent> {
+
+            final int depth;
+
+            public Init(int depth) {
+                this.depth = depth;
+            }
+        }
+    }
+
     public static class ForwarderComponent extends ComponentDefinition {
 
         {
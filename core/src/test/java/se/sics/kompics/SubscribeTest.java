@@ -21,10 +21,13 @@
 package se.sics.kompics;
 
 import java.util.LinkedList;
+import java.util.UUID;
 import java.util.concurrent.Semaphore;
 import org.junit.Assert;
 import org.junit.Test;
 import se.sics.kompics.Fault.ResolveAction;
+import se.sics.kompics.config.Config;
+import se.sics.kompics.config.ValueMerger;
 
 /**
  * The
@@ -194,4 +197,81 @@ public class SubscribeTest {
         Assert.assertArrayEquals(expected, list2.toArray());
         Kompics.shutdown();
     }
+
+    private static class TestRoot3 extends ComponentDefinition {
+
+        public TestRoot3() {
+            Component component1 = create(TestComponent1.class, Init.NONE);
+            Component sender = create(TestSender.class, Init.NONE);
+            connect(component1.getPositive(TestPort.class), sender.getNegative(TestPort.class), Channel.TWO_WAY);
+        }
+    }
+
+    private static class TestSender extends ComponentDefinition {
+
+        private final Positive<TestPort> testPort = requires(TestPort.class);
+
+        public TestSender() {
+            subscribe(startHandler, control);
+        }
+
+        Handler<Start> startHandler = new Handler<Start>() {
+
+            @Override
+            public void handle(Start event) {
+                LinkedList<TestEvent> batch = new LinkedList<TestEvent>();
+                for (int i = 0; i < EVENT_COUNT; i++) {
+                    batch.add(new TestEvent(i));
+                    if (batch.size() == EVENT_COUNT / 2) {
+                        triggerAll(batch, testPort);
+                        batch.clear();
+                    }
+                }
+                triggerAll(batch, testPort);
+            }
+        };
+    }
+
+    /**
+     * Tests FIFO handling of events triggered in batches over a channel.
+     *
+     * @throws Exception the exception
+     */
+    @Test
+    public void testFifoBatchTrigger() throws Exception {
+        semaphore = new Semaphore(0);
+        list1 = new LinkedList<Integer>();
+        Integer expected[] = new Integer[EVENT_COUNT];
+        for (int i = 0; i < expected.length; i++) {
+            expected[i] = i;
+        }
+
+        Kompics.createAndStart(TestRoot3.class, 2);
+
+        semaphore.acquire(EVENT_COUNT);
+
+        Assert.assertArrayEquals(expected, list1.toArray());
+        Kompics.shutdown();
+    }
+
+    /**
+     * Tests both of the above with ports drained in batches.
+     *
+     * @throws Exception the exception
+     */
+    @Test
+    public void testFifoBatchedExecution() throws Exception {
+        Config.Builder cb = Kompics.getConfig().modify(UUID.randomUUID());
+        cb.setValue(JavaComponent.BATCHED_KEY, true);
+        cb.setValue(JavaComponent.BATCH_SIZE_KEY, 8);
+        Config.Impl ci = (Config.Impl) Kompics.getConfig();
+        ci.apply(cb.finalise(), ValueMerger.NONE);
+        try {
+            testFifoExecution();
+            testFifoDynamicSubscriptions();
+            testFifoBatchTrigger();
+        } finally {
+            Kompics.resetConfig();
+        }
+    }
 }
@@ -127,4 +127,25 @@ public class ConfigTest {
         long lll = configB.getValue("config.testl", Long.class);
         assertEquals(10l, lll);
     }
+
+    @Test
+    public void keyTest() {
+        ConfigKey<Long> testl = new ConfigKey<Long>("config.testl", Long.class);
+        ConfigKey<String> missing = new ConfigKey<String>("config.missing", String.class, "default");
+        Config conf = TypesafeConfig.load();
+        assertEquals(Long.valueOf(5), testl.get(conf));
+        assertEquals(Long.valueOf(5), testl.get(conf));
+        assertEquals("default", missing.get(conf));
+
+        Config.Builder builder = conf.modify(UUID.randomUUID());
+        builder.setValue("config.testl", 10l);
+        builder.setValue("config.missing", "found");
+        Config.Impl configB = (Config.Impl) conf.copy(false);
+        assertEquals(Long.valueOf(5), testl.get(configB));
+        configB.apply(builder.finalise(), ValueMerger.NONE);
+        assertEquals(Long.valueOf(5), testl.get(conf));
+        assertEquals(Long.valueOf(10), testl.get(configB));
+        assertEquals("default", missing.get(conf));
+        assertEquals("found", missing.get(configB));
+    }
 }
@@ -0,0 +1,75 @@
+/*
+ * This file is part of the Kompics component model runtime.
+ *
+ * Copyright (C) 2009 Swedish Institute of Computer Science (SICS) 
+ * Copyright (C) 2009 Royal Institute of Technology (KTH)
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package se.sics.kompics.config;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+@RunWith(JUnit4.class)
+public class PersistentMapTest {
+
+    @Test
+    public void randomTest() {
+        Random rand = new Random(0);
+        Map<String, Integer> expected = new HashMap<String, Integer>();
+        PersistentMap<Integer> map = PersistentMap.empty();
+        for (int i = 0; i < 20000; i++) {
+            String key = "key." + rand.nextInt(5000);
+            Integer value = rand.nextInt();
+            PersistentMap<Integer> before = map;
+            Integer old = before.get(key);
+            map = map.plus(key, value);
+            expected.put(key, value);
+            // the old version is untouched
+            assertEquals(old, before.get(key));
+        }
+        assertEquals(expected.size(), map.size());
+        for (Map.Entry<String, Integer> e : expected.entrySet()) {
+            assertEquals(e.getValue(), map.get(e.getKey()));
+        }
+        assertNull(map.get("key.missing"));
+    }
+
+    @Test
+    public void collisionTest() {
+        // "Aa" and "BB" have the same hash code
+        PersistentMap<String> map = PersistentMap.<String>empty().plus("Aa", "a").plus("BB", "b");
+        assertEquals(2, map.size());
+        assertEquals("a", map.get("Aa"));
+        assertEquals("b", map.get("BB"));
+        PersistentMap<String> map2 = map.plus("Aa", "c").plus("AaAa", "d").plus("BBBB", "e");
+        assertEquals(4, map2.size());
+        assertEquals("c", map2.get("Aa"));
+        assertEquals("b", map2.get("BB"));
+        assertEquals("d", map2.get("AaAa"));
+        assertEquals("e", map2.get("BBBB"));
+        assertEquals("a", map.get("Aa"));
+        assertNull(map.get("AaAa"));
+        assertSame(map2, map2.plus("BB", "b"));
+    }
+}
@@ -0,0 +1,220 @@
+/*
+ * This file is part of the Kompics component model runtime.
+ *
+ * Copyright (C) 2009 Swedish Institute of Computer Science (SICS) 
+ * Copyright (C) 2009 Royal Institute of Technology (KTH)
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package se.sics.kompics.scheduler;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+import se.sics.kompics.Channel;
+import se.sics.kompics.Component;
+import se.sics.kompics.ComponentDefinition;
+import se.sics.kompics.Handler;
+import se.sics.kompics.Init;
+import se.sics.kompics.Kompics;
+import se.sics.kompics.KompicsEvent;
+import se.sics.kompics.Negative;
+import se.sics.kompics.PortType;
+import se.sics.kompics.Positive;
+import se.sics.kompics.Scheduler;
+import se.sics.kompics.Start;
+import se.sics.kompics.Started;
+
+@RunWith(JUnit4.class)
+public class SchedulerSmokeTest {
+
+    private static final int PAIRS = 8;
+    private static final int PINGS = 1000;
+    private static final long timeout = 10000;
+
+    @Test
+    public void idleRoundsTest() {
+        IdleStrategy s = new IdleStrategy(2, 1);
+        Assert.assertFalse(s.idle(0));
+        Assert.assertFalse(s.idle(1));
+        Assert.assertFalse(s.idle(2)); // yields
+        Assert.assertTrue(s.idle(3));
+        Assert.assertTrue(s.parks());
+        Assert.assertFalse(IdleStrategy.LOW_LATENCY.parks());
+        Assert.assertFalse(IdleStrategy.LOW_LATENCY.idle(Integer.MAX_VALUE));
+    }
+
+    @Test
+    public void defaultIdleTest() throws InterruptedException {
+        pingPong(new WorkStealingScheduler(4, IdleStrategy.DEFAULT));
+    }
+
+    @Test
+    public void lowLatencyIdleTest() throws InterruptedException {
+        // the workers never park, shutdown must still get them to quit
+        pingPong(new WorkStealingScheduler(4, IdleStrategy.LOW_LATENCY));
+    }
+
+    @Test
+    public void parkAtOnceIdleTest() throws InterruptedException {
+        // every idle round parks, so every wake-up goes through unpark
+        pingPong(new WorkStealingScheduler(4, new IdleStrategy(0, 0)));
+    }
+
+    @Test
+    public void forkJoinTest() throws InterruptedException {
+        pingPong(new ForkJoinScheduler(4));
+    }
+
+    @Test
+    public void forkJoinSingleWorkerTest() throws InterruptedException {
+        // everything, including the fairness picks, goes through one queue
+        pingPong(new ForkJoinScheduler(1));
+    }
+
+    @Test
+    public void virtualThreadTest() throws InterruptedException {
+        // virtual threads or the fallback, whatever this JVM offers
+        pingPong(new VirtualThreadScheduler());
+    }
+
+    @Test
+    public void virtualThreadFallbackTest() throws InterruptedException {
+        VirtualThreadScheduler scheduler = new VirtualThreadScheduler("noSuchExecutorFactory");
+        Assert.assertFalse(scheduler.usesVirtualThreads());
+        pingPong(scheduler);
+    }
+
+    /**
+     * Runs pairs of components that ping each other on the given scheduler,
+     * shuts it down and checks that all threads that ran handlers are gone.
+     */
+    private static void pingPong(Scheduler scheduler) throws InterruptedException {
+        done = new CountDownLatch(PAIRS);
+        active = new CountDownLatch(1);
+        threads.clear();
+        Kompics.setScheduler(scheduler);
+        Kompics.createAndStart(PingRoot.class);
+        if (!done.await(timeout, TimeUnit.MILLISECONDS)) {
+            Assert.fail("Timeout on waiting for pings");
+        }
+        if (!active.await(timeout, TimeUnit.MILLISECONDS)) {
+            // a shutdown while starting won't kill the root
+            Assert.fail("Timeout on waiting for the root to start");
+        }
+        Kompics.shutdown();
+        Set<Thread> ran;
+        synchronized (threads) {
+            ran = new HashSet<Thread>(threads);
+        }
+        Assert.assertFalse(ran.isEmpty());
+        for (Thread t : ran) {
+            t.join(timeout);
+            Assert.assertFalse(t + " still running after shutdown", t.isAlive());
+        }
+    }
+
+    private static volatile CountDownLatch done;
+    private static volatile CountDownLatch active;
+    private static final Set<Thread> threads = Collections.synchronizedSet(new HashSet<Thread>());
+
+    public static class Ping implements KompicsEvent {
+
+        final int n;
+
+        Ping(int n) {
+            this.n = n;
+        }
+    }
+
+    public static class PingPort extends PortType {
+
+        {
+            request(Ping.class);
+            indication(Ping.class);
+        }
+    }
+
+    public static class PingRoot extends ComponentDefinition {
+
+        {
+            Handler<Started> startedHandler = new Handler<Started>() {
+
+                @Override
+                public void handle(Started event) {
+                    if (getComponentCore().state() == Component.State.ACTIVE) {
+                        active.countDown();
+                    }
+                }
+            };
+            subscribe(startedHandler, control);
+            for (int i = 0; i < PAIRS; i++) {
+                Component pinger = create(Pinger.class, Init.NONE);
+                Component ponger = create(Ponger.class, Init.NONE);
+                connect(pinger.getNegative(PingPort.class), ponger.getPositive(PingPort.class), Channel.TWO_WAY);
+            }
+        }
+    }
+
+    public static class Pinger extends ComponentDefinition {
+
+        {
+            final Positive<PingPort> port = requires(PingPort.class);
+            Handler<Start> startHandler = new Handler<Start>() {
+
+                @Override
+                public void handle(Start event) {
+                    trigger(new Ping(0), port);
+                }
+            };
+            Handler<Ping> pingHandler = new Handler<Ping>() {
+
+                @Override
+                public void handle(Ping event) {
+                    threads.add(Thread.currentThread());
+                    if (event.n < PINGS) {
+                        trigger(new Ping(event.n + 1), port);
+                    } else {
+                        done.countDown();
+                    }
+                }
+            };
+            subscribe(startHandler, control);
+            subscribe(pingHandler, port);
+        }
+    }
+
+    public static class Ponger extends ComponentDefinition {
+
+        {
+            final Negative<PingPort> port = provides(PingPort.class);
+            Handler<Ping> pingHandler = new Handler<Ping>() {
+
+                @Override
+                public void handle(Ping event) {
+                    threads.add(Thread.currentThread());
+                    trigger(event, port);
+                }
+            };
+            subscribe(pingHandler, port);
+        }
+    }
+}
@@ -0,0 +1,99 @@
+/*
+ * This file is part of the Kompics component model runtime.
+ *
+ * Copyright (C) 2009 Swedish Institute of Computer Science (SICS) 
+ * Copyright (C) 2009 Royal Institute of Technology (KTH)
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package se.sics.kompics.scheduler;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+@RunWith(JUnit4.class)
+public class WorkStealingDequeTest {
+
+    private static final int ITEMS = 100000;
+    private static final int THIEVES = 3;
+
+    @Test
+    public void orderTest() {
+        WorkStealingDeque<Integer> deque = new WorkStealingDeque<Integer>();
+        for (int i = 0; i < 200; i++) { // forces the array to grow
+            deque.push(i);
+        }
+        Assert.assertEquals(200, deque.size());
+        Assert.assertEquals(Integer.valueOf(199), deque.pop());
+        Assert.assertEquals(Integer.valueOf(0), deque.steal());
+        Assert.assertEquals(Integer.valueOf(198), deque.pop());
+        Assert.assertEquals(Integer.valueOf(1), deque.steal());
+        for (int i = 2; i < 198; i++) {
+            Assert.assertEquals(Integer.valueOf(i), deque.steal());
+        }
+        Assert.assertNull(deque.pop());
+        Assert.assertNull(deque.steal());
+        Assert.assertEquals(0, deque.size());
+    }
+
+    @Test
+    public void concurrentStealTest() throws InterruptedException {
+        final WorkStealingDeque<Integer> deque = new WorkStealingDeque<Integer>();
+        final AtomicIntegerArray taken = new AtomicIntegerArray(ITEMS);
+        final CountDownLatch ownerDone = new CountDownLatch(1);
+        Thread[] thieves = new Thread[THIEVES];
+        for (int i = 0; i < THIEVES; i++) {
+            thieves[i] = new Thread() {
+
+                @Override
+                public void run() {
+                    while (true) {
+                        Integer item = deque.steal();
+                        if (item != null) {
+                            taken.incrementAndGet(item);
+                        } else if (ownerDone.getCount() == 0 && deque.size() == 0) {
+                            return;
+                        }
+                    }
+                }
+            };
+            thieves[i].start();
+        }
+        for (int i = 0; i < ITEMS; i++) {
+            deque.push(i);
+            if ((i % 3) == 0) {
+                Integer item = deque.pop();
+                if (item != null) {
+                    taken.incrementAndGet(item);
+                }
+            }
+        }
+        Integer item;
+        while ((item = deque.pop()) != null) {
+            taken.incrementAndGet(item);
+        }
+        ownerDone.countDown();
+        for (Thread t : thieves) {
+            t.join();
+        }
+        for (int i = 0; i < ITEMS; i++) {
+            Assert.assertEquals("item " + i, 1, taken.get(i));
+        }
+    }
+}